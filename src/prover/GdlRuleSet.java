@@ -1,22 +1,25 @@
 package prover;
 
-import java.util.ArrayDeque;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
 
-import util.GdlParser;
+import util.SymbolTable;
 import util.grammar.GDLSyntaxException;
 import util.grammar.Gdl;
-import util.grammar.GdlLiteral;
 import util.grammar.GdlNode;
-import util.grammar.GdlRule;
+import util.grammar.GdlType;
 
 public class GdlRuleSet {
 	public static String NOT_PREFIX = "(not ";
@@ -32,18 +35,33 @@ public class GdlRuleSet {
 	private Set<String> initialSet; // I
 	private Set<String> tautologySet; // T
 	private Set<String> contradictionSet; // C
+	// Rule strings while clauses are joined. Once a pass has run the rules
+	// are kept encoded, and this is only a copy decoded for output.
 	private Map<String, Set<Set<String>>> ruleSet;
+	private IntRuleSet rules;
 	private Map<String, Integer> stratumMap;
 	private Set<String> oldSet;
+	private final SymbolTable symbols;
+	// Heads whose earlier clauses were discarded, only kept by shards
+	private Set<String> replacedSet;
 
 	public boolean debug;
 	public int numRulesUncompressed = 0;
 	public int numRulesCompressed = 0;
+	// Heads whose DNF the last minimizeRules made smaller
 	public int numRulesMinimized = 0;
+	// Bodies dropped and body literals dropped by the last cullVariables
+	public int numClausesCulled = 0;
+	public int numLiteralsCulled = 0;
 	//public boolean CULL_NULL_RULES; // Remove [headNode -> null] rules from
 									// ruleset
 
 	public GdlRuleSet() {
+		this(new SymbolTable());
+	}
+
+	public GdlRuleSet(SymbolTable symbols) {
+		this.symbols = symbols;
 		debug = true;
 		oldSet = new HashSet<String>();
 		predicateSet = new HashSet<String>();
@@ -63,352 +81,290 @@ public class GdlRuleSet {
 		joinRuleSet(root);
 	}
 
-	public void joinRuleSet(Gdl game) throws GDLSyntaxException {
-		
-		numRulesUncompressed+=game.getChildren().size();
-		
-		for (GdlNode node : game.getChildren()) {
-			if (node instanceof GdlLiteral) {
-				// These are facts
-				if (node.getAtom().contentEquals(GdlNode.INIT)) {
-					// Change init clauses to true and add to initialSet which
-					// will be set true exactly once
-					if (!initialSet.contains(node.getChild(0).toString())) {
-						initialSet.add((node.getChild(0).toString()).intern());
-					}
-					//TODO: Confirm if commenting this transformation breaks anything
-					//if (!predicateSet.contains(TRUE_PREFIX + node.getChild(0).toString() + ")")) {
-					//	predicateSet.add((TRUE_PREFIX + node.getChild(0).toString() + ")").intern());
-					//}
-					//ruleSet.put(node.toString(), new HashSet<Set<String>>());
-				} else {
-					// Non-init facts added to tautology set and rule set as
-					// empty body clauses
-					ruleSet.put(node.toString(), new HashSet<Set<String>>());
+	public GdlRuleSet(GdlNode root, SymbolTable symbols) throws GDLSyntaxException {
+		this(symbols);
+		joinRuleSet(root);
+	}
 
-				}
-				//if (!predicateSet.contains(node.toString())) {
-					predicateSet.add(node.toString().intern());
-				//}
+	/**
+	 * Empty rule set to join part of the clauses of a game into on another
+	 * thread. A shard has its own symbol table and remembers which heads it
+	 * replaced, so joinShard(GdlRuleSet) can merge it as if its clauses had
+	 * been joined here.
+	 * 
+	 * @return
+	 */
+	public static GdlRuleSet newShard() {
+		GdlRuleSet shard = new GdlRuleSet(new SymbolTable());
+		shard.replacedSet = new HashSet<String>();
+		return shard;
+	}
 
-			} else if (node instanceof GdlRule) {
-				// These are clauses
-				GdlNode headNode = node.getChild(0);
-				if (!ruleSet.containsKey(headNode.toString())) {
-					ruleSet.put(headNode.toString(), new HashSet<Set<String>>());
-				}
+	/**
+	 * Merge a shard from newShard() into this rule set. Shards must be
+	 * merged in the order of their clauses.
+	 * 
+	 * @param shard
+	 */
+	public void joinShard(GdlRuleSet shard) {
+		decode();
+		numRulesUncompressed += shard.numRulesUncompressed;
+		for (String initial : shard.initialSet) {
+			initialSet.add(symbols.canonical(initial));
+		}
+		for (String predicate : shard.predicateSet) {
+			predicateSet.add(symbols.canonical(predicate));
+		}
+		for (Map.Entry<String, Set<Set<String>>> entry : shard.getRuleSet().entrySet()) {
+			String head = symbols.canonical(entry.getKey());
+			Set<Set<String>> rule = ruleSet.get(head);
+			if (rule == null || shard.replacedSet.contains(entry.getKey())) {
+				rule = new HashSet<Set<String>>();
+				ruleSet.put(head, rule);
+			}
+			for (Set<String> disjunct : entry.getValue()) {
 				Set<String> clauseLiteralSet = new HashSet<String>();
+				for (String literal : disjunct) {
+					clauseLiteralSet.add(symbols.canonical(literal));
+				}
+				rule.add(clauseLiteralSet);
+			}
+		}
+		numRulesCompressed = ruleSet.size();
+	}
 
-				for (int i = 1; i < node.getChildren().size(); i++) {
-					GdlNode literal = node.getChild(i);
-
-					// Add literal to ruleset before any processing
-					clauseLiteralSet.add(literal.toString().intern());
+	/**
+	 * Go back to the rule strings so clauses can be joined into them, if a
+	 * pass has encoded the rules
+	 */
+	private void decode() {
+		getRuleSet();
+		rules = null;
+	}
 
-					// Strip negatives and add to literalSet
-					boolean isNegative = false;
-					while (literal.getAtom().equals(GdlNode.NOT)) {
-						literal = literal.getChild(0);
-						isNegative = !isNegative;
-					}
+	/**
+	 * @return the rules, encoded from the rule strings the first time a pass
+	 *         runs. The strings are dropped then.
+	 */
+	private IntRuleSet encoded() {
+		if (rules == null) {
+			rules = new IntRuleSet(symbols, ruleSet);
+			ruleSet = null;
+		}
+		return rules;
+	}
 
-					// Add striped literal to vocab set
-					//if (!predicateSet.contains(literal.toString())) {
-						predicateSet.add(literal.toString().intern());
-					//}
+	/**
+	 * Keep rules that were encoded without ever being joined as strings, in
+	 * place of the rule strings, see SpillingRuleSet.merge()
+	 *
+	 * @param rules
+	 *            finished
+	 */
+	void setEncoded(IntRuleSet rules) {
+		this.rules = rules;
+		ruleSet = null;
+		numRulesCompressed = rules.size();
+	}
 
-					// Evaluate distinct but don't remove yet
-					if (literal.getAtom().equals(GdlNode.DISTINCT)) {
-						if (!literal.getChild(0).toString().equals(literal.getChild(1).toString())) {
-							ruleSet.put(headNode.toString(), new HashSet<Set<String>>());
-						}
-					}
-				}
-				
-				//if (!predicateSet.contains(node.getChild(0).toString())) {
-					predicateSet.add(headNode.toString().intern());
-				//}
-				
-				ruleSet.get(headNode.toString()).add(clauseLiteralSet);
-			} else {
-				throw new GDLSyntaxException();
-			}
-			numRulesCompressed = ruleSet.size();
+	/**
+	 * Discard the clauses joined so far for a head
+	 * 
+	 * @param head
+	 */
+	private void replaceRule(String head) {
+		ruleSet.put(head, new HashSet<Set<String>>());
+		if (replacedSet != null) {
+			replacedSet.add(head);
 		}
 	}
-	
-	private Set<String> addFactToRuleSet;
-	public int cullVariables(boolean cullNullRules) {
-		int numIterations = 0;
-		boolean changed = true;
-		while (changed) {
-			numIterations++;
-			changed = false;
-
-			Set<String> removeRuleSet = new HashSet<String>();
-			addFactToRuleSet = new HashSet<String>();
-
-			for (String headNode : ruleSet.keySet()) {
-				if (ruleSet.get(headNode) == null || ruleSet.get(headNode).isEmpty()) {
-					continue;
-				}
-				
-				Set<Set<String>> dnfRule = ruleSet.get(headNode);
-				Set<Set<String>> newDnfRule = new HashSet<Set<String>>();
-				boolean ruleContainsNonFalse = false;
-				boolean headIsTautology = false;
-				boolean headIsContradiction = false;
-				
-				for (Set<String> disjunct : dnfRule) {
-					disjunct = processClause(disjunct);
-					if (disjunct == null){
-						
-					} else if (disjunct.isEmpty()) {
-						newDnfRule.clear();
-						headIsTautology = true;
-						break;
-					} else {
-						newDnfRule.add(disjunct);
-						ruleContainsNonFalse = true;
-					}
-				} // End disjunct-for-loop
 
-				if (!ruleContainsNonFalse) {
-					// Each clause has a false literal therefore contradiction
-					headIsContradiction = true;
-				}
+	/**
+	 * @return the symbol table of the translation this rule set belongs to
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbols;
+	}
 
-				if (headIsTautology) {
-					ruleSet.put(headNode, Collections.emptySet());
-					changed = true;
-				} else if (headIsContradiction) {
-					ruleSet.put(headNode, null);
-					changed = true;
-					if (cullNullRules) {
-						removeRuleSet.add(headNode.intern());
-					}
-				} else {
-					ruleSet.put(headNode, newDnfRule);
-				}
-			} // End head-for-loop
-			for (String addedFact : addFactToRuleSet) {
-				ruleSet.put(addedFact, Collections.emptySet());
-				changed = true;
-			}
-			if (cullNullRules) {
-				for (String removeHead : removeRuleSet) {
-					ruleSet.remove(removeHead);
-				}
-			}
-			removeRuleSet.clear();
-			addFactToRuleSet.clear();
-		} // End change-while-loop
-		return numIterations;
+	public void joinRuleSet(GdlNode game) throws GDLSyntaxException {
+		for (GdlNode node : game.getChildren()) {
+			joinClause(node);
+		}
 	}
-	
+
 	/**
-	 * Minimize on a per-clause basis 
-	 * @param clause
-	 * @return
+	 * Join a single top-level fact or rule into the rule set. Used directly
+	 * by the streaming parser so no complete parse tree is needed.
+	 * 
+	 * @param node
+	 * @throws GDLSyntaxException
 	 */
-	private Set<String> processClause(Set<String> clause){
-		if (clause == null || clause.isEmpty()) {
-			return clause;
-		}
-		Iterator<String> clauseIterator = clause.iterator();
-		while (clauseIterator.hasNext()) {
-			String literal = clauseIterator.next();
-			boolean isNegative = false;
-			String posLiteral = literal;
-			while (posLiteral.length() > NOT_PREFIX.length()
-					&& posLiteral.substring(0, NOT_PREFIX.length()).equals(NOT_PREFIX)) {
-				posLiteral = posLiteral.substring(NOT_PREFIX.length(), posLiteral.length() - 1);
-				isNegative = !isNegative;
-			}
-			if (!ruleSet.containsKey(posLiteral) && posLiteral.length() > DISTINCT_PREFIX.length() && 
-					posLiteral.substring(0, DISTINCT_PREFIX.length()).equals(DISTINCT_PREFIX)) {
-				GdlNode distinctNode = GdlParser.parseString(posLiteral).getChild(0);
-				if (!distinctNode.getChild(0).toString().equals(distinctNode.getChild(1).toString())){
-					addFactToRuleSet.add(posLiteral);
-					return clause;
+	public void joinClause(GdlNode node) throws GDLSyntaxException {
+		decode();
+		numRulesUncompressed++;
+		
+		if (node.getType() == GdlType.FORMULA || node.getType() == GdlType.VARIABLE) {
+			// These are facts
+			if (node.getAtom().contentEquals(GdlNode.INIT)) {
+				// Change init clauses to true and add to initialSet which
+				// will be set true exactly once
+				if (!initialSet.contains(node.getChild(0).toString())) {
+					initialSet.add(symbols.canonical(node.getChild(0).toString()));
 				}
+				//TODO: Confirm if commenting this transformation breaks anything
+				//if (!predicateSet.contains(TRUE_PREFIX + node.getChild(0).toString() + ")")) {
+				//	predicateSet.add((TRUE_PREFIX + node.getChild(0).toString() + ")").intern());
+				//}
+				//ruleSet.put(node.toString(), new HashSet<Set<String>>());
+			} else {
+				// Non-init facts added to tautology set and rule set as
+				// empty body clauses
+				replaceRule(node.toString());
+
 			}
-			if (posLiteral.length() > DOES_PREFIX.length() && 
-					posLiteral.substring(0, DOES_PREFIX.length()).equals(DOES_PREFIX)) {
-				if (ruleSet.get("(legal " + posLiteral.substring(DOES_PREFIX.length())) == null){
-					// does must always have a corresponding legal
-					if (!isNegative) {
-						return null;
-					} else {
-						clauseIterator.remove();
-					}
-				}
-			} else if (!(posLiteral.length() > TRUE_PREFIX.length() && 
-					posLiteral.substring(0, TRUE_PREFIX.length()).equals(TRUE_PREFIX)))
-			{
-				
-				if (ruleSet.get(posLiteral) == null && !isNegative) {
-					return null; // false
-				} else if (ruleSet.get(posLiteral) == null && isNegative) {
-					clauseIterator.remove(); // true
-				} else if (ruleSet.get(posLiteral).isEmpty() && !isNegative) {
-					clauseIterator.remove(); // true
-				} else if (ruleSet.get(posLiteral).isEmpty() && isNegative) {
-					return null; // false
+			//if (!predicateSet.contains(node.toString())) {
+				predicateSet.add(symbols.canonical(node.toString()));
+			//}
+
+		} else if (node.getType() == GdlType.CLAUSE) {
+			// These are clauses
+			String head = symbols.canonical(node.getChild(0).toString());
+			if (!ruleSet.containsKey(head)) {
+				ruleSet.put(head, new HashSet<Set<String>>());
+			}
+			Set<String> clauseLiteralSet = new HashSet<String>();
+
+			for (int i = 1; i < node.getChildren().size(); i++) {
+				GdlNode literal = node.getChild(i);
+
+				// Add literal to ruleset before any processing
+				clauseLiteralSet.add(symbols.canonical(literal.toString()));
+
+				// Strip negatives and add to literalSet
+				boolean isNegative = false;
+				while (literal.getAtom().equals(GdlNode.NOT)) {
+					literal = literal.getChild(0);
+					isNegative = !isNegative;
 				}
+
+				// Add striped literal to vocab set
+				//if (!predicateSet.contains(literal.toString())) {
+					predicateSet.add(symbols.canonical(literal.toString()));
+				//}
+
+				// Distinct literals stay in the body and are decided when
+				// the rule set is culled
 			}
+			
+			//if (!predicateSet.contains(node.getChild(0).toString())) {
+				predicateSet.add(head);
+			//}
+			
+			ruleSet.get(head).add(clauseLiteralSet);
+		} else {
+			throw new GDLSyntaxException();
 		}
-		return clause;
+		numRulesCompressed = ruleSet.size();
 	}
 	
-	
-	public Map<String, Integer> generateStratumMap(){
-		HashSet<String> nextSet = new HashSet<String>();
-		for (String head : ruleSet.keySet()) {
-			if (head.length() > NEXT_PREFIX.length() && head.substring(0, NEXT_PREFIX.length()).equals(NEXT_PREFIX)) {
-				nextSet.add(head);
-			}
+	/**
+	 * Join a ground fact given as its literal string, the same way
+	 * joinClause(GdlNode) joins a fact node.
+	 * 
+	 * @param fact
+	 * @param initialLiteral
+	 *            argument of an init fact, null for any other fact
+	 */
+	public void joinGroundFact(String fact, String initialLiteral) {
+		decode();
+		numRulesUncompressed++;
+
+		if (initialLiteral != null) {
+			initialSet.add(symbols.canonical(initialLiteral));
+		} else {
+			replaceRule(symbols.canonical(fact));
 		}
-		
-		for (String head : ruleSet.keySet()) {
-			if (!stratumMap.containsKey(head)) {
-				int stratum = computeStratum(head, new ArrayDeque<String>(), nextSet);
-				if (stratum > -3) {
-					stratumMap.put(head, stratum);
-				}
-			}
+		predicateSet.add(symbols.canonical(fact));
+
+		numRulesCompressed = ruleSet.size();
+	}
+
+	/**
+	 * Join a ground rule given as literal strings, the same way
+	 * joinClause(GdlNode) joins a clause node.
+	 * 
+	 * @param head
+	 * @param body
+	 *            body literals of the rule
+	 * @param positiveBody
+	 *            body literals with their negations stripped
+	 */
+	public void joinGroundRule(String head, List<String> body, List<String> positiveBody) {
+		decode();
+		numRulesUncompressed++;
+
+		head = symbols.canonical(head);
+		if (ruleSet.get(head) == null) {
+			ruleSet.put(head, new HashSet<Set<String>>());
 		}
-		
-		for (String next : nextSet) {
-			if (!stratumMap.containsKey(next)) {
-				int stratum = computeStratum(next, new ArrayDeque<String>(), new HashSet<String>());
-				if (stratumMap.get(next) == null || stratum > stratumMap.get(next)) {
-					stratumMap.put(next, stratum);
-				}
-			}
+		Set<Set<String>> rule = ruleSet.get(head);
+		Set<String> clauseLiteralSet = new HashSet<String>();
+		for (int i = 0; i < body.size(); i++) {
+			clauseLiteralSet.add(symbols.canonical(body.get(i)));
+			predicateSet.add(symbols.canonical(positiveBody.get(i)));
 		}
-		
-		return stratumMap;
+		predicateSet.add(head);
+		rule.add(clauseLiteralSet);
+
+		numRulesCompressed = ruleSet.size();
+	}
+
+	/**
+	 * Simplify the rules until no head becomes a fact or a contradiction.
+	 * Literals known to hold are dropped from bodies, a body with a literal
+	 * known not to hold is dropped, a head with an empty body becomes a fact
+	 * and a head without bodies a contradiction. Runs on the IntRuleSet the
+	 * rules are kept in from the first pass on, which only revisits the
+	 * bodies that mention a head once it is decided. Sets numClausesCulled
+	 * and numLiteralsCulled.
+	 * 
+	 * @param cullNullRules
+	 *            remove contradictions instead of keeping them as null rules
+	 * @return number of heads decided
+	 */
+	public int cullVariables(boolean cullNullRules) {
+		IntRuleSet rules = encoded();
+		int numDecided = rules.cullVariables(cullNullRules);
+		ruleSet = null;
+		numClausesCulled = rules.numClausesRemoved;
+		numLiteralsCulled = rules.numLiteralsRemoved;
+		return numDecided;
 	}
 	
 	/**
-	 * Computes the stratum of a predicate by evaluating max stratum of body plus one. If body literal stratum not known then recursively compute it's stratum as well.
-	 * @param headNode
-	 * @param stack
-	 * @param nextSet
+	 * Shrink the DNF of every head to an equivalent one after
+	 * cullVariables(boolean): drop duplicate literals and subsumed bodies,
+	 * and merge bodies that only differ in the sign of one literal. Runs on
+	 * the IntRuleSet the rules are kept in. Sets numRulesMinimized.
+	 * 
+	 * @return number of heads whose DNF was made smaller
+	 */
+	public int minimizeRules() {
+		numRulesMinimized = encoded().minimize(true);
+		ruleSet = null;
+		return numRulesMinimized;
+	}
+	
+	/**
+	 * Stratum of every head and the old set, computed without recursion by
+	 * one search of the ordering constraints between heads. See
+	 * IntRuleSet.generateStratumMap(Map, Set).
+	 * 
 	 * @return
 	 */
-	public int computeStratum(String headNode, Deque<String> stack, Set<String> nextSet) {
-		if (headNode == null || (headNode.length() > INIT_PREFIX.length() && headNode.substring(0, INIT_PREFIX.length()).equals(INIT_PREFIX))) {
-			return -2; // Null parameter
-		}
-		if (stack.contains(headNode)) {
-			if (!oldSet.contains(headNode)) {
-				oldSet.add(headNode);
-				//System.out.println("Oldify " + headNode);
-			}
-			return 0;
-		}
-		
-		Set<Set<String>> rule = ruleSet.get(headNode);
-		if (rule == null) {
-			return -2; // Contradiction
-		} else if (rule.isEmpty()) {
-			return 0;
-		} else {
-			int max = -2;
-			Set<String> trueSet = new HashSet<String>();
-			
-			for (Set<String> disjunct : rule) {
-				for (String predicate : disjunct) {
-					// Prune not from literal
-					while (predicate.length() >= NOT_PREFIX.length()
-							&& predicate.substring(0, NOT_PREFIX.length()).equals(NOT_PREFIX)) {
-						predicate = predicate.substring(NOT_PREFIX.length(), predicate.length() - 1);
-					}
-					
-					if (nextSet.contains(predicate)) {
-						if (!nextSet.contains(headNode)) {
-							nextSet.add(headNode);
-						}
-						return -3;
-					}
-					if (predicate.length() >= DOES_PREFIX.length()
-							&& predicate.substring(0, DOES_PREFIX.length()).equals(DOES_PREFIX)) {
-						// Stratum unknown, does is 0
-						stratumMap.put(predicate, 0);
-						if (max < 0) {
-							max = 0;
-						}
-					} else if (predicate.length() >= TRUE_PREFIX.length()
-							&& predicate.substring(0, TRUE_PREFIX.length()).equals(TRUE_PREFIX)) {
-						// Stratum unknown, true is 0
-						stratumMap.put(predicate, 0);
-						
-						if (max < 0) {
-							max = 0;
-						}
-						
-						String nextP = NEXT_PREFIX + predicate.substring(TRUE_PREFIX.length());
-						if (nextP.equals(headNode)) {
-							continue;
-						}
-						if (!trueSet.contains(predicate)) {
-							trueSet.add(predicate);
-						}
-						if (headNode.length() > NEXT_PREFIX.length() && headNode.substring(0, NEXT_PREFIX.length()).equals(NEXT_PREFIX)) {
-							if (stratumMap.containsKey(nextP) && max < stratumMap.get(nextP)) {
-								max = stratumMap.get(nextP);
-							}
-						} else {
-							for (String prev : stack) {
-								if ((prev.length() > NEXT_PREFIX.length() && prev.substring(0, NEXT_PREFIX.length()).equals(NEXT_PREFIX))) {
-									if (stratumMap.containsKey(nextP) && max < stratumMap.get(nextP)) {
-										max = stratumMap.get(nextP);
-									}
-								}
-							}
-						}
-						
-					} else {
-						// Stratum unknown, compute stratum(recursive)
-						stack.push(headNode);
-						int literalStratum = computeStratum(predicate, stack, nextSet);
-						stack.pop(); // pop head node
-						
-						if (literalStratum != 0 || !oldSet.contains(predicate)) {
-							stratumMap.put(predicate, literalStratum);
-						}
-						if (literalStratum > max) {
-							max = literalStratum;
-						}
-					}
-				}
-			}
-			
-			// Each true in body is assigned corresponding next value
-			for (String trueP : trueSet) {
-				String nextP = NEXT_PREFIX + trueP.substring(TRUE_PREFIX.length());
-				int literalStratum = -3;
-				if (stratumMap.containsKey(nextP)) {
-					if (stratumMap.get(nextP) <= max + 1) {
-						stratumMap.put(nextP, max + 2);
-					}
-				} else {
-					stack.push(headNode);
-					literalStratum = computeStratum(nextP, stack, nextSet);
-					stack.pop(); // pop head node
-					stratumMap.put(nextP, literalStratum);
-				}
-
-				
-				if (literalStratum > max) {
-					max = literalStratum;
-				}
-			}
-			
-			return max + 1;
-		}
+	public Map<String, Integer> generateStratumMap(){
+		encoded().generateStratumMap(stratumMap, oldSet);
+		return stratumMap;
 	}
 	
 	public Set<String> getOldSet(){
@@ -425,71 +381,10 @@ public class GdlRuleSet {
 	
 	public Model generateModel(Model oldModel) {
 		Set<String> trueLiterals = new HashSet<String>();
-		Set<String> falseLiterals = new HashSet<String>();
 		for (String init : oldModel.getModel()) {
 			trueLiterals.add(init.replace(NEXT_PREFIX, TRUE_PREFIX));
 		}
-		ArrayDeque<String> iterationQueue = new ArrayDeque<String>();
-		iterationQueue.addAll(ruleSet.keySet());
-		while(!iterationQueue.isEmpty()){
-			int queueSize = iterationQueue.size();
-			Iterator<String> dequeIterator = iterationQueue.iterator();
-			while (dequeIterator.hasNext()) {
-				String rule = dequeIterator.next();
-				if (ruleSet.get(rule) == null) {
-					falseLiterals.add(rule);
-					dequeIterator.remove();
-				} else if (ruleSet.get(rule).isEmpty()) {
-					trueLiterals.add(rule);
-					dequeIterator.remove();
-				} else {
-					boolean ruleHasOnlyFalse = true;
-					for (Set<String> disjunct : ruleSet.get(rule)) {
-						boolean clauseHasFalse = false;
-						boolean clauseHasNotRecorded = false;
-						for (String literal : disjunct) {
-							boolean isNegative = false;
-							while(literal.length() > NOT_PREFIX.length() && literal.substring(0, NOT_PREFIX.length()).equals(NOT_PREFIX)) {
-								literal = literal.substring(NOT_PREFIX.length(), literal.length() - 1);
-								isNegative = !isNegative;
-							}
-							if (trueLiterals.contains(literal) && !isNegative) {
-								// True
-							} else if (trueLiterals.contains(literal) && isNegative) {
-								// False
-								clauseHasFalse = true;
-							} else if (falseLiterals.contains(literal) && !isNegative) {
-								// False
-								clauseHasFalse = true;
-							} else if (falseLiterals.contains(literal) && isNegative) {
-								// True
-							} else {
-								// Unknown
-								clauseHasNotRecorded = true;
-							}
-						}
-						
-						if (!clauseHasFalse) {
-							ruleHasOnlyFalse = false;// rule contains non false clause
-							
-							if (!clauseHasNotRecorded) {
-								// All known true literals in this clause
-								trueLiterals.add(rule);
-								dequeIterator.remove();
-								break;
-							}
-						}
-					}
-					if (ruleHasOnlyFalse) {
-						falseLiterals.add(rule);
-						dequeIterator.remove();
-					}
-				}
-			}
-			if (iterationQueue.size() == queueSize) {
-				break;
-			}
-		}
+		trueLiterals = encoded().generateModel(trueLiterals);
 		trueLiterals.addAll(tautologySet);
 		
 		return new Model(trueLiterals);
@@ -534,7 +429,7 @@ public class GdlRuleSet {
 			}
 			if (!trueLiterals.contains(literal) && !isNegative
 					&& literal.substring(0, NEXT_PREFIX.length()).equals(NEXT_PREFIX)) {
-				trueLiterals.add(TRUE_PREFIX + literal.intern());
+				trueLiterals.add(TRUE_PREFIX + literal);
 			}
 		}
 
@@ -625,6 +520,7 @@ public class GdlRuleSet {
 		if (stratumMap == null ||  stratumMap.isEmpty()) {
 			generateStratumMap();
 		}
+		Map<String, Set<Set<String>>> ruleSet = getRuleSet();
 		PriorityQueue<String> orderer = new PriorityQueue<String>(ruleSet.keySet().size(), new Comparator<String>() {
 			@Override
 			public int compare(String o1, String o2) {
@@ -640,13 +536,26 @@ public class GdlRuleSet {
 	}
 	
 	public Set<Set<String>> getRule(String headNode) {
-		return ruleSet.get(headNode);
+		return getRuleSet().get(headNode);
 	}
 
+	/**
+	 * @return the rules as strings, decoded again after a pass has run
+	 */
 	public Map<String, Set<Set<String>>> getRuleSet() {
+		if (ruleSet == null) {
+			ruleSet = rules.decode();
+		}
 		return ruleSet;
 	}
 
+	/**
+	 * @return number of heads, without decoding the rules
+	 */
+	public int size() {
+		return ruleSet != null ? ruleSet.size() : rules.size();
+	}
+
 	public Set<String> getTautologySet() {
 		return tautologySet;
 	}
@@ -660,6 +569,7 @@ public class GdlRuleSet {
 	}
 
 	public String toGdl() {
+		Map<String, Set<Set<String>>> ruleSet = getRuleSet();
 		StringBuilder gdl = new StringBuilder();
 
 		for (String init : initialSet) {
@@ -691,6 +601,7 @@ public class GdlRuleSet {
 	}
 	
 	public String toGdlOrdered(){
+		Map<String, Set<Set<String>>> ruleSet = getRuleSet();
 		StringBuilder gdl = new StringBuilder();
 
 		int stratum = 0;
@@ -729,7 +640,157 @@ public class GdlRuleSet {
 		return gdl.toString();
 	}
 
+	/**
+	 * Write the rule set in binary form. The distinct literal strings are
+	 * written once as a table and every set and rule refers to them by id.
+	 * Sets are written in iteration order and read back in the same order.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeBinary(DataOutputStream out) throws IOException {
+		Map<String, Set<Set<String>>> ruleSet = getRuleSet();
+		SymbolTable table = new SymbolTable();
+		List<Set<String>> sets = new ArrayList<Set<String>>();
+		sets.add(predicateSet);
+		sets.add(initialSet);
+		sets.add(tautologySet);
+		sets.add(contradictionSet);
+		sets.add(oldSet);
+		for (Set<String> set : sets) {
+			for (String literal : set) {
+				table.getId(literal);
+			}
+		}
+		for (String headNode : ruleSet.keySet()) {
+			table.getId(headNode);
+			if (ruleSet.get(headNode) != null) {
+				for (Set<String> disjunct : ruleSet.get(headNode)) {
+					for (String literal : disjunct) {
+						table.getId(literal);
+					}
+				}
+			}
+		}
+		for (String literal : stratumMap.keySet()) {
+			table.getId(literal);
+		}
+
+		out.writeInt(table.size());
+		for (int i = 0; i < table.size(); i++) {
+			out.writeUTF(table.getSymbol(i));
+		}
+		for (Set<String> set : sets) {
+			writeIds(out, set, table);
+		}
+		out.writeInt(ruleSet.size());
+		for (String headNode : ruleSet.keySet()) {
+			Set<Set<String>> rule = ruleSet.get(headNode);
+			out.writeInt(table.lookup(headNode));
+			if (rule == null) {
+				out.writeInt(-1); // contradiction
+			} else {
+				out.writeInt(rule.size());
+				for (Set<String> disjunct : rule) {
+					writeIds(out, disjunct, table);
+				}
+			}
+		}
+		out.writeInt(stratumMap.size());
+		for (Map.Entry<String, Integer> entry : stratumMap.entrySet()) {
+			out.writeInt(table.lookup(entry.getKey()));
+			out.writeInt(entry.getValue());
+		}
+		out.writeInt(numRulesUncompressed);
+		out.writeInt(numRulesCompressed);
+		out.writeInt(numRulesMinimized);
+	}
+
+	private static void writeIds(DataOutputStream out, Set<String> set, SymbolTable table) throws IOException {
+		out.writeInt(set.size());
+		for (String literal : set) {
+			out.writeInt(table.lookup(literal));
+		}
+	}
+
+	/**
+	 * Read a rule set written by writeBinary(DataOutputStream). Literal
+	 * strings are canonicalized through the symbol table of the translation.
+	 * 
+	 * @param in
+	 * @param symbols
+	 * @return ruleSet
+	 * @throws IOException
+	 */
+	public static GdlRuleSet readBinary(DataInputStream in, SymbolTable symbols) throws IOException {
+		GdlRuleSet gdlRuleSet = new GdlRuleSet(symbols);
+		// Keep the order of the file, which is the iteration order of the
+		// rule set that was written. oldSet and stratumMap are derived from
+		// the rules by generateStratumMap(), they only keep the order of the
+		// file if they were written after being generated.
+		gdlRuleSet.predicateSet = new LinkedHashSet<String>();
+		gdlRuleSet.initialSet = new LinkedHashSet<String>();
+		gdlRuleSet.tautologySet = new LinkedHashSet<String>();
+		gdlRuleSet.contradictionSet = new LinkedHashSet<String>();
+		gdlRuleSet.ruleSet = new LinkedHashMap<String, Set<Set<String>>>();
+
+		String[] table = new String[in.readInt()];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = symbols.canonical(in.readUTF());
+		}
+		readIds(in, gdlRuleSet.predicateSet, table);
+		readIds(in, gdlRuleSet.initialSet, table);
+		readIds(in, gdlRuleSet.tautologySet, table);
+		readIds(in, gdlRuleSet.contradictionSet, table);
+		int numOld = in.readInt();
+		if (numOld > 0) {
+			gdlRuleSet.oldSet = new LinkedHashSet<String>();
+		}
+		readIds(in, numOld, gdlRuleSet.oldSet, table);
+		int numRules = in.readInt();
+		for (int i = 0; i < numRules; i++) {
+			String headNode = table[in.readInt()];
+			int numDisjuncts = in.readInt();
+			if (numDisjuncts < 0) {
+				gdlRuleSet.ruleSet.put(headNode, null);
+			} else if (numDisjuncts == 0) {
+				gdlRuleSet.ruleSet.put(headNode, Collections.<Set<String>> emptySet());
+			} else {
+				Set<Set<String>> rule = new LinkedHashSet<Set<String>>();
+				for (int j = 0; j < numDisjuncts; j++) {
+					Set<String> disjunct = new LinkedHashSet<String>();
+					readIds(in, disjunct, table);
+					rule.add(disjunct);
+				}
+				gdlRuleSet.ruleSet.put(headNode, rule);
+			}
+		}
+		int numStrata = in.readInt();
+		if (numStrata > 0) {
+			gdlRuleSet.stratumMap = new LinkedHashMap<String, Integer>();
+		}
+		for (int i = 0; i < numStrata; i++) {
+			String literal = table[in.readInt()];
+			gdlRuleSet.stratumMap.put(literal, in.readInt());
+		}
+		gdlRuleSet.numRulesUncompressed = in.readInt();
+		gdlRuleSet.numRulesCompressed = in.readInt();
+		gdlRuleSet.numRulesMinimized = in.readInt();
+		return gdlRuleSet;
+	}
+
+	private static void readIds(DataInputStream in, Set<String> set, String[] table) throws IOException {
+		readIds(in, in.readInt(), set, table);
+	}
+
+	private static void readIds(DataInputStream in, int size, Set<String> set, String[] table) throws IOException {
+		for (int i = 0; i < size; i++) {
+			set.add(table[in.readInt()]);
+		}
+	}
+
 	public String debug() {
+		Map<String, Set<Set<String>>> ruleSet = getRuleSet();
 		StringBuilder debug = new StringBuilder();
 		debug.append(System.lineSeparator() + "Literals: " + predicateSet.toString());
 		for (String literal : predicateSet) {
@@ -0,0 +1,1133 @@
+package prover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import util.SymbolTable;
+
+/**
+ * The rules of a GdlRuleSet encoded as ints, for the passes over the whole
+ * rule set. Atoms are numbered by their id in the symbol table of the
+ * translation. A literal is the id of its atom shifted left by one with the
+ * sign in the low bit, and each body is a run of literals in one int pool,
+ * preceded by its length. The DNF of a head is an array of offsets of its
+ * bodies in the pool.
+ *
+ * Heads keep the iteration order of the rule set they were encoded from.
+ * Bodies and their literals do too, until minimize(boolean) sorts them by
+ * the strings of their atoms, an order that doesn't depend on the ids the
+ * atoms were given. decode() keeps the order of the pool, so the same rules
+ * decode the same however they were ground or loaded. Which atoms of a cycle
+ * generateStratumMap() puts in the old set depends on the order it meets
+ * them in, so the same rule set always gives the same old set.
+ *
+ * Whether an atom is a true, does, next, init or holding distinct atom is
+ * read from its LiteralDescriptor, made once per atom id, so the passes
+ * never look at a string. A GdlRuleSet is encoded once, the first time a
+ * pass runs, and keeps the IntRuleSet through every later pass. The String
+ * forms stay in the symbol table and are only needed to decode the rules
+ * for output with decode().
+ *
+ * Double negations cancel, a body literal (not (not p)) is written back as p.
+ *
+ * @author vedantds
+ *
+ */
+final class IntRuleSet {
+
+	// States of an atom as a head
+	private final static byte ABSENT = 0;
+	private final static byte CONTRADICTION = 1; // null rule
+	private final static byte FACT = 2; // empty rule
+	private final static byte RULE = 3;
+
+	// Results of processClause
+	private final static int FALSE_CLAUSE = -1;
+	private final static int KEPT_CLAUSE = 0;
+	private final static int EMPTY_CLAUSE = 1;
+
+	private final static int UNKNOWN_STRATUM = Integer.MIN_VALUE;
+
+	// Counters of the last cullVariables(boolean)
+	int numClausesRemoved;
+	int numLiteralsRemoved;
+
+	private final SymbolTable symbols;
+	// Heads in the iteration order of the rule set
+	private int[] heads;
+	private int numHeads;
+	private byte[] state;
+	// Descriptor of every atom of a head, a literal or a partner, by id
+	private LiteralDescriptor[] atoms;
+	private int[][] dnf;
+	private int[] pool;
+	// Offset and head of every body, in the order they were encoded
+	private int[] clauseOffsets;
+	private int[] clauseHeads;
+	private int numClauses;
+	// End of the encoded bodies in the pool, and the size the pool is not
+	// grown past while the bodies still fit
+	private int poolEnd;
+	private int poolLimit;
+	// State and DNF of every head by its position in heads, until finish()
+	private byte[] headState;
+	private int[][] headDnf;
+	// Heads decided by cullVariables(boolean) whose bodies are to be revisited
+	private int[] worklist;
+	private int numWorklist;
+	private int numDecided;
+	// Position of every atom in the order of their strings, and the atom at
+	// every position, while minimize(boolean) runs
+	private int[] rank;
+	private int[] byRank;
+
+	/**
+	 * Encode the rules of a rule set. Each head is removed from the rule set
+	 * once it is encoded, and the pool grows as the rule set shrinks, so the
+	 * strings and the encoding are never both held whole.
+	 *
+	 * @param symbols
+	 *            symbol table the strings of the rules are canonical in
+	 * @param ruleSet
+	 *            emptied
+	 */
+	IntRuleSet(SymbolTable symbols, Map<String, Set<Set<String>>> ruleSet) {
+		this(symbols, ruleSet.size(), numClauses(ruleSet), poolSize(ruleSet));
+		Iterator<Map.Entry<String, Set<Set<String>>>> entries = ruleSet.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, Set<Set<String>>> entry = entries.next();
+			add(entry.getKey(), entry.getValue());
+			entries.remove();
+		}
+		finish();
+	}
+
+	/**
+	 * Start an empty encoding, for rules that are never held whole as
+	 * strings. Heads are added one at a time with add(String, Set), and
+	 * finish() ends the encoding before any pass runs.
+	 *
+	 * @param symbols
+	 *            symbol table the strings of the rules are canonical in
+	 * @param expectedHeads
+	 * @param expectedClauses
+	 * @param expectedPoolSize
+	 *            number of bodies plus number of literals, the pool is not
+	 *            grown past it unless the bodies added need more
+	 */
+	IntRuleSet(SymbolTable symbols, int expectedHeads, int expectedClauses, int expectedPoolSize) {
+		this.symbols = symbols;
+		atoms = new LiteralDescriptor[symbols.size()];
+		heads = new int[expectedHeads];
+		headState = new byte[expectedHeads];
+		headDnf = new int[expectedHeads][];
+		clauseOffsets = new int[expectedClauses];
+		clauseHeads = new int[expectedClauses];
+		poolLimit = expectedPoolSize;
+		pool = new int[Math.min(expectedPoolSize, 1024)];
+	}
+
+	private static int numClauses(Map<String, Set<Set<String>>> ruleSet) {
+		int numClauses = 0;
+		for (Set<Set<String>> rule : ruleSet.values()) {
+			if (rule != null) {
+				numClauses += rule.size();
+			}
+		}
+		return numClauses;
+	}
+
+	private static int poolSize(Map<String, Set<Set<String>>> ruleSet) {
+		int size = 0;
+		for (Set<Set<String>> rule : ruleSet.values()) {
+			if (rule != null) {
+				for (Set<String> disjunct : rule) {
+					size += disjunct.size() + 1;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Encode the rule of a head that hasn't been added yet
+	 *
+	 * @param head
+	 *            canonical in the symbol table
+	 * @param rule
+	 *            null for a contradiction, empty for a fact
+	 */
+	void add(String head, Set<Set<String>> rule) {
+		if (numHeads == heads.length) {
+			int capacity = Math.max(16, heads.length * 2);
+			heads = Arrays.copyOf(heads, capacity);
+			headState = Arrays.copyOf(headState, capacity);
+			headDnf = Arrays.copyOf(headDnf, capacity);
+		}
+		int atom = encode(head) >>> 1;
+		heads[numHeads] = atom;
+		if (rule == null) {
+			headState[numHeads] = CONTRADICTION;
+		} else if (rule.isEmpty()) {
+			headState[numHeads] = FACT;
+		} else {
+			headState[numHeads] = RULE;
+			int[] clauses = new int[rule.size()];
+			int numHeadClauses = 0;
+			for (Set<String> disjunct : rule) {
+				int end = poolEnd + disjunct.size() + 1;
+				if (end > pool.length) {
+					int capacity = Math.max(end, pool.length * 2);
+					pool = Arrays.copyOf(pool, end <= poolLimit ? Math.min(poolLimit, capacity) : capacity);
+				}
+				if (numClauses == clauseOffsets.length) {
+					int capacity = Math.max(16, clauseOffsets.length * 2);
+					clauseOffsets = Arrays.copyOf(clauseOffsets, capacity);
+					clauseHeads = Arrays.copyOf(clauseHeads, capacity);
+				}
+				clauses[numHeadClauses++] = poolEnd;
+				clauseOffsets[numClauses] = poolEnd;
+				clauseHeads[numClauses++] = atom;
+				pool[poolEnd++] = disjunct.size();
+				for (String literal : disjunct) {
+					pool[poolEnd++] = encode(literal);
+				}
+			}
+			headDnf[numHeads] = clauses;
+		}
+		numHeads++;
+	}
+
+	/**
+	 * End the encoding, after the last add(String, Set)
+	 */
+	void finish() {
+		if (numClauses < clauseOffsets.length) {
+			clauseOffsets = Arrays.copyOf(clauseOffsets, numClauses);
+			clauseHeads = Arrays.copyOf(clauseHeads, numClauses);
+		}
+
+		// Literals with their negations stripped may have added symbols
+		int numAtoms = symbols.size();
+		state = new byte[numAtoms];
+		atoms = Arrays.copyOf(atoms, numAtoms);
+		dnf = new int[numAtoms][];
+		for (int i = 0; i < numHeads; i++) {
+			state[heads[i]] = headState[i];
+			dnf[heads[i]] = headDnf[i];
+		}
+		headState = null;
+		headDnf = null;
+	}
+
+	/**
+	 * @param literal
+	 *            a literal or a head, canonical in the symbol table
+	 * @return the literal with its sign encoded in the low bit
+	 */
+	private int encode(String literal) {
+		boolean negative = false;
+		while (literal.startsWith(GdlRuleSet.NOT_PREFIX) && literal.length() > GdlRuleSet.NOT_PREFIX.length()) {
+			literal = literal.substring(GdlRuleSet.NOT_PREFIX.length(), literal.length() - 1);
+			negative = !negative;
+		}
+		int atom = symbols.getId(literal);
+		describe(atom);
+		return atom << 1 | (negative ? 1 : 0);
+	}
+
+	/**
+	 * Describe an atom, and its partner so generateStratumMap knows the kind
+	 * of every atom it meets
+	 */
+	private void describe(int atom) {
+		if (atom >= atoms.length) {
+			atoms = Arrays.copyOf(atoms, Math.max(atom + 1, atoms.length * 2));
+		}
+		if (atoms[atom] != null) {
+			return;
+		}
+		atoms[atom] = LiteralDescriptor.describe(atom, symbols);
+		if (atoms[atom].partner != SymbolTable.NO_SYMBOL) {
+			describe(atoms[atom].partner);
+		}
+	}
+
+	private boolean isDefined(int atom) {
+		return atom >= 0 && atom < state.length && (state[atom] == FACT || state[atom] == RULE);
+	}
+
+	/**
+	 * Same result as culling in passes over every head until no head is
+	 * decided, see GdlRuleSet.cullVariables(boolean). Every body is
+	 * simplified once, and after that only the bodies that mention a head
+	 * that was decided since are simplified again, found through an index
+	 * from each atom to the bodies whose literals depend on it. A does
+	 * literal depends on its legal atom, a true literal on nothing.
+	 *
+	 * @param cullNullRules
+	 * @return number of heads decided
+	 */
+	int cullVariables(boolean cullNullRules) {
+		numClausesRemoved = 0;
+		numLiteralsRemoved = 0;
+		int[][] occurrences = occurrences();
+		int[] live = new int[state.length];
+		for (int clause = 0; clause < clauseOffsets.length; clause++) {
+			if (pool[clauseOffsets[clause]] >= 0) {
+				live[clauseHeads[clause]]++;
+			}
+		}
+		BitSet culled = new BitSet();
+		worklist = new int[16];
+		numWorklist = 0;
+		numDecided = 0;
+
+		for (int clause = 0; clause < clauseOffsets.length; clause++) {
+			revisit(clause, live, culled);
+		}
+		while (numWorklist > 0) {
+			int atom = worklist[--numWorklist];
+			if (occurrences[atom] == null) {
+				continue;
+			}
+			for (int clause : occurrences[atom]) {
+				revisit(clause, live, culled);
+			}
+		}
+
+		for (int i = 0; i < numHeads; i++) {
+			int head = heads[i];
+			if (state[head] != RULE) {
+				dnf[head] = null;
+			} else if (live[head] < dnf[head].length) {
+				int[] clauses = new int[live[head]];
+				int numKept = 0;
+				for (int clause : dnf[head]) {
+					if (pool[clause] >= 0) {
+						clauses[numKept++] = clause;
+					}
+				}
+				dnf[head] = clauses;
+			}
+		}
+		if (cullNullRules) {
+			for (int head = culled.nextSetBit(0); head >= 0; head = culled.nextSetBit(head + 1)) {
+				state[head] = ABSENT;
+			}
+		}
+		return numDecided;
+	}
+
+	/**
+	 * Simplify a body again if its head isn't decided yet and it wasn't
+	 * dropped
+	 */
+	private void revisit(int clause, int[] live, BitSet culled) {
+		int head = clauseHeads[clause];
+		if (state[head] != RULE || pool[clauseOffsets[clause]] < 0) {
+			return;
+		}
+		int result = processClause(clauseOffsets[clause]);
+		if (result == EMPTY_CLAUSE) {
+			numClausesRemoved += live[head];
+			decide(head, FACT);
+		} else if (result == FALSE_CLAUSE) {
+			// Marks the body dropped
+			pool[clauseOffsets[clause]] = -1;
+			numClausesRemoved++;
+			if (--live[head] == 0) {
+				// Each clause has a false literal therefore contradiction
+				culled.set(head);
+				decide(head, CONTRADICTION);
+			}
+		}
+	}
+
+	private void decide(int atom, byte decision) {
+		state[atom] = decision;
+		numDecided++;
+		if (numWorklist == worklist.length) {
+			worklist = Arrays.copyOf(worklist, numWorklist * 2);
+		}
+		worklist[numWorklist++] = atom;
+	}
+
+	/**
+	 * @return for every atom, the bodies with a literal that depends on it
+	 */
+	private int[][] occurrences() {
+		int[] counts = new int[state.length];
+		for (int clause = 0; clause < clauseOffsets.length; clause++) {
+			int offset = clauseOffsets[clause];
+			for (int i = 1; i <= pool[offset]; i++) {
+				int atom = dependency(pool[offset + i] >>> 1);
+				if (atom >= 0) {
+					counts[atom]++;
+				}
+			}
+		}
+		int[][] occurrences = new int[state.length][];
+		for (int clause = 0; clause < clauseOffsets.length; clause++) {
+			int offset = clauseOffsets[clause];
+			for (int i = 1; i <= pool[offset]; i++) {
+				int atom = dependency(pool[offset + i] >>> 1);
+				if (atom < 0) {
+					continue;
+				}
+				if (occurrences[atom] == null) {
+					occurrences[atom] = new int[counts[atom]];
+					counts[atom] = 0;
+				}
+				// An atom twice in a body is listed twice, which is harmless
+				occurrences[atom][counts[atom]++] = clause;
+			}
+		}
+		return occurrences;
+	}
+
+	/**
+	 * @return the atom whose state decides a literal of this atom, -1 if
+	 *         none does
+	 */
+	private int dependency(int atom) {
+		if (atoms[atom].kind == LiteralDescriptor.TRUE) {
+			return -1;
+		}
+		return atoms[atom].kind == LiteralDescriptor.DOES ? atoms[atom].partner : atom;
+	}
+
+	private void addHead(int atom) {
+		if (numHeads == heads.length) {
+			heads = Arrays.copyOf(heads, Math.max(16, heads.length * 2));
+		}
+		heads[numHeads++] = atom;
+	}
+
+	/**
+	 * Drop the literals of a body that are known to hold, in place
+	 *
+	 * @return FALSE_CLAUSE if a literal is known not to hold, EMPTY_CLAUSE if
+	 *         every literal holds, KEPT_CLAUSE otherwise
+	 */
+	private int processClause(int clause) {
+		int length = pool[clause];
+		if (length == 0) {
+			return EMPTY_CLAUSE;
+		}
+		int kept = 0;
+		for (int i = 0; i < length; i++) {
+			int literal = pool[clause + 1 + i];
+			int atom = literal >>> 1;
+			boolean isNegative = (literal & 1) != 0;
+			if (state[atom] == ABSENT && atoms[atom].distinctHolds) {
+				// Holds, so it becomes a fact
+				addHead(atom);
+				decide(atom, FACT);
+			}
+			if (atoms[atom].kind == LiteralDescriptor.DOES) {
+				if (!isDefined(atoms[atom].partner)) {
+					// does must always have a corresponding legal
+					if (!isNegative) {
+						return FALSE_CLAUSE;
+					}
+					continue;
+				}
+			} else if (atoms[atom].kind != LiteralDescriptor.TRUE) {
+				if (state[atom] == ABSENT || state[atom] == CONTRADICTION) {
+					if (!isNegative) {
+						return FALSE_CLAUSE;
+					}
+					continue;
+				} else if (state[atom] == FACT) {
+					if (isNegative) {
+						return FALSE_CLAUSE;
+					}
+					continue;
+				}
+			}
+			pool[clause + 1 + kept++] = literal;
+		}
+		pool[clause] = kept;
+		numLiteralsRemoved += length - kept;
+		return kept == 0 ? EMPTY_CLAUSE : KEPT_CLAUSE;
+	}
+
+	/**
+	 * Shrink the DNF of every head to an equivalent one. Duplicate literals
+	 * are dropped from each body, a body that is a superset of another body
+	 * of the same head is dropped, and two bodies that only differ in the
+	 * sign of one literal are merged into one without it, until none of
+	 * these apply. A head that is left with an empty body is a fact, which
+	 * is passed on through cullVariables(boolean) before minimizing again.
+	 *
+	 * Culling can drop literals that kept two bodies apart, so the two
+	 * alternate until neither changes anything.
+	 *
+	 * Literals are sorted by the strings of their atoms and the bodies of a
+	 * head by their literals, so which bodies are merged and the order they
+	 * are left in don't depend on atom ids. Bodies are compared on sorted
+	 * literals, after a test on a bitmask of their literals rules out most
+	 * pairs.
+	 *
+	 * @param cullNullRules
+	 *            passed to cullVariables(boolean)
+	 * @return number of heads whose DNF was made smaller
+	 */
+	int minimize(boolean cullNullRules) {
+		rankAtoms();
+		BitSet minimized = new BitSet();
+		while (true) {
+			worklist = new int[16];
+			numWorklist = 0;
+			numDecided = 0;
+			boolean shrank = false;
+			for (int i = 0; i < numHeads; i++) {
+				int head = heads[i];
+				if (state[head] == RULE && minimize(head)) {
+					minimized.set(head);
+					shrank = true;
+				}
+			}
+			if (!shrank) {
+				break;
+			}
+			if (cullVariables(cullNullRules) == 0 && numClausesRemoved == 0 && numLiteralsRemoved == 0) {
+				break;
+			}
+		}
+		rank = null;
+		byRank = null;
+		return minimized.cardinality();
+	}
+
+	/**
+	 * Number the atoms in the order of their strings
+	 */
+	private void rankAtoms() {
+		List<Integer> ranked = new ArrayList<Integer>();
+		for (int atom = 0; atom < atoms.length; atom++) {
+			if (atoms[atom] != null) {
+				ranked.add(atom);
+			}
+		}
+		Collections.sort(ranked, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return symbols.getSymbol(o1).compareTo(symbols.getSymbol(o2));
+			}
+		});
+		rank = new int[atoms.length];
+		byRank = new int[ranked.size()];
+		for (int i = 0; i < byRank.length; i++) {
+			byRank[i] = ranked.get(i);
+			rank[byRank[i]] = i;
+		}
+	}
+
+	/**
+	 * @return the literal with its atom replaced by the rank of the atom
+	 */
+	private int order(int literal) {
+		return rank[literal >>> 1] << 1 | (literal & 1);
+	}
+
+	/**
+	 * @return true if the DNF of the head was made smaller
+	 */
+	private boolean minimize(int head) {
+		int[] clauses = dnf[head];
+		int numClauses = 0;
+		boolean changed = false;
+		for (int clause : clauses) {
+			if (pool[clause] >= 0) {
+				changed |= sortLiterals(clause);
+				clauses[numClauses++] = clause;
+			}
+		}
+		sortBodies(clauses, numClauses);
+		boolean merged = true;
+		while (merged && numClauses > 1) {
+			numClauses = removeSubsumed(clauses, numClauses);
+			int kept = resolve(clauses, numClauses);
+			merged = kept < numClauses;
+			numClauses = kept;
+		}
+		if (numClauses == 1 && pool[clauses[0]] == 0) {
+			// Only an empty body is left, the others were subsumed
+			decide(head, FACT);
+			dnf[head] = null;
+			return true;
+		}
+		changed |= numClauses < dnf[head].length;
+		dnf[head] = Arrays.copyOf(clauses, numClauses);
+		return changed;
+	}
+
+	/**
+	 * Sort the literals of a body by rank and drop duplicates, in place
+	 *
+	 * @return true if a literal was dropped
+	 */
+	private boolean sortLiterals(int clause) {
+		int length = pool[clause];
+		int[] ordered = new int[length];
+		for (int i = 0; i < length; i++) {
+			ordered[i] = order(pool[clause + 1 + i]);
+		}
+		Arrays.sort(ordered);
+		int kept = 0;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || ordered[i] != ordered[i - 1]) {
+				pool[clause + 1 + kept++] = byRank[ordered[i] >>> 1] << 1 | (ordered[i] & 1);
+			}
+		}
+		pool[clause] = kept;
+		return kept < length;
+	}
+
+	/**
+	 * Sort bodies with sorted literals, shorter first and then by the ranks
+	 * of their literals
+	 */
+	private void sortBodies(int[] clauses, int numClauses) {
+		Integer[] sorted = new Integer[numClauses];
+		for (int i = 0; i < numClauses; i++) {
+			sorted[i] = clauses[i];
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				if (pool[o1] != pool[o2]) {
+					return pool[o1] - pool[o2];
+				}
+				for (int i = 1; i <= pool[o1]; i++) {
+					int first = order(pool[o1 + i]);
+					int second = order(pool[o2 + i]);
+					if (first != second) {
+						return first - second;
+					}
+				}
+				return 0;
+			}
+		});
+		for (int i = 0; i < numClauses; i++) {
+			clauses[i] = sorted[i];
+		}
+	}
+
+	/**
+	 * Drop every body that has all the literals of another body. Bodies are
+	 * tried shortest first, so a body is only compared with the bodies kept
+	 * before it.
+	 *
+	 * @return number of bodies kept at the front of clauses
+	 */
+	private int removeSubsumed(int[] clauses, int numClauses) {
+		long[] bySize = new long[numClauses];
+		long[] signatures = new long[numClauses];
+		for (int i = 0; i < numClauses; i++) {
+			bySize[i] = (long) pool[clauses[i]] << 32 | i;
+			signatures[i] = signature(clauses[i], false);
+		}
+		Arrays.sort(bySize);
+		int[] kept = new int[numClauses];
+		int numKept = 0;
+		for (long entry : bySize) {
+			int i = (int) entry;
+			boolean subsumed = false;
+			for (int j = 0; j < numKept && !subsumed; j++) {
+				subsumed = (signatures[kept[j]] & ~signatures[i]) == 0 && isSubset(clauses[kept[j]], clauses[i]);
+			}
+			if (subsumed) {
+				pool[clauses[i]] = -1;
+			} else {
+				kept[numKept++] = i;
+			}
+		}
+		return compact(clauses, numClauses);
+	}
+
+	/**
+	 * Merge pairs of bodies that only differ in the sign of one literal
+	 * into the first of them without that literal. Only bodies with the
+	 * same atoms can be merged, so only bodies with the same bitmask of
+	 * atoms are compared.
+	 *
+	 * @return number of bodies kept at the front of clauses
+	 */
+	private int resolve(int[] clauses, int numClauses) {
+		// Groups are visited in the order of their first body
+		Map<Long, List<Integer>> byAtoms = new LinkedHashMap<Long, List<Integer>>();
+		for (int i = 0; i < numClauses; i++) {
+			Long key = signature(clauses[i], true);
+			List<Integer> group = byAtoms.get(key);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				byAtoms.put(key, group);
+			}
+			group.add(clauses[i]);
+		}
+		for (List<Integer> group : byAtoms.values()) {
+			for (int i = 0; i < group.size(); i++) {
+				int first = group.get(i);
+				for (int j = i + 1; j < group.size() && pool[first] >= 0; j++) {
+					int second = group.get(j);
+					int position = pool[second] < 0 ? -1 : resolvent(first, second);
+					if (position >= 0) {
+						// The first body loses the literal, the second goes
+						int length = pool[first];
+						System.arraycopy(pool, first + 2 + position, pool, first + 1 + position,
+								length - position - 1);
+						pool[first] = length - 1;
+						pool[second] = -1;
+						// Its atoms changed, it is compared again next round
+						break;
+					}
+				}
+			}
+		}
+		return compact(clauses, numClauses);
+	}
+
+	/**
+	 * @return the position of the only literal two sorted bodies differ in
+	 *         if it has opposite signs in them, -1 otherwise
+	 */
+	private int resolvent(int first, int second) {
+		int length = pool[first];
+		if (pool[second] != length) {
+			return -1;
+		}
+		int position = -1;
+		for (int i = 1; i <= length; i++) {
+			int literal = pool[first + i];
+			if (literal != pool[second + i]) {
+				// Opposite literals of an atom are next to each other, so
+				// they sort to the same position
+				if (position >= 0 || (literal ^ 1) != pool[second + i]) {
+					return -1;
+				}
+				position = i - 1;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * @return true if every literal of the first sorted body is in the
+	 *         second
+	 */
+	private boolean isSubset(int first, int second) {
+		int length = pool[first];
+		int otherLength = pool[second];
+		int j = 1;
+		for (int i = 1; i <= length; i++) {
+			int literal = pool[first + i];
+			while (j <= otherLength && order(pool[second + j]) < order(literal)) {
+				j++;
+			}
+			if (j > otherLength || pool[second + j] != literal) {
+				return false;
+			}
+			j++;
+		}
+		return true;
+	}
+
+	/**
+	 * @return a bitmask with a bit for every literal of a body, or for every
+	 *         atom if signs are ignored
+	 */
+	private long signature(int clause, boolean ignoreSign) {
+		long signature = 0;
+		for (int i = 1; i <= pool[clause]; i++) {
+			int literal = ignoreSign ? order(pool[clause + i]) >>> 1 : order(pool[clause + i]);
+			signature |= 1L << (literal & 63);
+		}
+		return signature;
+	}
+
+	/**
+	 * Move the bodies that weren't dropped to the front, in order
+	 *
+	 * @return number of bodies kept
+	 */
+	private int compact(int[] clauses, int numClauses) {
+		int kept = 0;
+		for (int i = 0; i < numClauses; i++) {
+			if (pool[clauses[i]] >= 0) {
+				clauses[kept++] = clauses[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Stratum of every head, and the atoms that are read through an _old
+	 * copy. A head comes after the heads in its bodies, and before the next
+	 * atom of every true atom in its bodies, so a state variable is only
+	 * updated once everything that reads it has been assigned. Facts, true
+	 * and does atoms have stratum 0, contradictions -2.
+	 *
+	 * These constraints are the edges of a graph over the heads, searched
+	 * depth first once with an explicit stack. An edge to a head still on
+	 * the search path closes a cycle, so it can't be kept: the atom read
+	 * through it goes in the old set instead. The edges that are left are
+	 * acyclic and the reverse of the finishing order is a topological order
+	 * of them, so one sweep in that order gives every head one more than the
+	 * largest stratum of the heads before it.
+	 *
+	 * @param stratumMap
+	 *            strata computed so far, completed in place
+	 * @param oldSet
+	 *            atoms read through an _old copy, added to in place
+	 */
+	void generateStratumMap(Map<String, Integer> stratumMap, Set<String> oldSet) {
+		int[] strata = new int[state.length];
+		Arrays.fill(strata, UNKNOWN_STRATUM);
+		for (Map.Entry<String, Integer> entry : stratumMap.entrySet()) {
+			int atom = symbols.lookup(entry.getKey());
+			if (atom >= 0 && atom < strata.length) {
+				strata[atom] = entry.getValue();
+			}
+		}
+		BitSet old = new BitSet();
+		for (int i = 0; i < numHeads; i++) {
+			int head = heads[i];
+			if (strata[head] != UNKNOWN_STRATUM || state[head] == ABSENT) {
+				continue;
+			}
+			if (atoms[head].kind == LiteralDescriptor.INIT || state[head] == CONTRADICTION) {
+				strata[head] = -2;
+			} else if (state[head] == FACT) {
+				strata[head] = 0;
+			}
+		}
+
+		StratumGraph graph = new StratumGraph(strata);
+		graph.search(old);
+		graph.sweep();
+
+		for (int atom = 0; atom < strata.length; atom++) {
+			if (strata[atom] != UNKNOWN_STRATUM) {
+				stratumMap.put(symbols.getSymbol(atom), strata[atom]);
+			}
+		}
+		for (int atom = old.nextSetBit(0); atom >= 0; atom = old.nextSetBit(atom + 1)) {
+			oldSet.add(symbols.getSymbol(atom));
+		}
+	}
+
+	/**
+	 * Ordering constraints between the heads whose stratum generateStratumMap
+	 * computes. Edges are kept by the head that comes first, each with the
+	 * atom that is read through it.
+	 */
+	private final class StratumGraph {
+		private final int[] strata;
+		// Heads with a rule and no stratum yet
+		private final BitSet nodes = new BitSet();
+		private final int[] nodeOrder;
+		private final int[] firstEdge;
+		private int[] edgeTo = new int[16];
+		private int[] edgeRead = new int[16];
+		private int numEdges = 0;
+		private final BitSet backEdges = new BitSet();
+		private final int[] finished;
+		private int numFinished = 0;
+
+		/**
+		 * The stratum of a node starts one above the largest stratum of the
+		 * literals of its bodies that aren't nodes
+		 */
+		StratumGraph(int[] strata) {
+			this.strata = strata;
+			int numNodes = 0;
+			int[] order = new int[numHeads];
+			for (int i = 0; i < numHeads; i++) {
+				int head = heads[i];
+				if (state[head] == RULE && strata[head] == UNKNOWN_STRATUM
+						&& atoms[head].kind != LiteralDescriptor.INIT && !nodes.get(head)) {
+					nodes.set(head);
+					order[numNodes++] = head;
+				}
+			}
+			nodeOrder = Arrays.copyOf(order, numNodes);
+
+			int[] edgeFrom = new int[16];
+			for (int head : nodeOrder) {
+				int max = -2;
+				for (int clause : dnf[head]) {
+					for (int j = 1; j <= pool[clause]; j++) {
+						int atom = pool[clause + j] >>> 1;
+						if (atoms[atom].kind == LiteralDescriptor.DOES || atoms[atom].kind == LiteralDescriptor.TRUE) {
+							strata[atom] = 0;
+							max = Math.max(max, 0);
+							int next = atoms[atom].partner;
+							if (atoms[atom].kind == LiteralDescriptor.TRUE && next != head && isNode(next)) {
+								// Read before the next state is assigned
+								edgeFrom = addEdge(edgeFrom, head, next, next);
+							}
+						} else if (isNode(atom)) {
+							edgeFrom = addEdge(edgeFrom, atom, head, atom);
+						} else {
+							if (strata[atom] == UNKNOWN_STRATUM) {
+								// Not a head
+								strata[atom] = -2;
+							}
+							max = Math.max(max, strata[atom]);
+						}
+					}
+				}
+				strata[head] = max + 1;
+			}
+
+			// Sort the edges by their first head
+			firstEdge = new int[state.length + 1];
+			for (int e = 0; e < numEdges; e++) {
+				firstEdge[edgeFrom[e] + 1]++;
+			}
+			for (int atom = 0; atom < state.length; atom++) {
+				firstEdge[atom + 1] += firstEdge[atom];
+			}
+			int[] position = Arrays.copyOf(firstEdge, state.length);
+			int[] to = new int[numEdges];
+			int[] read = new int[numEdges];
+			for (int e = 0; e < numEdges; e++) {
+				int p = position[edgeFrom[e]]++;
+				to[p] = edgeTo[e];
+				read[p] = edgeRead[e];
+			}
+			edgeTo = to;
+			edgeRead = read;
+			finished = new int[numNodes];
+		}
+
+		private boolean isNode(int atom) {
+			return atom >= 0 && nodes.get(atom);
+		}
+
+		private int[] addEdge(int[] edgeFrom, int from, int to, int read) {
+			if (numEdges == edgeTo.length) {
+				edgeFrom = Arrays.copyOf(edgeFrom, numEdges * 2);
+				edgeTo = Arrays.copyOf(edgeTo, numEdges * 2);
+				edgeRead = Arrays.copyOf(edgeRead, numEdges * 2);
+			}
+			edgeFrom[numEdges] = from;
+			edgeTo[numEdges] = to;
+			edgeRead[numEdges++] = read;
+			return edgeFrom;
+		}
+
+		/**
+		 * Depth first search from every node in the order of the heads, for
+		 * the back edges and the finishing order
+		 *
+		 * @param old
+		 *            atoms read through a back edge, added to
+		 */
+		void search(BitSet old) {
+			BitSet onPath = new BitSet();
+			BitSet visited = new BitSet();
+			int[] path = new int[nodeOrder.length];
+			// Edge of each node on the path to follow next
+			int[] nextEdge = new int[nodeOrder.length];
+			for (int root : nodeOrder) {
+				if (visited.get(root)) {
+					continue;
+				}
+				visited.set(root);
+				onPath.set(root);
+				path[0] = root;
+				nextEdge[0] = firstEdge[root];
+				int depth = 1;
+				while (depth > 0) {
+					int node = path[depth - 1];
+					int e = nextEdge[depth - 1];
+					if (e == firstEdge[node + 1]) {
+						onPath.clear(node);
+						finished[numFinished++] = node;
+						depth--;
+						continue;
+					}
+					nextEdge[depth - 1]++;
+					int to = edgeTo[e];
+					if (!visited.get(to)) {
+						visited.set(to);
+						onPath.set(to);
+						path[depth] = to;
+						nextEdge[depth++] = firstEdge[to];
+					} else if (onPath.get(to)) {
+						backEdges.set(e);
+						old.set(edgeRead[e]);
+						if (edgeRead[e] == node) {
+							// A body literal read through its old copy is
+							// like a true literal
+							strata[to] = Math.max(strata[to], 1);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Raise every node above the nodes before it, in reverse finishing
+		 * order
+		 */
+		void sweep() {
+			for (int i = numFinished - 1; i >= 0; i--) {
+				int node = finished[i];
+				for (int e = firstEdge[node]; e < firstEdge[node + 1]; e++) {
+					if (!backEdges.get(e)) {
+						strata[edgeTo[e]] = Math.max(strata[edgeTo[e]], strata[node] + 1);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as GdlRuleSet.generateModel(Model) on the encoded rules
+	 *
+	 * @param trueAtoms
+	 *            atoms that hold before any rule is evaluated
+	 * @return atoms that hold
+	 */
+	Set<String> generateModel(Set<String> trueAtoms) {
+		BitSet trueLiterals = new BitSet();
+		BitSet falseLiterals = new BitSet();
+		Set<String> model = new HashSet<String>();
+		for (String atom : trueAtoms) {
+			int id = symbols.lookup(atom);
+			if (id >= 0) {
+				trueLiterals.set(id);
+			} else {
+				// Not in any rule
+				model.add(atom);
+			}
+		}
+		int[] iterationQueue = Arrays.copyOf(heads, numHeads);
+		int queueSize = numHeads;
+		while (queueSize > 0) {
+			int remaining = 0;
+			for (int i = 0; i < queueSize; i++) {
+				int rule = iterationQueue[i];
+				if (state[rule] == ABSENT) {
+					continue;
+				}
+				boolean decided = true;
+				if (state[rule] == CONTRADICTION) {
+					falseLiterals.set(rule);
+				} else if (state[rule] == FACT) {
+					trueLiterals.set(rule);
+				} else {
+					boolean ruleHasOnlyFalse = true;
+					decided = false;
+					for (int clause : dnf[rule]) {
+						boolean clauseHasFalse = false;
+						boolean clauseHasNotRecorded = false;
+						for (int j = 1; j <= pool[clause]; j++) {
+							int literal = pool[clause + j] >>> 1;
+							boolean isNegative = (pool[clause + j] & 1) != 0;
+							if (trueLiterals.get(literal)) {
+								clauseHasFalse |= isNegative;
+							} else if (falseLiterals.get(literal)) {
+								clauseHasFalse |= !isNegative;
+							} else {
+								clauseHasNotRecorded = true;
+							}
+						}
+						if (!clauseHasFalse) {
+							ruleHasOnlyFalse = false; // rule contains non false clause
+							if (!clauseHasNotRecorded) {
+								// All known true literals in this clause
+								trueLiterals.set(rule);
+								decided = true;
+								break;
+							}
+						}
+					}
+					if (ruleHasOnlyFalse) {
+						falseLiterals.set(rule);
+						decided = true;
+					}
+				}
+				if (!decided) {
+					iterationQueue[remaining++] = rule;
+				}
+			}
+			if (remaining == queueSize) {
+				break;
+			}
+			queueSize = remaining;
+		}
+
+		for (int atom = trueLiterals.nextSetBit(0); atom >= 0; atom = trueLiterals.nextSetBit(atom + 1)) {
+			model.add(symbols.getSymbol(atom));
+		}
+		return model;
+	}
+
+	/**
+	 * @return number of heads that weren't removed
+	 */
+	int size() {
+		int size = 0;
+		for (int i = 0; i < numHeads; i++) {
+			if (state[heads[i]] != ABSENT) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Decode the rules into strings. Heads keep the order they were encoded
+	 * in, heads that were removed are left out, and bodies and literals keep
+	 * the order of the pool.
+	 *
+	 * @return the rules by head, null for a contradiction and an empty set
+	 *         for a fact
+	 */
+	Map<String, Set<Set<String>>> decode() {
+		Map<String, Set<Set<String>>> ruleSet = new LinkedHashMap<String, Set<Set<String>>>();
+		for (int i = 0; i < numHeads; i++) {
+			int head = heads[i];
+			String headNode = symbols.getSymbol(head);
+			if (state[head] == ABSENT) {
+				continue;
+			} else if (state[head] == CONTRADICTION) {
+				ruleSet.put(headNode, null);
+			} else if (state[head] == FACT) {
+				ruleSet.put(headNode, Collections.<Set<String>> emptySet());
+			} else {
+				Set<Set<String>> rule = new LinkedHashSet<Set<String>>();
+				for (int clause : dnf[head]) {
+					Set<String> disjunct = new LinkedHashSet<String>();
+					for (int j = 1; j <= pool[clause]; j++) {
+						disjunct.add(decode(pool[clause + j]));
+					}
+					rule.add(disjunct);
+				}
+				ruleSet.put(headNode, rule);
+			}
+		}
+		return ruleSet;
+	}
+
+	private String decode(int literal) {
+		String atom = symbols.getSymbol(literal >>> 1);
+		return (literal & 1) == 0 ? atom : symbols.canonical(GdlRuleSet.NOT_PREFIX + atom + ")");
+	}
+}
@@ -0,0 +1,69 @@
+package prover;
+
+import util.GdlParser;
+import util.SymbolTable;
+import util.grammar.GdlNode;
+
+/**
+ * What the passes over a rule set need to know about an atom: its id, what
+ * kind of atom it is, whether a distinct holds, and the legal atom of a does
+ * or the next atom of a true. Worked out once per atom id, so the passes
+ * read fields instead of looking at prefixes and parsing distinct literals
+ * every time. The sign of a literal is not part of it.
+ *
+ * @author vedantds
+ *
+ */
+final class LiteralDescriptor {
+
+	// Kinds of atoms
+	final static byte OTHER = 0;
+	final static byte TRUE = 1;
+	final static byte DOES = 2;
+	final static byte NEXT = 3;
+	final static byte INIT = 4;
+	final static byte DISTINCT = 5;
+
+	final int atom;
+	final byte kind;
+	// distinct of two different terms
+	final boolean distinctHolds;
+	// legal atom of a does, next atom of a true, NO_SYMBOL otherwise or if
+	// the symbol table has no such atom
+	final int partner;
+
+	private LiteralDescriptor(int atom, byte kind, boolean distinctHolds, int partner) {
+		this.atom = atom;
+		this.kind = kind;
+		this.distinctHolds = distinctHolds;
+		this.partner = partner;
+	}
+
+	/**
+	 * @param atom
+	 *            id of an atom
+	 * @param symbols
+	 *            symbol table the atom is numbered in, looked up but never
+	 *            added to
+	 * @return the descriptor of the atom
+	 */
+	static LiteralDescriptor describe(int atom, SymbolTable symbols) {
+		String text = symbols.getSymbol(atom);
+		if (text.startsWith(GdlRuleSet.TRUE_PREFIX)) {
+			return new LiteralDescriptor(atom, TRUE, false,
+					symbols.lookup(GdlRuleSet.NEXT_PREFIX + text.substring(GdlRuleSet.TRUE_PREFIX.length())));
+		} else if (text.startsWith(GdlRuleSet.DOES_PREFIX)) {
+			return new LiteralDescriptor(atom, DOES, false,
+					symbols.lookup("(legal " + text.substring(GdlRuleSet.DOES_PREFIX.length())));
+		} else if (text.startsWith(GdlRuleSet.NEXT_PREFIX)) {
+			return new LiteralDescriptor(atom, NEXT, false, SymbolTable.NO_SYMBOL);
+		} else if (text.startsWith(GdlRuleSet.INIT_PREFIX)) {
+			return new LiteralDescriptor(atom, INIT, false, SymbolTable.NO_SYMBOL);
+		} else if (text.startsWith(GdlRuleSet.DISTINCT_PREFIX)) {
+			GdlNode distinctNode = GdlParser.parseString(text, symbols).getChild(0);
+			boolean holds = !distinctNode.getChild(0).toString().equals(distinctNode.getChild(1).toString());
+			return new LiteralDescriptor(atom, DISTINCT, holds, SymbolTable.NO_SYMBOL);
+		}
+		return new LiteralDescriptor(atom, OTHER, false, SymbolTable.NO_SYMBOL);
+	}
+}
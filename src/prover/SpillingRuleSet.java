@@ -0,0 +1,406 @@
+package prover;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import util.SymbolTable;
+import util.grammar.GDLSyntaxException;
+import util.grammar.GdlNode;
+import util.grammar.GdlType;
+
+/**
+ * GdlRuleSet that keeps ground clauses on disk while a game is ground, so
+ * the rules are never held as strings. Ground rules and facts are buffered
+ * as symbol ids until they take about memoryBudget bytes, then sorted by head
+ * and written to a run file. merge() reads the runs back in one pass, merging
+ * them by head, and encodes each head straight into an IntRuleSet, after
+ * which this is an ordinary GdlRuleSet whose rules are already encoded.
+ *
+ * A fact discards the earlier clauses of its head, so every record carries
+ * its position in the grounding order and the records of a head are merged
+ * in that order, which gives the same rules as joining every clause as it is
+ * ground. Heads come out in the order of their ids rather than in the order
+ * of a HashMap. Init facts and the predicate set don't depend on order and
+ * are joined straight away.
+ *
+ * @author vedantds
+ *
+ */
+public class SpillingRuleSet extends GdlRuleSet {
+
+	private final static byte RULE = 0;
+	private final static byte FACT = 1;
+	// Rough heap cost of a buffered record, and of each literal in it
+	private final static long RECORD_BYTES = 64;
+	private final static long LITERAL_BYTES = 4;
+	// Runs read at once, more are merged into one run first
+	private final static int MAX_RUNS = 64;
+
+	private final long memoryBudget;
+	private final List<Record> buffer = new ArrayList<Record>();
+	private final List<File> runs = new ArrayList<File>();
+	private long bufferBytes = 0;
+	private long sequence = 0;
+	// Number of bodies and of body literals buffered in all, to size the pool
+	private long numBodies = 0;
+	private long numLiterals = 0;
+	private boolean merged = false;
+
+	/**
+	 * @param symbols
+	 * @param memoryBudget
+	 *            bytes of ground clauses to buffer before writing a run
+	 */
+	public SpillingRuleSet(SymbolTable symbols, long memoryBudget) {
+		super(symbols);
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @return number of run files written so far
+	 */
+	public int getNumRuns() {
+		return runs.size();
+	}
+
+	@Override
+	public void joinClause(GdlNode node) throws GDLSyntaxException {
+		if (merged) {
+			super.joinClause(node);
+		} else if (node.getType() == GdlType.CLAUSE) {
+			List<String> body = new ArrayList<String>();
+			List<String> positiveBody = new ArrayList<String>();
+			for (int i = 1; i < node.getChildren().size(); i++) {
+				GdlNode literal = node.getChild(i);
+				body.add(literal.toString());
+				while (literal.getAtom().equals(GdlNode.NOT)) {
+					literal = literal.getChild(0);
+				}
+				positiveBody.add(literal.toString());
+			}
+			joinGroundRule(node.getChild(0).toString(), body, positiveBody);
+		} else if ((node.getType() == GdlType.FORMULA || node.getType() == GdlType.VARIABLE)
+				&& !node.getAtom().contentEquals(GdlNode.INIT)) {
+			joinGroundFact(node.toString(), null);
+		} else {
+			super.joinClause(node);
+		}
+	}
+
+	@Override
+	public void joinGroundFact(String fact, String initialLiteral) {
+		if (merged || initialLiteral != null) {
+			super.joinGroundFact(fact, initialLiteral);
+			return;
+		}
+		numRulesUncompressed++;
+		int head = getSymbolTable().getId(fact);
+		getPredicateSet().add(getSymbolTable().getSymbol(head));
+		add(new Record(head, FACT, sequence++, new int[0]));
+	}
+
+	@Override
+	public void joinGroundRule(String head, List<String> body, List<String> positiveBody) {
+		if (merged) {
+			super.joinGroundRule(head, body, positiveBody);
+			return;
+		}
+		numRulesUncompressed++;
+		SymbolTable symbols = getSymbolTable();
+		int[] literals = new int[body.size()];
+		for (int i = 0; i < body.size(); i++) {
+			literals[i] = symbols.getId(body.get(i));
+			getPredicateSet().add(symbols.canonical(positiveBody.get(i)));
+		}
+		int headId = symbols.getId(head);
+		getPredicateSet().add(symbols.getSymbol(headId));
+		numBodies++;
+		numLiterals += literals.length;
+		add(new Record(headId, RULE, sequence++, literals));
+	}
+
+	private void add(Record record) {
+		buffer.add(record);
+		bufferBytes += RECORD_BYTES + LITERAL_BYTES * record.body.length;
+		if (bufferBytes > memoryBudget) {
+			try {
+				writeRun();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Sort the buffer by head and write it to a new run file. Once there are
+	 * MAX_RUNS runs they are merged into one.
+	 *
+	 * @throws IOException
+	 */
+	private void writeRun() throws IOException {
+		Collections.sort(buffer, Record.ORDER);
+		PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>(1, Cursor.ORDER);
+		Cursor cursor = new BufferCursor(buffer);
+		if (cursor.next()) {
+			cursors.add(cursor);
+		}
+		runs.add(write(cursors));
+		buffer.clear();
+		bufferBytes = 0;
+
+		if (runs.size() == MAX_RUNS) {
+			try {
+				cursors = open();
+				File run = write(cursors);
+				for (File merged : runs) {
+					merged.delete();
+				}
+				runs.clear();
+				runs.add(run);
+			} finally {
+				for (Cursor open : cursors) {
+					open.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a cursor on every run that isn't empty, ordered by their records
+	 * @throws IOException
+	 */
+	private PriorityQueue<Cursor> open() throws IOException {
+		PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>(runs.size() + 1, Cursor.ORDER);
+		try {
+			for (File run : runs) {
+				Cursor cursor = new RunCursor(run);
+				if (cursor.next()) {
+					cursors.add(cursor);
+				}
+			}
+		} catch (IOException e) {
+			for (Cursor cursor : cursors) {
+				cursor.close();
+			}
+			throw e;
+		}
+		return cursors;
+	}
+
+	/**
+	 * Write the records of some cursors to a new run file in order
+	 *
+	 * @param cursors
+	 *            emptied
+	 * @return the run file
+	 * @throws IOException
+	 */
+	private static File write(PriorityQueue<Cursor> cursors) throws IOException {
+		File run = File.createTempFile("ground", ".run");
+		run.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+		try {
+			while (!cursors.isEmpty()) {
+				Cursor cursor = cursors.poll();
+				cursor.record.write(out);
+				if (cursor.next()) {
+					cursors.add(cursor);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return run;
+	}
+
+	/**
+	 * Merge the runs and the buffer by head and encode the rules. The run
+	 * files are deleted. Clauses joined after this are joined as strings, as
+	 * in any GdlRuleSet.
+	 */
+	public void merge() {
+		if (merged) {
+			return;
+		}
+		merged = true;
+		PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>(1, Cursor.ORDER);
+		try {
+			Collections.sort(buffer, Record.ORDER);
+			cursors = open();
+			Cursor cursor = new BufferCursor(buffer);
+			if (cursor.next()) {
+				cursors.add(cursor);
+			}
+
+			SymbolTable symbols = getSymbolTable();
+			IntRuleSet rules = new IntRuleSet(symbols, 0, 0, (int) Math.min(Integer.MAX_VALUE, numBodies + numLiterals));
+			while (!cursors.isEmpty()) {
+				int head = cursors.peek().record.head;
+				Set<Set<String>> rule = new LinkedHashSet<Set<String>>();
+				while (!cursors.isEmpty() && cursors.peek().record.head == head) {
+					cursor = cursors.poll();
+					Record record = cursor.record;
+					if (record.kind == FACT) {
+						rule.clear();
+					} else {
+						Set<String> disjunct = new LinkedHashSet<String>();
+						for (int literal : record.body) {
+							disjunct.add(symbols.getSymbol(literal));
+						}
+						rule.add(disjunct);
+					}
+					if (cursor.next()) {
+						cursors.add(cursor);
+					}
+				}
+				rules.add(symbols.getSymbol(head), rule);
+			}
+			rules.finish();
+			setEncoded(rules);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			for (Cursor cursor : cursors) {
+				cursor.close();
+			}
+			for (File run : runs) {
+				run.delete();
+			}
+			runs.clear();
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * A ground rule or fact with its position in the grounding order
+	 */
+	private static final class Record {
+		final int head;
+		final byte kind;
+		final long sequence;
+		final int[] body;
+
+		static final Comparator<Record> ORDER = new Comparator<Record>() {
+			@Override
+			public int compare(Record a, Record b) {
+				if (a.head != b.head) {
+					return a.head < b.head ? -1 : 1;
+				}
+				return a.sequence < b.sequence ? -1 : a.sequence == b.sequence ? 0 : 1;
+			}
+		};
+
+		Record(int head, byte kind, long sequence, int[] body) {
+			this.head = head;
+			this.kind = kind;
+			this.sequence = sequence;
+			this.body = body;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(head);
+			out.writeByte(kind);
+			out.writeLong(sequence);
+			out.writeInt(body.length);
+			for (int literal : body) {
+				out.writeInt(literal);
+			}
+		}
+
+		/**
+		 * @return the next record of a run, null at its end
+		 */
+		static Record read(DataInputStream in) throws IOException {
+			int head;
+			try {
+				head = in.readInt();
+			} catch (EOFException e) {
+				return null;
+			}
+			byte kind = in.readByte();
+			long sequence = in.readLong();
+			int[] body = new int[in.readInt()];
+			for (int i = 0; i < body.length; i++) {
+				body[i] = in.readInt();
+			}
+			return new Record(head, kind, sequence, body);
+		}
+	}
+
+	/**
+	 * The current record of a sorted run
+	 */
+	private static abstract class Cursor {
+		Record record;
+
+		static final Comparator<Cursor> ORDER = new Comparator<Cursor>() {
+			@Override
+			public int compare(Cursor a, Cursor b) {
+				return Record.ORDER.compare(a.record, b.record);
+			}
+		};
+
+		/**
+		 * @return false at the end of the run
+		 */
+		abstract boolean next() throws IOException;
+
+		void close() {
+		}
+	}
+
+	private static final class BufferCursor extends Cursor {
+		private final List<Record> records;
+		private int position = 0;
+
+		BufferCursor(List<Record> records) {
+			this.records = records;
+		}
+
+		@Override
+		boolean next() {
+			record = position < records.size() ? records.get(position++) : null;
+			return record != null;
+		}
+	}
+
+	private static final class RunCursor extends Cursor {
+		private final DataInputStream in;
+
+		RunCursor(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+		}
+
+		@Override
+		boolean next() throws IOException {
+			record = Record.read(in);
+			if (record == null) {
+				close();
+			}
+			return record != null;
+		}
+
+		@Override
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Nothing left to read
+			}
+		}
+	}
+}
@@ -1,13 +1,22 @@
 package translator;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Set;
 
 import prover.GdlRuleSet;
+import util.GdlBinaryFormat;
 import util.GdlParser;
+import util.GroundingPlan;
+import util.JoinGrounder;
+import util.ParallelGrounder;
+import util.SymbolTable;
+import util.TranslationCache;
 import util.grammar.GDLSyntaxException;
 import util.grammar.Gdl;
 import util.grammar.GdlNode;
@@ -40,9 +49,28 @@ public class Main {
 		boolean prettyPrintSwitch = false;
 		boolean parseTreeSwitch = false;
 		boolean parseTreeTypesSwitch = false;
+		boolean mmapSwitch = false;
+		boolean streamSwitch = false;
+		boolean compactSwitch = false;
+		boolean saveIrToken = false;
+		boolean loadIrToken = false;
+		boolean cacheToken = false;
+		boolean cacheSizeToken = false;
+		boolean planSwitch = false;
+		boolean joinGroundSwitch = false;
+		boolean noReachabilitySwitch = false;
+		boolean maxGroundInstancesToken = false;
+		boolean threadsToken = false;
+		boolean groundMemoryToken = false;
 
 		String inputFilePath = "";
 		String outputFilePath = "";
+		String saveIrPath = "";
+		String loadIrPath = "";
+		String cachePath = "";
+		int cacheSize = TranslationCache.DEFAULT_MAX_ENTRIES;
+		long maxGroundInstances = -1;
+		int threads = 1;
 
 		for (String arg : args) {
 			switch (arg) {
@@ -98,8 +126,69 @@ public class Main {
 			case "--parse-types":
 				parseTreeTypesSwitch = true;
 				break;
+			case "--mmap":
+				mmapSwitch = true;
+				break;
+			case "--stream":
+				streamSwitch = true;
+				break;
+			case "--compact":
+				compactSwitch = true;
+				break;
+			case "--save-ir":
+				saveIrToken = true;
+				break;
+			case "--load-ir":
+				loadIrToken = true;
+				break;
+			case "--cache":
+				cacheToken = true;
+				break;
+			case "--cache-size":
+				cacheSizeToken = true;
+				break;
+			case "--plan":
+				planSwitch = true;
+				break;
+			case "--join-ground":
+				joinGroundSwitch = true;
+				break;
+			case "--no-reachability":
+				noReachabilitySwitch = true;
+				break;
+			case "--max-ground-instances":
+				maxGroundInstancesToken = true;
+				break;
+			case "--threads":
+				threadsToken = true;
+				break;
+			case "--ground-memory":
+				groundMemoryToken = true;
+				break;
 			default:
-				if (outputFileToken) {
+				if (maxGroundInstancesToken) {
+					maxGroundInstances = Long.parseLong(arg);
+					maxGroundInstancesToken = false;
+				} else if (threadsToken) {
+					threads = Integer.parseInt(arg);
+					threadsToken = false;
+				} else if (groundMemoryToken) {
+					GdlParser.GROUND_WITH_TEMP_FILES = true;
+					GdlParser.GROUND_MEMORY_BUDGET = Long.parseLong(arg) << 20;
+					groundMemoryToken = false;
+				} else if (cacheToken) {
+					cachePath = arg;
+					cacheToken = false;
+				} else if (cacheSizeToken) {
+					cacheSize = Integer.parseInt(arg);
+					cacheSizeToken = false;
+				} else if (saveIrToken) {
+					saveIrPath = arg;
+					saveIrToken = false;
+				} else if (loadIrToken) {
+					loadIrPath = arg;
+					loadIrToken = false;
+				} else if (outputFileToken) {
 					outputFilePath = arg;
 					outputFileToken = false;
 				} else if (inputFileToken) {
@@ -128,6 +217,19 @@ public class Main {
 			System.out.println("  --ordered      order the gdl rules (default true for --to-mck)");
 			System.out.println("  --parse-tree   print parse tree for debug.");
 			System.out.println("  --parse-types  print parse tree type for debug.");
+			System.out.println("  --mmap         tokenize input file through a memory mapped buffer.");
+			System.out.println("  --stream       parse and ground one clause at a time (with --use-prover).");
+			System.out.println("  --compact      parse into an array based tree (with --use-prover).");
+			System.out.println("  --save-ir      path to save the parse tree (or rule set with --use-prover) in binary form.");
+			System.out.println("  --load-ir      path to a file written by --save-ir, replaces the input file.");
+			System.out.println("  --cache        directory to cache grounded rule sets and mck output in.");
+			System.out.println("  --cache-size   maximum number of cache entries. (default " + TranslationCache.DEFAULT_MAX_ENTRIES + ")");
+			System.out.println("  --join-ground  ground by joining rule bodies over derivable atoms (with --use-prover).");
+			System.out.println("  --no-reachability  keep ground clauses with unreachable body atoms (with --use-prover).");
+			System.out.println("  --threads      number of threads to ground on, not with --stream. (default 1)");
+			System.out.println("  --ground-memory  megabytes of ground clauses to hold before spilling them to temporary files (with --use-prover, not with --threads or --join-ground).");
+			System.out.println("  --plan         print the estimated size of every clause after grounding and stop.");
+			System.out.println("  --max-ground-instances  stop before grounding if the estimated number of ground clauses is larger.");
 		} else {
 			// Scan and parse gdl
 			List<String> tokens;
@@ -137,16 +239,116 @@ public class Main {
 			int dnfRuleSetSize = 0;
 			int minDnfRuleSetSize = 0;
 			long groundedRuleSetSize = 0;
+			// One symbol table is shared by every stage of this translation
+			SymbolTable symbols = new SymbolTable();
+			// Clauses are consumed straight from the file so no parse tree is
+			// built, but the grounding plan is made from the parse tree
+			boolean streamed = streamSwitch && useProverSwitch && !inputFilePath.equals("") && !planSwitch
+					&& maxGroundInstances < 0 && !joinGroundSwitch && threads <= 1;
+			// Parse tree is only read by the prover so it can be a read only GdlTree
+			boolean compact = compactSwitch && useProverSwitch && !inputFilePath.equals("") && !streamed;
+			// A saved or ground rule set is already grounded and minimized, a
+			// saved one is not minimized again so it translates the same
+			boolean loadedRuleSet = false;
+			// Ground input can be loaded without a parse tree if no output needs one
+			boolean treeNeeded = outputDotSwitch || outputLparseSwitch || parseTreeSwitch || parseTreeTypesSwitch
+					|| orderedSwitch;
+
+			// Cache is only used when mck is the sole output
+			TranslationCache cache = null;
+			String ruleSetKey = null;
+			String mckKey = null;
+			if (!cachePath.equals("") && !inputFilePath.equals("") && loadIrPath.equals("") && saveIrPath.equals("")
+					&& (outputFileSwitch || outputMckSwitch) && !outputDotSwitch && !outputDepDotSwitch
+					&& !outputLparseSwitch && !prettyPrintSwitch && !parseTreeSwitch && !parseTreeTypesSwitch
+					&& !planSwitch) {
+				try {
+					byte[] gdl = Files.readAllBytes(Paths.get(inputFilePath));
+					cache = new TranslationCache(cachePath, cacheSize);
+					// Streamed grounding never prunes unreachable atoms
+					boolean noReachability = noReachabilitySwitch || streamed;
+					// Spilled rules are merged in another order of heads
+					boolean groundMemory = GdlParser.GROUND_WITH_TEMP_FILES;
+					ruleSetKey = TranslationCache.key(gdl, "--use-prover=" + useProverSwitch,
+							"--no-ground=" + noGroundSwitch, "--ordered=" + orderedSwitch,
+							"--join-ground=" + joinGroundSwitch, "--no-reachability=" + noReachability,
+							"--ground-memory=" + groundMemory);
+					mckKey = TranslationCache.key(gdl, "--use-prover=" + useProverSwitch,
+							"--no-ground=" + noGroundSwitch, "--ordered=" + orderedSwitch,
+							"--join-ground=" + joinGroundSwitch, "--no-reachability=" + noReachability,
+							"--ground-memory=" + groundMemory, "--use-define=" + useDefineSwitch, "--debug=" + debugSwitch);
+
+					String mck = cache.lookupText(mckKey, TranslationCache.MCK_SUFFIX);
+					if (mck != null) {
+						System.out.print("Using cached mck ... ");
+						if (outputFileSwitch) {
+							GdlParser.saveFile(mck, outputFilePath);
+						} else {
+							System.out.println(mck);
+						}
+						System.out.println("finished");
+						printTimeDiff(startTime, System.nanoTime());
+						return;
+					}
+					File cachedRuleSet = cache.lookup(ruleSetKey, TranslationCache.RULE_SET_SUFFIX);
+					if (useProverSwitch && cachedRuleSet != null) {
+						loadIrPath = cachedRuleSet.getPath();
+					}
+				} catch (IOException e) {
+					cache = null;
+					e.printStackTrace();
+				}
+			}
 			
 			// Initialize prover
 			try {
 				System.out.print("Parsing ... ");
-				if (inputFilePath.equals("")) {
-					tokens = GdlParser.gdlTokenizer(new InputStreamReader(System.in));
+				if (!loadIrPath.equals("")) {
+					if (GdlBinaryFormat.readKind(loadIrPath) == GdlBinaryFormat.RULE_SET) {
+						long[] sizes = new long[3];
+						ruleSet = GdlBinaryFormat.readRuleSet(loadIrPath, symbols, sizes);
+						groundedRuleSetSize = sizes[0];
+						dnfRuleSetSize = (int) sizes[1];
+						minDnfRuleSetSize = (int) sizes[2];
+						loadedRuleSet = true;
+						useProverSwitch = true;
+						noGroundSwitch = true;
+					} else {
+						root = GdlBinaryFormat.readTree(loadIrPath, symbols);
+					}
+					streamed = false;
+					compact = false;
+				} else if (inputFilePath.equals("")) {
+					tokens = GdlParser.gdlTokenizer(new InputStreamReader(System.in), symbols);
+					root = GdlParser.expandParseTree(tokens, symbols);
+				} else if (streamed) {
+					if (noGroundSwitch) {
+						ruleSet = GdlParser.streamRuleSet(inputFilePath, symbols);
+						dnfRuleSetSize = ruleSet.size();
+						ruleSet.cullVariables(true);
+					}
+				} else if (compact) {
+					root = GdlParser.parseCompactFile(inputFilePath, symbols).getRoot();
+				} else if (mmapSwitch) {
+					root = GdlParser.parseMappedFile(inputFilePath, symbols);
 				} else {
-					tokens = GdlParser.tokenizeFile(inputFilePath);
+					tokens = GdlParser.tokenizeFile(inputFilePath, symbols);
+					if (useProverSwitch && !treeNeeded) {
+						ruleSet = GdlParser.expandRuleSet(tokens, symbols);
+					}
+					if (ruleSet == null) {
+						root = GdlParser.expandParseTree(tokens, symbols);
+					} else {
+						loadedRuleSet = true;
+						dnfRuleSetSize = ruleSet.size();
+						ruleSet.cullVariables(true);
+						ruleSet.minimizeRules();
+						if (!noGroundSwitch) {
+							groundedRuleSetSize = ruleSet.numRulesUncompressed;
+							minDnfRuleSetSize = ruleSet.size();
+						}
+					}
 				}
-				root = GdlParser.expandParseTree(tokens);
 
 				System.out.println("finished");
 				printTimeDiff(startTime, System.nanoTime());
@@ -154,27 +356,52 @@ public class Main {
 				e.printStackTrace();
 			} catch (IOException e) {
 				e.printStackTrace();
+			} catch (GDLSyntaxException e) {
+				e.printStackTrace();
 			}
 
 
+			if (planSwitch && (noGroundSwitch || loadedRuleSet)) {
+				System.out.println("Nothing to ground, the input is already ground or --no-ground is set");
+				return;
+			}
+
 			// Use internal grounder
-			if (!noGroundSwitch) {
+			if (!noGroundSwitch && !loadedRuleSet) {
 				System.out.print("Grounding ... ");
 				//System.out.print("construct domain graph ... ");
-				final DomainGraph domain = GdlParser.constructDomainGraph(root);
+				DomainGraph domain = new DomainGraph(symbols);
+				try {
+					if (streamed) {
+						domain = GdlParser.streamDomainGraph(inputFilePath, symbols);
+					} else {
+						domain = GdlParser.constructDomainGraph(root, symbols);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				} catch (GDLSyntaxException e) {
+					e.printStackTrace();
+				}
 				System.out.print("constructed domain graph ... ");
 				
 				// Estimate size of grounded game
-				for (GdlNode clause : root.getChildren()) {
-					int resultingRules = 1;
-					if (GdlParser.isVariableInTree(clause)) {
-						for (GdlNode variable : GdlParser.variablesInTree(clause)) {
-							resultingRules *= GdlParser.getVariableDomain(variable.getAtom(), clause, domain).size();
-						}
-					}
-					groundedRuleSetSize += resultingRules;
+				GroundingPlan plan = GroundingPlan.estimate(root, domain);
+				groundedRuleSetSize += plan.getTotalInstances();
+				if (planSwitch) {
+					System.out.println("finished");
+					System.out.print(plan.toString(maxGroundInstances));
+					printTimeDiff(startTime, System.nanoTime());
+					return;
+				}
+				if (maxGroundInstances >= 0 && plan.getTotalInstances() > maxGroundInstances) {
+					System.out.println("stopped");
+					System.out.println("Estimated " + plan.getTotalInstances()
+							+ " ground clauses exceed --max-ground-instances " + maxGroundInstances
+							+ ", largest clauses:");
+					System.out.print(plan.format(plan.getLargest(10), maxGroundInstances));
+					printTimeDiff(startTime, System.nanoTime());
+					return;
 				}
-				//System.out.println("Ground from " + root.getChildren().size() + " -> " + totalRules);
 				
 				
 				if (outputDotSwitch) {
@@ -183,20 +410,44 @@ public class Main {
 				}
 				
 				try {
-					if (useProverSwitch) {
-						ruleSet = GdlParser.groundGdlToRuleSet(root, domain);
-						dnfRuleSetSize = ruleSet.getRuleSet().size();
+					if (streamed) {
+						ruleSet = GdlParser.streamGroundToRuleSet(inputFilePath, domain);
+						groundedRuleSetSize = ruleSet.numRulesUncompressed;
+						dnfRuleSetSize = ruleSet.size();
+						ruleSet.cullVariables(true);
+						minDnfRuleSetSize = ruleSet.size();
+					} else if (useProverSwitch && joinGroundSwitch) {
+						ruleSet = JoinGrounder.ground(root, domain);
+						groundedRuleSetSize = ruleSet.numRulesUncompressed;
+						dnfRuleSetSize = ruleSet.size();
+						ruleSet.cullVariables(true);
+						minDnfRuleSetSize = ruleSet.size();
+					} else if (useProverSwitch) {
+						// Atoms that are not derivable even without negation never hold
+						Set<String> reachable = noReachabilitySwitch ? null : JoinGrounder.reachableAtoms(root, domain);
+						if (threads > 1) {
+							ruleSet = ParallelGrounder.ground(root, domain, reachable, threads);
+						} else {
+							ruleSet = GdlParser.groundGdlToRuleSet(root, domain, reachable);
+						}
+						dnfRuleSetSize = ruleSet.size();
 						ruleSet.cullVariables(true);
-						minDnfRuleSetSize = ruleSet.getRuleSet().size();
+						minDnfRuleSetSize = ruleSet.size();
 					} else {
 						root = GdlParser.groundGdl(root, domain);
 					}
 				} catch (GDLSyntaxException e) {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
+				} catch (IOException e) {
+					e.printStackTrace();
 				}
 
 				System.out.println("gounding finished");
+				if (ruleSet != null) {
+					System.out.println("culled " + ruleSet.numClausesCulled + " clauses and "
+							+ ruleSet.numLiteralsCulled + " literals");
+				}
 				printTimeDiff(startTime, System.nanoTime());
 			}
 			
@@ -205,7 +456,7 @@ public class Main {
 			if (outputDepDotSwitch) {
 				System.out.print("Generating dependency.dot ... ");
 				if (useProverSwitch) {
-					graph = GdlParser.constructDependencyGraph(GdlParser.parseString(ruleSet.toGdl()));
+					graph = GdlParser.constructDependencyGraph(GdlParser.parseString(ruleSet.toGdl(), symbols));
 				} else {
 					graph = GdlParser.constructDependencyGraph(root);
 				}
@@ -222,9 +473,9 @@ public class Main {
 			if (orderedSwitch) {
 				System.out.print("Ordering rules ... ");
 				if (graph == null) {
-					root = GdlParser.parseString(GdlParser.orderGdlRules(root));
+					root = GdlParser.parseString(GdlParser.orderGdlRules(root), symbols);
 				} else {
-					root = GdlParser.parseString(GdlParser.orderGdlRules(root, graph));
+					root = GdlParser.parseString(GdlParser.orderGdlRules(root, graph), symbols);
 				}
 
 				System.out.println("finished");
@@ -234,15 +485,36 @@ public class Main {
 			if (useProverSwitch) {
 				System.out.print("Minimizing game ... ");
 				try {
-					if (ruleSet == null) {
-						ruleSet = new GdlRuleSet((Gdl)root, debugSwitch);
-						dnfRuleSetSize = ruleSet.getRuleSet().values().size();
+					if (ruleSet == null && !loadedRuleSet) {
+						ruleSet = new GdlRuleSet(root, symbols);
+						dnfRuleSetSize = ruleSet.size();
 						ruleSet.cullVariables(true);
 					}
+					if (ruleSet != null && !loadedRuleSet) {
+						ruleSet.minimizeRules();
+					}
 				} catch (GDLSyntaxException e) {
 					useProverSwitch = false;
 					e.printStackTrace();
 				}
+				System.out.print("minimized " + (ruleSet == null ? 0 : ruleSet.numRulesMinimized) + " rules ... ");
+				System.out.println("finished");
+				printTimeDiff(startTime, System.nanoTime());
+			}
+
+			// Save the parsed or grounded game for later translations
+			if (!saveIrPath.equals("")) {
+				System.out.print("Saving " + saveIrPath + " ... ");
+				try {
+					if (useProverSwitch && ruleSet != null) {
+						GdlBinaryFormat.writeRuleSet(ruleSet,
+								new long[] { groundedRuleSetSize, dnfRuleSetSize, minDnfRuleSetSize }, saveIrPath);
+					} else {
+						GdlBinaryFormat.writeTree(root, saveIrPath);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 				System.out.println("finished");
 				printTimeDiff(startTime, System.nanoTime());
 			}
@@ -279,9 +551,9 @@ public class Main {
 				if (!orderedSwitch) {
 					System.out.print("Ordering rules ... ");
 					if (useProverSwitch) {
-						root = GdlParser.parseString(ruleSet.toGdlOrdered());
+						root = GdlParser.parseString(ruleSet.toGdlOrdered(), symbols);
 					} else {
-						root = GdlParser.parseString(GdlParser.orderGdlRules(root));
+						root = GdlParser.parseString(GdlParser.orderGdlRules(root), symbols);
 					}
 
 					System.out.println("finished");
@@ -300,13 +572,31 @@ public class Main {
 						+ "-- Number of rules in RuleSet after Minimization: " + minDnfRuleSetSize + System.lineSeparator());
 				
 				System.out.print("Generating mck ... ");
+				String mck = translator.toMck();
 				if (outputFileSwitch) {
 					outputDir.mkdir();
-					GdlParser.saveFile(translator.toMck(), outputFilePath);
+					GdlParser.saveFile(mck, outputFilePath);
 				} else if (outputMckSwitch) {
-					System.out.println(translator.toMck());
+					System.out.println(mck);
 				}
 				System.out.println("finished");
+
+				// Rule set is written after translation so it includes the
+				// stratum map
+				if (cache != null) {
+					try {
+						if (useProverSwitch && !loadedRuleSet) {
+							File file = cache.createTempFile(ruleSetKey, TranslationCache.RULE_SET_SUFFIX);
+							GdlBinaryFormat.writeRuleSet(ruleSet,
+									new long[] { groundedRuleSetSize, dnfRuleSetSize, minDnfRuleSetSize }, file.getPath());
+							cache.commit(file, ruleSetKey, TranslationCache.RULE_SET_SUFFIX);
+						}
+						cache.storeText(mckKey, TranslationCache.MCK_SUFFIX, mck);
+						cache.evict();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
 			}
 			printTimeDiff(startTime, System.nanoTime());
 		}
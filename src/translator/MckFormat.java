@@ -131,7 +131,7 @@ public class MckFormat {
 			StringBuilder disjunctString = new StringBuilder();
 			disjunctString.append("(");
 			for (String literal : disjunct) {
-				GdlNode negFreeLiteral = GdlParser.parseString(literal).getChild(0);
+				GdlNode negFreeLiteral = GdlParser.parseString(literal, prover.getSymbolTable()).getChild(0);
 				boolean isNegative = false;
 				while(negFreeLiteral.getAtom().equals(GdlNode.NOT)) {
 					negFreeLiteral = negFreeLiteral.getChild(0);
@@ -108,6 +108,16 @@ public class MckTranslator {
 		}
 	}
 
+	/**
+	 * Parse a literal of the rule set into the symbol table of the translation
+	 * 
+	 * @param literal
+	 * @return
+	 */
+	private GdlNode parseLiteral(String literal) {
+		return GdlParser.parseString(literal, ruleSet.getSymbolTable()).getChild(0);
+	}
+
 	public void initialize(boolean useRuleSet) {
 		if (!useRuleSet) {
 		//	initialize();
@@ -115,7 +125,7 @@ public class MckTranslator {
 		}
 
 		for (String head : ruleSet.getRuleSet().keySet()) {
-			GdlNode headNode = GdlParser.parseString(head).getChild(0);
+			GdlNode headNode = parseLiteral(head);
 			switch (headNode.getAtom()) {
 			case GdlNode.DOES:
 			case GdlNode.INPUT:
@@ -161,7 +171,7 @@ public class MckTranslator {
 		
 		// getLiteralSet is non-negative only
 		for (String predicate : ruleSet.getPredicateSet()) {
-			GdlNode predicateNode = GdlParser.parseString(predicate).getChild(0);
+			GdlNode predicateNode = parseLiteral(predicate);
 			if (ruleSet.getRuleSet().get(predicate) == null) {
 				if (predicateNode.getAtom().equals(GdlNode.TRUE)) {
 					ATf.add(MckFormat.formatMckNode(predicateNode));
@@ -210,7 +220,7 @@ public class MckTranslator {
 		// Initialize oldSet from ruleSet
 		System.out.println(ruleSet.getOldSet().size() + " elements in old set");
 		for (String oldLit : ruleSet.getOldSet()) {
-			oldSet.add((MckFormat.formatMckNode(GdlParser.parseString(oldLit).getChild(0)) + MckFormat.OLD_SUFFIX).intern());
+			oldSet.add((MckFormat.formatMckNode(parseLiteral(oldLit)) + MckFormat.OLD_SUFFIX).intern());
 		}
 	}
 
@@ -526,7 +536,7 @@ public class MckTranslator {
 					orderedGdl.poll();
 					continue;
 				}
-				GdlNode headNode = GdlParser.parseString(orderedGdl.poll()).getChild(0);
+				GdlNode headNode = parseLiteral(orderedGdl.poll());
 				
 				boolean useDefine = TRANSITIONS_WITH_DEFINE;
 				if (useDefine && headNode.getAtom().equals(GdlNode.NEXT)) {
@@ -630,7 +640,7 @@ public class MckTranslator {
 					init = init.substring(GdlRuleSet.TRUE_PREFIX.length(), init.length() - 1);
 				}
 				if (ruleSet.getRule(init) == null && ruleSet.getRule(GdlRuleSet.NEXT_PREFIX + init + ")") == null) {
-					reset_initial.append(System.lineSeparator() + "  " + MckFormat.formatMckNode(GdlParser.parseString(init).getChild(0)) + " := " + MckFormat.FALSE + ";");
+					reset_initial.append(System.lineSeparator() + "  " + MckFormat.formatMckNode(parseLiteral(init)) + " := " + MckFormat.FALSE + ";");
 				}
 			}
 		}
@@ -783,7 +793,7 @@ public class MckTranslator {
 			ATi.clear();
 			for (String init : initialSet) {
 				if (init.length() > GdlNode.NEXT.length() + 1 && !init.substring(1, GdlNode.NEXT.length() + 1).equals(GdlNode.NEXT)) {
-					ATi.add(MckFormat.formatMckNode(GdlParser.parseString(init).getChild(0)));
+					ATi.add(MckFormat.formatMckNode(parseLiteral(init)));
 				}
 			}
 		}/* else if (DERIVE_INITIAL_CONDITIONS) {
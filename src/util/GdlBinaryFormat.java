@@ -0,0 +1,208 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import prover.GdlRuleSet;
+import util.grammar.Gdl;
+import util.grammar.GdlNode;
+import util.grammar.GdlNodeFactory;
+import util.grammar.GdlType;
+
+/**
+ * Binary on-disk form of a translation input. A file holds either a parse
+ * tree or a grounded and minimized GdlRuleSet. Reloading a file is a single
+ * sequential read that skips tokenizing, parsing and, for rule sets, the
+ * domain graph and grounding.
+ *
+ * Every file starts with MAGIC, VERSION and the kind of its content. Atoms
+ * and literals are stored once in a string table and referred to by index.
+ *
+ * @author vedantds
+ *
+ */
+public class GdlBinaryFormat {
+
+	public final static int MAGIC = 0x47444c49; // GDLI
+	public final static int VERSION = 1;
+
+	public final static byte TREE = 1;
+	public final static byte RULE_SET = 2;
+
+	private final static int RULE = -1;
+
+	/**
+	 * Write a parse tree. Works for the object tree and the compact tree.
+	 *
+	 * @param root
+	 * @param filePath
+	 * @throws IOException
+	 */
+	public static void writeTree(GdlNode root, String filePath) throws IOException {
+		SymbolTable table = new SymbolTable();
+		for (GdlNode node : root) {
+			if (node.getType() != GdlType.ROOT && node.getType() != GdlType.CLAUSE) {
+				table.getId(node.getAtom());
+			}
+		}
+
+		try (DataOutputStream out = openOutput(filePath, TREE)) {
+			out.writeInt(table.size());
+			for (int i = 0; i < table.size(); i++) {
+				out.writeUTF(table.getSymbol(i));
+			}
+			writeNode(out, root, table);
+		}
+	}
+
+	private static void writeNode(DataOutputStream out, GdlNode node, SymbolTable table) throws IOException {
+		ArrayList<GdlNode> children = node.getChildren();
+		if (node.getType() != GdlType.ROOT) {
+			out.writeInt(node.getType() == GdlType.CLAUSE ? RULE : table.lookup(node.getAtom()));
+		}
+		out.writeInt(children.size());
+		for (GdlNode child : children) {
+			writeNode(out, child, table);
+		}
+	}
+
+	/**
+	 * Read a parse tree written by writeTree. Atoms are canonicalized through
+	 * the symbol table of the translation and ground terms are shared through
+	 * its term pool, as if the tree had been parsed.
+	 *
+	 * @param filePath
+	 * @param symbols
+	 * @return
+	 * @throws IOException
+	 */
+	public static Gdl readTree(String filePath, SymbolTable symbols) throws IOException {
+		try (DataInputStream in = openInput(filePath, TREE)) {
+			String[] table = new String[in.readInt()];
+			for (int i = 0; i < table.length; i++) {
+				table[i] = symbols.canonical(in.readUTF());
+			}
+			Gdl root = GdlNodeFactory.createGdl();
+			readChildren(in, root, table, symbols);
+			return root;
+		}
+	}
+
+	private static void readChildren(DataInputStream in, GdlNode parent, String[] table, SymbolTable symbols)
+			throws IOException {
+		int numChildren = in.readInt();
+		ArrayList<GdlNode> children = parent.getChildren();
+		children.ensureCapacity(numChildren);
+		for (int i = 0; i < numChildren; i++) {
+			int atom = in.readInt();
+			GdlNode child;
+			if (atom == RULE) {
+				child = GdlNodeFactory.createGdlRule(parent);
+			} else if (parent.getType() == GdlType.CLAUSE || parent.getType() == GdlType.ROOT) {
+				child = GdlNodeFactory.createGdlFormula(table[atom], parent, symbols);
+			} else {
+				child = GdlNodeFactory.createGdlTerm(table[atom], parent, symbols);
+			}
+			children.add(child);
+			readChildren(in, child, table, symbols);
+			children.set(children.size() - 1, GdlNodeFactory.internTerm(child, symbols));
+		}
+		children.trimToSize();
+	}
+
+	/**
+	 * Write a grounded rule set along with the sizes reported in the header of
+	 * the mck output: clauses after grounding, rules in the rule set and rules
+	 * after minimization.
+	 *
+	 * @param ruleSet
+	 * @param sizes
+	 * @param filePath
+	 * @throws IOException
+	 */
+	public static void writeRuleSet(GdlRuleSet ruleSet, long[] sizes, String filePath) throws IOException {
+		try (DataOutputStream out = openOutput(filePath, RULE_SET)) {
+			out.writeInt(sizes.length);
+			for (long size : sizes) {
+				out.writeLong(size);
+			}
+			ruleSet.writeBinary(out);
+		}
+	}
+
+	/**
+	 * Read a rule set written by writeRuleSet. The stored sizes are copied
+	 * into sizes.
+	 *
+	 * @param filePath
+	 * @param symbols
+	 * @param sizes
+	 * @return
+	 * @throws IOException
+	 */
+	public static GdlRuleSet readRuleSet(String filePath, SymbolTable symbols, long[] sizes) throws IOException {
+		try (DataInputStream in = openInput(filePath, RULE_SET)) {
+			int numSizes = in.readInt();
+			for (int i = 0; i < numSizes; i++) {
+				long size = in.readLong();
+				if (i < sizes.length) {
+					sizes[i] = size;
+				}
+			}
+			return GdlRuleSet.readBinary(in, symbols);
+		}
+	}
+
+	/**
+	 * @param filePath
+	 * @return TREE or RULE_SET
+	 * @throws IOException
+	 *             if the file isn't in this format
+	 */
+	public static byte readKind(String filePath) throws IOException {
+		try (DataInputStream in = openInput(filePath, (byte) 0)) {
+			return in.readByte();
+		}
+	}
+
+	private static DataOutputStream openOutput(String filePath, byte kind) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeByte(kind);
+		return out;
+	}
+
+	/**
+	 * Open a file and check its header. The kind isn't consumed if expectedKind
+	 * is 0.
+	 */
+	private static DataInputStream openInput(String filePath, byte expectedKind) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(filePath + " is not a binary game description");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException(filePath + " has unsupported version " + version);
+			}
+			if (expectedKind != 0) {
+				byte kind = in.readByte();
+				if (kind != expectedKind) {
+					throw new IOException(filePath + " holds kind " + kind + ", expected " + expectedKind);
+				}
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return in;
+	}
+}
@@ -0,0 +1,21 @@
+package util;
+
+import util.grammar.GDLSyntaxException;
+import util.grammar.GdlNode;
+
+/**
+ * Callback for the streaming parser. Receives each top-level sentence of a
+ * game description as soon as it has been read.
+ *
+ * @author vedantds
+ *
+ */
+public interface GdlClauseListener {
+
+	/**
+	 * @param clause fact or rule whose parent is a single clause root node
+	 * @param scopeNumber variable scope the clause was parsed in
+	 * @throws GDLSyntaxException
+	 */
+	public void clause(GdlNode clause, int scopeNumber) throws GDLSyntaxException;
+}
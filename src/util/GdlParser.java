@@ -1,5 +1,6 @@
 package util;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -9,10 +10,13 @@ import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -20,12 +24,16 @@ import java.util.Queue;
 import java.util.Set;
 
 import prover.GdlRuleSet;
+import prover.SpillingRuleSet;
 import util.grammar.GDLSyntaxException;
 import util.grammar.Gdl;
 import util.grammar.GdlNode;
 import util.grammar.GdlNodeFactory;
+import util.grammar.GdlNodeIterator;
 import util.grammar.GdlRule;
+import util.grammar.GdlTree;
 import util.grammar.GdlType;
+import util.grammar.GdlVisitor;
 import util.grammar.LparseNode;
 import util.graph.DependencyGraph;
 import util.graph.DomainGraph;
@@ -38,7 +46,10 @@ import util.graph.DomainGraph;
  */
 public class GdlParser {
 	
+	// Ground rule sets keep their clauses in temporary files until grounding
+	// is done, buffering about GROUND_MEMORY_BUDGET bytes of them
 	public static boolean GROUND_WITH_TEMP_FILES = false;
+	public static long GROUND_MEMORY_BUDGET = 256L << 20;
 
 	public final static char OPEN_P_Char = '(';// block/scope
 	public final static char CLOSE_P_Char = ')';// block/scope
@@ -64,6 +75,19 @@ public class GdlParser {
 	 * @throws IOException
 	 */
 	public static List<String> gdlTokenizer(Reader reader) throws IOException {
+		return gdlTokenizer(reader, new SymbolTable());
+	}
+
+	/**
+	 * Tokenises a file for GDL and also removes ';' comments. Atoms are
+	 * canonicalized through the symbol table of the translation.
+	 * 
+	 * @param reader
+	 * @param symbols
+	 * @return tokens : List<String>
+	 * @throws IOException
+	 */
+	public static List<String> gdlTokenizer(Reader reader, SymbolTable symbols) throws IOException {
 		List<String> tokens = new ArrayList<String>();
 
 		StringBuilder sb = new StringBuilder();
@@ -74,20 +98,20 @@ public class GdlParser {
 			case OPEN_P_Char:
 				// parenthesis
 				if (sb.length() > 0 && !comment) {
-					tokens.add(sb.toString().intern());
+					tokens.add(symbols.canonical(sb.toString()));
 				}
 				if (!comment) {
-					tokens.add(OPEN_P_Str.intern());
+					tokens.add(OPEN_P_Str);
 				}
 				sb = new StringBuilder();
 				break;
 			case CLOSE_P_Char:
 				// parenthesis
 				if (sb.length() > 0 && !comment) {
-					tokens.add(sb.toString().intern());
+					tokens.add(symbols.canonical(sb.toString()));
 				}
 				if (!comment) {
-					tokens.add(CLOSE_P_Str.intern());
+					tokens.add(CLOSE_P_Str);
 				}
 				sb = new StringBuilder();
 				break;
@@ -95,7 +119,7 @@ public class GdlParser {
 			case TAB:
 				// whitespace
 				if (sb.length() > 0 && !comment) {
-					tokens.add(sb.toString().intern());
+					tokens.add(symbols.canonical(sb.toString()));
 				}
 				sb = new StringBuilder();
 				break;
@@ -123,7 +147,7 @@ public class GdlParser {
 		// Case for input with only one variable(partial gdl parsing)
 		if (tokens.isEmpty() && sb.length() > 0 && !comment && sb.charAt(0) != OPEN_P_Char
 				&& sb.charAt(sb.length() - 1) != CLOSE_P_Char) {
-			tokens.add(sb.toString().intern());
+			tokens.add(symbols.canonical(sb.toString()));
 		}
 
 		return tokens;
@@ -139,22 +163,48 @@ public class GdlParser {
 	 * @throws URISyntaxException
 	 */
 	public static List<String> tokenizeFile(String filePath) throws IOException, URISyntaxException {
+		return tokenizeFile(filePath, new SymbolTable());
+	}
+
+	/**
+	 * Tokenize a file using the symbol table of a translation
+	 * 
+	 * @param filePath
+	 * @param symbols
+	 * @return
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public static List<String> tokenizeFile(String filePath, SymbolTable symbols)
+			throws IOException, URISyntaxException {
 		try (FileReader fr = new FileReader(new File(filePath))) {
-			return gdlTokenizer(fr);
+			return gdlTokenizer(fr, symbols);
 		}
 	}
 
 	/**
 	 * Overloaded method which doesn't require casting to Reader and handles
-	 * resulting IOException
+	 * resulting IOException. The tokens get a symbol table of their own, use
+	 * tokenizeString(String, SymbolTable) for a string of a translation.
 	 * 
 	 * @param gdl
 	 * @return tokens as a list of strings
 	 */
 	public static List<String> tokenizeString(String gdl) {
+		return tokenizeString(gdl, new SymbolTable());
+	}
+
+	/**
+	 * Tokenize a String using the symbol table of a translation
+	 * 
+	 * @param gdl
+	 * @param symbols
+	 * @return tokens as a list of strings
+	 */
+	public static List<String> tokenizeString(String gdl, SymbolTable symbols) {
 		List<String> tokens = new ArrayList<String>();
 		try {
-			tokens = gdlTokenizer(new StringReader(gdl));
+			tokens = gdlTokenizer(new StringReader(gdl), symbols);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -169,6 +219,18 @@ public class GdlParser {
 	 * @return
 	 */
 	public static Gdl expandParseTree(List<String> tokens) {
+		return expandParseTree(tokens, new SymbolTable());
+	}
+
+	/**
+	 * Takes a list of tokens and produces a parse tree whose atoms come from
+	 * the symbol table of the translation.
+	 *
+	 * @param tokens
+	 * @param symbols
+	 * @return
+	 */
+	public static Gdl expandParseTree(List<String> tokens, SymbolTable symbols) {
 		Gdl root = GdlNodeFactory.createGdl();
 
 		GdlNode parent = root;
@@ -183,6 +245,7 @@ public class GdlParser {
 			case CLOSE_P_Str:
 				parent.getChildren().trimToSize();
 				parent = parent.getParent();
+				internLastChild(parent, symbols);
 				if (scopedVariable == true && parent.getType() == GdlType.ROOT) {
 					scopedVariable = false;
 					scopeNumber++;
@@ -199,17 +262,19 @@ public class GdlParser {
 			default:
 				if (token.charAt(0) == Q_MARK_Char) {
 					scopedVariable = true;
-					token = (Q_MARK_Str + scopeNumber + UNDERSCORE + token).intern();
+					token = Q_MARK_Str + scopeNumber + UNDERSCORE + token;
 				}
 				if (parent.getType() == GdlType.CLAUSE || parent.getType() == GdlType.ROOT) {
-					newNode = GdlNodeFactory.createGdlFormula(token, parent);
+					newNode = GdlNodeFactory.createGdlFormula(token, parent, symbols);
 				} else {
-					newNode = GdlNodeFactory.createGdlTerm(token, parent);
+					newNode = GdlNodeFactory.createGdlTerm(token, parent, symbols);
 				}
 				parent.getChildren().add(newNode);
 				if (openBracket) {
 					parent = newNode;
 					openBracket = false;
+				} else {
+					internLastChild(parent, symbols);
 				}
 				break;
 			}
@@ -217,80 +282,1164 @@ public class GdlParser {
 		return root;
 	}
 
-	
-	public static GdlRuleSet expandRuleSet(List<String> tokens) {
-		GdlRuleSet ruleSet = new GdlRuleSet();
-		
+	/**
+	 * Takes a memory mapped token buffer and produces a parse tree. Atoms are
+	 * only materialized from the buffer when a node is created for them.
+	 *
+	 * @param tokens
+	 * @return
+	 */
+	public static Gdl expandParseTree(GdlTokenBuffer tokens) {
+		return expandParseTree(tokens, new SymbolTable());
+	}
+
+	/**
+	 * Takes a memory mapped token buffer and produces a parse tree whose atoms
+	 * come from the symbol table of the translation.
+	 *
+	 * @param tokens
+	 * @param symbols
+	 * @return
+	 */
+	public static Gdl expandParseTree(GdlTokenBuffer tokens, SymbolTable symbols) {
+		Gdl root = GdlNodeFactory.createGdl();
+
+		GdlNode parent = root;
+		boolean openBracket = false;
+		boolean scopedVariable = false;
+		int scopeNumber = 1;
+		for (int i = 0; i < tokens.size(); i++) {
+			switch (tokens.getKind(i)) {
+			case GdlTokenBuffer.OPEN:
+				openBracket = true;
+				break;
+			case GdlTokenBuffer.CLOSE:
+				parent.getChildren().trimToSize();
+				parent = parent.getParent();
+				internLastChild(parent, symbols);
+				if (scopedVariable == true && parent.getType() == GdlType.ROOT) {
+					scopedVariable = false;
+					scopeNumber++;
+				}
+				break;
+			default:
+				String token = tokens.getToken(i);
+				GdlNode newNode;
+				if (token.equals(GdlNode.CLAUSE)) {
+					newNode = GdlNodeFactory.createGdlRule(parent);
+				} else {
+					if (tokens.isVariable(i)) {
+						scopedVariable = true;
+						token = Q_MARK_Str + scopeNumber + UNDERSCORE + token;
+					}
+					if (parent.getType() == GdlType.CLAUSE || parent.getType() == GdlType.ROOT) {
+						newNode = GdlNodeFactory.createGdlFormula(token, parent, symbols);
+					} else {
+						newNode = GdlNodeFactory.createGdlTerm(token, parent, symbols);
+					}
+				}
+				parent.getChildren().add(newNode);
+				if (openBracket) {
+					parent = newNode;
+					openBracket = false;
+				} else {
+					internLastChild(parent, symbols);
+				}
+				break;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Replace the last child of parent with its shared instance if it is a
+	 * completed ground term
+	 *
+	 * @param parent
+	 * @param symbols
+	 */
+	private static void internLastChild(GdlNode parent, SymbolTable symbols) {
+		ArrayList<GdlNode> children = parent.getChildren();
+		int last = children.size() - 1;
+		GdlNode child = children.get(last);
+		GdlNode pooled = GdlNodeFactory.internTerm(child, symbols);
+		if (pooled != child) {
+			children.set(last, pooled);
+		}
+	}
+
+	/**
+	 * Takes a list of tokens and produces a compact struct of arrays parse
+	 * tree. Follows the same rules as expandParseTree.
+	 *
+	 * @param tokens
+	 * @param symbols
+	 * @return
+	 */
+	public static GdlTree expandCompactTree(List<String> tokens, SymbolTable symbols) {
+		GdlTree tree = new GdlTree(symbols, tokens.size());
+
+		int parent = GdlTree.ROOT;
+		boolean openBracket = false;
+		boolean scopedVariable = false;
+		int scopeNumber = 1;
 		for (String token : tokens) {
-			StringBuilder literal = new StringBuilder();
-			int bracketLevel = 0;
-			boolean isHead = true;
-			String workingHead;
-			Set<String> workingBody = null;
-			
-			switch(token){
+			switch (token) {
 			case OPEN_P_Str:
-				bracketLevel++;
+				openBracket = true;
 				break;
 			case CLOSE_P_Str:
-				bracketLevel--;
-				if (bracketLevel == 0){
-					if (isHead){
-						if (ruleSet.getRuleSet().get(literal.toString()) == null) {
-							ruleSet.getRuleSet().put(literal.toString(), new HashSet<Set<String>>());
-						}
-						workingHead = literal.toString();
-						isHead = false;
+				parent = tree.getParent(parent);
+				if (scopedVariable == true && parent == GdlTree.ROOT) {
+					scopedVariable = false;
+					scopeNumber++;
+				}
+				break;
+			default:
+				int newNode;
+				if (token.equals(GdlNode.CLAUSE)) {
+					newNode = tree.addRule(parent);
+				} else {
+					if (token.charAt(0) == Q_MARK_Char) {
+						scopedVariable = true;
+						token = Q_MARK_Str + scopeNumber + UNDERSCORE + token;
+					}
+					GdlType parentType = tree.getType(parent);
+					if (parentType == GdlType.CLAUSE || parentType == GdlType.ROOT) {
+						newNode = tree.addFormula(parent, token);
 					} else {
-						if (workingBody == null) {
-							workingBody = new HashSet<String>();
-						}
-						workingBody.add(literal.toString());
+						newNode = tree.addTerm(parent, token);
 					}
-					literal = new StringBuilder();
-				} else if (bracketLevel < 0) {
-					bracketLevel = 0;
-					isHead = true;
+				}
+				if (openBracket) {
+					parent = newNode;
+					openBracket = false;
 				}
 				break;
-			case GdlNode.CLAUSE:
-				bracketLevel = 0;
-				isHead = true;
+			}
+		}
+		tree.trimToSize();
+		return tree;
+	}
+
+	/**
+	 * Takes a memory mapped token buffer and produces a compact struct of
+	 * arrays parse tree. Follows the same rules as expandParseTree.
+	 *
+	 * @param tokens
+	 * @param symbols
+	 * @return
+	 */
+	public static GdlTree expandCompactTree(GdlTokenBuffer tokens, SymbolTable symbols) {
+		GdlTree tree = new GdlTree(symbols, tokens.size());
+
+		int parent = GdlTree.ROOT;
+		boolean openBracket = false;
+		boolean scopedVariable = false;
+		int scopeNumber = 1;
+		for (int i = 0; i < tokens.size(); i++) {
+			switch (tokens.getKind(i)) {
+			case GdlTokenBuffer.OPEN:
+				openBracket = true;
+				break;
+			case GdlTokenBuffer.CLOSE:
+				parent = tree.getParent(parent);
+				if (scopedVariable == true && parent == GdlTree.ROOT) {
+					scopedVariable = false;
+					scopeNumber++;
+				}
 				break;
 			default:
-				if (literal.length() == 0) {
-					
+				String token = tokens.getToken(i);
+				int newNode;
+				if (token.equals(GdlNode.CLAUSE)) {
+					newNode = tree.addRule(parent);
+				} else {
+					if (tokens.isVariable(i)) {
+						scopedVariable = true;
+						token = Q_MARK_Str + scopeNumber + UNDERSCORE + token;
+					}
+					GdlType parentType = tree.getType(parent);
+					if (parentType == GdlType.CLAUSE || parentType == GdlType.ROOT) {
+						newNode = tree.addFormula(parent, token);
+					} else {
+						newNode = tree.addTerm(parent, token);
+					}
+				}
+				if (openBracket) {
+					parent = newNode;
+					openBracket = false;
+				}
+				break;
+			}
+		}
+		tree.trimToSize();
+		return tree;
+	}
+
+	/**
+	 * Push-style parser. Reads the game description one character at a time
+	 * and passes each top-level sentence to the listener as soon as its
+	 * closing parenthesis is read, so only one clause is held in memory.
+	 *
+	 * @param reader
+	 * @param listener
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static void streamParse(Reader reader, GdlClauseListener listener)
+			throws IOException, GDLSyntaxException {
+		streamParse(reader, listener, new SymbolTable());
+	}
+
+	/**
+	 * Push-style parser using the symbol table of a translation
+	 *
+	 * @param reader
+	 * @param listener
+	 * @param symbols
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static void streamParse(Reader reader, GdlClauseListener listener, SymbolTable symbols)
+			throws IOException, GDLSyntaxException {
+		ClauseStream stream = new ClauseStream(listener, symbols);
+
+		StringBuilder sb = new StringBuilder();
+		int character;
+		boolean comment = false;
+		while ((character = reader.read()) != -1) {
+			switch (character) {
+			case OPEN_P_Char:
+			case CLOSE_P_Char:
+				if (!comment) {
+					if (sb.length() > 0) {
+						stream.push(sb.toString());
+					}
+					stream.push(character == OPEN_P_Char ? OPEN_P_Str : CLOSE_P_Str);
+				}
+				sb.setLength(0);
+				break;
+			case SPACE:
+			case TAB:
+				if (sb.length() > 0 && !comment) {
+					stream.push(sb.toString());
+				}
+				sb.setLength(0);
+				break;
+			case NEW_LINE:
+			case RETURN:
+				if (comment) {
+					sb.setLength(0);
+				}
+				comment = false;
+				break;
+			case SEMICOLON:
+				comment = true;
+				break;
+			default:
+				sb.append((char) character);
+				break;
+			}
+		}
+		reader.close();
+	}
+
+	/**
+	 * Push-style parser over a memory mapped token buffer
+	 *
+	 * @param tokens
+	 * @param listener
+	 * @param symbols
+	 * @throws GDLSyntaxException
+	 */
+	public static void streamParse(GdlTokenBuffer tokens, GdlClauseListener listener, SymbolTable symbols)
+			throws GDLSyntaxException {
+		ClauseStream stream = new ClauseStream(listener, symbols);
+		for (int i = 0; i < tokens.size(); i++) {
+			stream.push(tokens.getToken(i));
+		}
+	}
+
+	/**
+	 * Overloaded method which doesn't require casting to Reader for streaming
+	 * game descriptions in Files
+	 *
+	 * @param filePath
+	 * @param listener
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static void streamFile(String filePath, GdlClauseListener listener)
+			throws IOException, GDLSyntaxException {
+		streamFile(filePath, listener, new SymbolTable());
+	}
+
+	/**
+	 * Stream a game description in a File using the symbol table of a
+	 * translation
+	 *
+	 * @param filePath
+	 * @param listener
+	 * @param symbols
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static void streamFile(String filePath, GdlClauseListener listener, SymbolTable symbols)
+			throws IOException, GDLSyntaxException {
+		streamParse(new BufferedReader(new FileReader(new File(filePath))), listener, symbols);
+	}
+
+	/**
+	 * Builds one clause at a time from a stream of tokens. Follows the same
+	 * rules as expandParseTree but every top-level sentence gets its own root.
+	 */
+	private static class ClauseStream {
+		private final GdlClauseListener listener;
+		private final SymbolTable symbols;
+		private Gdl root;
+		private GdlNode parent;
+		private boolean openBracket = false;
+		private boolean scopedVariable = false;
+		private int scopeNumber = 1;
+
+		ClauseStream(GdlClauseListener listener, SymbolTable symbols) {
+			this.listener = listener;
+			this.symbols = symbols;
+			this.root = GdlNodeFactory.createGdl();
+			this.parent = root;
+		}
+
+		void push(String token) throws GDLSyntaxException {
+			switch (token) {
+			case OPEN_P_Str:
+				openBracket = true;
+				break;
+			case CLOSE_P_Str:
+				if (parent == root) {
+					throw new GDLSyntaxException();
+				}
+				parent.getChildren().trimToSize();
+				parent = parent.getParent();
+				internLastChild(parent, symbols);
+				if (parent == root) {
+					emit();
+				}
+				break;
+			default:
+				GdlNode newNode;
+				if (token.equals(GdlNode.CLAUSE)) {
+					newNode = GdlNodeFactory.createGdlRule(parent);
+				} else {
+					if (token.charAt(0) == Q_MARK_Char) {
+						scopedVariable = true;
+						token = Q_MARK_Str + scopeNumber + UNDERSCORE + token;
+					}
+					if (parent.getType() == GdlType.CLAUSE || parent.getType() == GdlType.ROOT) {
+						newNode = GdlNodeFactory.createGdlFormula(token, parent, symbols);
+					} else {
+						newNode = GdlNodeFactory.createGdlTerm(token, parent, symbols);
+					}
+				}
+				parent.getChildren().add(newNode);
+				if (openBracket) {
+					parent = newNode;
+					openBracket = false;
+				} else if (parent == root) {
+					emit();
 				} else {
-					literal.append(token);
+					internLastChild(parent, symbols);
 				}
+				break;
+			}
+		}
+
+		private void emit() throws GDLSyntaxException {
+			GdlNode clause = root.getChild(0);
+			listener.clause(clause, scopeNumber);
+			if (scopedVariable) {
+				scopedVariable = false;
+				scopeNumber++;
+			}
+			root = GdlNodeFactory.createGdl();
+			parent = root;
+		}
+	}
+
+	public static GdlRuleSet expandRuleSet(List<String> tokens) {
+		return expandRuleSet(tokens, new SymbolTable());
+	}
+
+	/**
+	 * Load a ground game description straight into a GdlRuleSet in a single
+	 * pass over its tokens. Literal strings are built as their closing bracket
+	 * is read, so no parse tree is constructed and nothing is converted back
+	 * to a String. Distinct literals are evaluated as they are read.
+	 * 
+	 * The result is the same as new GdlRuleSet(expandParseTree(tokens)).
+	 * 
+	 * @param tokens
+	 * @param symbols
+	 * @return ruleSet, or null if the description has variables and has to be
+	 *         grounded first
+	 */
+	public static GdlRuleSet expandRuleSet(List<String> tokens, SymbolTable symbols) {
+		GdlRuleSet ruleSet = new GdlRuleSet(symbols);
+		ArrayDeque<TokenFrame> stack = new ArrayDeque<TokenFrame>();
+		boolean openBracket = false;
+
+		for (String token : tokens) {
+			TokenLiteral literal;
+			switch (token) {
+			case OPEN_P_Str:
+				openBracket = true;
+				continue;
+			case CLOSE_P_Str:
+				if (stack.isEmpty()) {
+					continue;
+				}
+				literal = stack.pop().close();
+				break;
+			default:
+				if (token.charAt(0) == Q_MARK_Char) {
+					return null;
+				}
+				if (openBracket) {
+					stack.push(new TokenFrame(token));
+					openBracket = false;
+					continue;
+				}
+				literal = new TokenLiteral(token, token, null);
+				break;
+			}
+
+			if (!stack.isEmpty()) {
+				stack.peek().add(literal);
+			} else if (literal.atom.equals(GdlNode.CLAUSE)) {
+				joinGroundRule(ruleSet, literal);
+			} else if (literal.atom.equals(GdlNode.INIT)) {
+				ruleSet.joinGroundFact(literal.text, literal.first.text);
+			} else {
+				ruleSet.joinGroundFact(literal.text, null);
 			}
 		}
 		return ruleSet;
 	}
-	
+
+	private static void joinGroundRule(GdlRuleSet ruleSet, TokenLiteral clause) {
+		List<String> body = new ArrayList<String>(clause.body.size());
+		List<String> positiveBody = new ArrayList<String>(clause.body.size());
+		for (TokenLiteral literal : clause.body) {
+			body.add(literal.text);
+			while (literal.atom.equals(GdlNode.NOT)) {
+				literal = literal.first;
+			}
+			positiveBody.add(literal.text);
+		}
+		ruleSet.joinGroundRule(clause.first.text, body, positiveBody);
+	}
+
+	/**
+	 * Grounds a clause without going through text. Every literal is compiled
+	 * once into a GroundTemplate and each instance is built from an array of
+	 * bound constants and joined into a GdlRuleSet. Variables are
+	 * substituted by position, not by name, so a variable that is a prefix
+	 * of another is no hazard.
+	 * 
+	 * Variables are bound depth first, most constrained first, see
+	 * variableOrder. A distinct literal or a literal of a static relation is decided as
+	 * soon as its variables are bound, and if it is false no instance under
+	 * that binding is built. A variable that is a direct argument of a
+	 * positive static literal only takes the values it has in the facts
+	 * that match the arguments bound before it. A literal of a static
+	 * relation always holds in an instance that is built, so it is left out
+	 * of the body.
+	 */
+	static final class ClauseGrounder {
+		// Domains of the variables, the first one changes fastest
+		final String[][] domains;
+		final boolean rule;
+		final GroundTemplate head;
+		final GroundTemplate initial;
+		final GroundTemplate[] body;
+		final GroundTemplate[] positiveBody;
+		final boolean[] negative;
+		// Literals of static relations, left out of the body
+		final boolean[] decided;
+		// Distinct literals, decided by their checks
+		final boolean[] distinct;
+		// By depth + 1, depth d binds variable domains.length - 1 - d and
+		// literals without variables are decided at depth -1
+		final Check[][] checks;
+		// By depth
+		final Generator[][] generators;
+
+		ClauseGrounder(GdlNode clause, Map<String, Set<String>> constantMap, StaticFacts staticFacts) {
+			List<String> order = variableOrder(clause, constantMap, staticFacts);
+			Map<String, Integer> variableIndex = new HashMap<String, Integer>();
+			domains = new String[order.size()][];
+			for (int depth = 0; depth < domains.length; depth++) {
+				String variable = order.get(depth);
+				domains[domains.length - 1 - depth] = constantMap.get(variable).toArray(new String[0]);
+				variableIndex.put(variable, domains.length - 1 - depth);
+			}
+
+			List<List<Check>> checkList = new ArrayList<List<Check>>();
+			List<List<Generator>> generatorList = new ArrayList<List<Generator>>();
+			for (int depth = 0; depth <= domains.length; depth++) {
+				checkList.add(new ArrayList<Check>());
+				generatorList.add(new ArrayList<Generator>());
+			}
+			rule = clause.getType() == GdlType.CLAUSE;
+			if (rule) {
+				head = new GroundTemplate(clause.getChild(0), variableIndex);
+				initial = null;
+				int size = clause.getChildren().size() - 1;
+				body = new GroundTemplate[size];
+				positiveBody = new GroundTemplate[size];
+				negative = new boolean[size];
+				decided = new boolean[size];
+				distinct = new boolean[size];
+				for (int i = 0; i < size; i++) {
+					GdlNode literal = clause.getChild(i + 1);
+					body[i] = new GroundTemplate(literal, variableIndex);
+					while (literal.getAtom().equals(GdlNode.NOT)) {
+						literal = literal.getChild(0);
+						negative[i] = !negative[i];
+					}
+					positiveBody[i] = literal == clause.getChild(i + 1) ? body[i]
+							: new GroundTemplate(literal, variableIndex);
+					StaticFacts.Relation relation = staticFacts == null ? null
+							: staticFacts.get(literal.getAtom(), literal.getChildren().size());
+					if (literal.getAtom().equals(GdlNode.DISTINCT)) {
+						distinct[i] = true;
+						checkList.get(depth(positiveBody[i]) + 1)
+								.add(new Check(new GroundTemplate(literal.getChild(0), variableIndex),
+										new GroundTemplate(literal.getChild(1), variableIndex), null, negative[i]));
+					} else if (relation != null) {
+						decided[i] = true;
+						checkList.get(depth(positiveBody[i]) + 1)
+								.add(new Check(positiveBody[i], null, relation, negative[i]));
+						if (!negative[i]) {
+							addGenerators(literal, relation, variableIndex, generatorList);
+						}
+					}
+				}
+			} else {
+				head = new GroundTemplate(clause, variableIndex);
+				initial = clause.getAtom().equals(GdlNode.INIT)
+						? new GroundTemplate(clause.getChild(0), variableIndex) : null;
+				body = positiveBody = null;
+				negative = decided = distinct = null;
+			}
+
+			checks = new Check[checkList.size()][];
+			for (int i = 0; i < checks.length; i++) {
+				checks[i] = checkList.get(i).toArray(new Check[0]);
+			}
+			generators = new Generator[domains.length][];
+			for (int depth = 0; depth < domains.length; depth++) {
+				List<Generator> depthGenerators = new ArrayList<Generator>();
+				for (Generator generator : generatorList.get(depth)) {
+					if (generator.boundPositions.length == 0) {
+						// Same values under every binding
+						int variable = domains.length - 1 - depth;
+						domains[variable] = generator.filter(domains[variable], null);
+					} else {
+						depthGenerators.add(generator);
+					}
+				}
+				generators[depth] = depthGenerators.toArray(new Generator[0]);
+			}
+		}
+
+		private ClauseGrounder(ClauseGrounder whole, String[] outermost) {
+			domains = whole.domains.clone();
+			domains[domains.length - 1] = outermost;
+			rule = whole.rule;
+			head = whole.head;
+			initial = whole.initial;
+			body = whole.body;
+			positiveBody = whole.positiveBody;
+			negative = whole.negative;
+			decided = whole.decided;
+			distinct = whole.distinct;
+			checks = whole.checks;
+			generators = whole.generators;
+		}
+
+		/**
+		 * Order to bind the variables of a clause in. Each depth binds the
+		 * variable with the fewest values under the variables bound before
+		 * it. As a direct argument of a positive static literal a variable
+		 * has about as many values as the facts that match an argument bound
+		 * before it, or as the facts have at its position. Ties go to the
+		 * variable that decides the most distinct and static literals, then
+		 * to the one that occurs first in the clause.
+		 * 
+		 * @param clause
+		 * @param constantMap
+		 * @param staticFacts
+		 * @return variables of constantMap, the first one is bound first
+		 */
+		private static List<String> variableOrder(GdlNode clause, Map<String, Set<String>> constantMap,
+				StaticFacts staticFacts) {
+			Set<String> remaining = new LinkedHashSet<String>();
+			addVariables(clause, remaining);
+			remaining.retainAll(constantMap.keySet());
+
+			// Distinct and static body literals, without their negations
+			List<GdlNode> literals = new ArrayList<GdlNode>();
+			List<Set<String>> literalVariables = new ArrayList<Set<String>>();
+			// Relation of a positive static literal, null otherwise
+			List<StaticFacts.Relation> relations = new ArrayList<StaticFacts.Relation>();
+			for (int i = 1; clause.getType() == GdlType.CLAUSE && i < clause.getChildren().size(); i++) {
+				GdlNode literal = clause.getChild(i);
+				boolean negative = false;
+				while (literal.getAtom().equals(GdlNode.NOT)) {
+					literal = literal.getChild(0);
+					negative = !negative;
+				}
+				StaticFacts.Relation relation = staticFacts == null ? null
+						: staticFacts.get(literal.getAtom(), literal.getChildren().size());
+				if (relation == null && !literal.getAtom().equals(GdlNode.DISTINCT)) {
+					continue;
+				}
+				Set<String> variables = new HashSet<String>();
+				addVariables(literal, variables);
+				literals.add(literal);
+				literalVariables.add(variables);
+				relations.add(negative || literal.getAtom().equals(GdlNode.DISTINCT) ? null : relation);
+			}
+
+			List<String> order = new ArrayList<String>(remaining.size());
+			Set<String> bound = new HashSet<String>();
+			while (!remaining.isEmpty()) {
+				String best = null;
+				long bestValues = 0;
+				int bestDecided = 0;
+				for (String variable : remaining) {
+					long values = constantMap.get(variable).size();
+					int decided = 0;
+					for (int i = 0; i < literals.size(); i++) {
+						Set<String> variables = literalVariables.get(i);
+						if (!variables.contains(variable)) {
+							continue;
+						}
+						bound.add(variable);
+						if (bound.containsAll(variables)) {
+							decided++;
+						}
+						bound.remove(variable);
+						if (relations.get(i) != null) {
+							values = Math.min(values, estimateValues(literals.get(i), relations.get(i), variable, bound));
+						}
+					}
+					if (best == null || values < bestValues || (values == bestValues && decided > bestDecided)) {
+						best = variable;
+						bestValues = values;
+						bestDecided = decided;
+					}
+				}
+				order.add(best);
+				bound.add(best);
+				remaining.remove(best);
+			}
+			return order;
+		}
+
+		/**
+		 * @return number of values a variable is expected to take from the
+		 *         facts of a positive static literal, Long.MAX_VALUE if it
+		 *         isn't a direct argument of the literal
+		 */
+		private static long estimateValues(GdlNode literal, StaticFacts.Relation relation, String variable,
+				Set<String> bound) {
+			long values = Long.MAX_VALUE;
+			List<GdlNode> arguments = literal.getChildren();
+			for (int i = 0; i < arguments.size(); i++) {
+				GdlNode argument = arguments.get(i);
+				if (argument.getType() == GdlType.VARIABLE && argument.getAtom().equals(variable)) {
+					values = Math.min(values, relation.distinctArguments(i));
+				}
+			}
+			if (values == Long.MAX_VALUE) {
+				return values;
+			}
+			for (int i = 0; i < arguments.size(); i++) {
+				Set<String> variables = new HashSet<String>();
+				addVariables(arguments.get(i), variables);
+				int keys = relation.distinctArguments(i);
+				if (!variables.contains(variable) && bound.containsAll(variables) && keys > 0) {
+					// Facts per value of the bound argument
+					values = Math.min(values, (relation.size() + keys - 1) / keys);
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * Add the variables of a tree in the order they occur
+		 */
+		private static void addVariables(GdlNode node, Set<String> variables) {
+			if (node.getType() == GdlType.VARIABLE) {
+				variables.add(node.getAtom());
+			}
+			for (GdlNode child : node.getChildren()) {
+				addVariables(child, variables);
+			}
+		}
+
+		/**
+		 * @param template
+		 * @return depth at which every variable of the template is bound,
+		 *         -1 if it has none
+		 */
+		private int depth(GroundTemplate template) {
+			int depth = -1;
+			for (int variable : template.variables) {
+				depth = Math.max(depth, domains.length - 1 - variable);
+			}
+			return depth;
+		}
+
+		/**
+		 * Add a generator for every variable that is a direct argument of a
+		 * positive static literal
+		 */
+		private void addGenerators(GdlNode literal, StaticFacts.Relation relation, Map<String, Integer> variableIndex,
+				List<List<Generator>> generatorList) {
+			List<GdlNode> arguments = literal.getChildren();
+			GroundTemplate[] templates = new GroundTemplate[arguments.size()];
+			for (int i = 0; i < templates.length; i++) {
+				templates[i] = new GroundTemplate(arguments.get(i), variableIndex);
+			}
+			Set<String> done = new HashSet<String>();
+			for (GdlNode argument : arguments) {
+				if (argument.getType() != GdlType.VARIABLE || !done.add(argument.getAtom())) {
+					continue;
+				}
+				int depth = domains.length - 1 - variableIndex.get(argument.getAtom());
+				List<Integer> positions = new ArrayList<Integer>();
+				List<Integer> boundPositions = new ArrayList<Integer>();
+				for (int i = 0; i < templates.length; i++) {
+					if (arguments.get(i).getType() == GdlType.VARIABLE
+							&& arguments.get(i).getAtom().equals(argument.getAtom())) {
+						positions.add(i);
+					} else if (depth(templates[i]) < depth) {
+						boundPositions.add(i);
+					}
+				}
+				generatorList.get(depth).add(new Generator(relation, positions, boundPositions, templates));
+			}
+		}
+
+		/**
+		 * @return number of instances before any literal is decided,
+		 *         Long.MAX_VALUE if there are more
+		 */
+		long instances() {
+			long instances = 1;
+			for (String[] domain : domains) {
+				if (domain.length != 0 && instances > Long.MAX_VALUE / domain.length) {
+					return Long.MAX_VALUE;
+				}
+				instances *= domain.length;
+			}
+			return instances;
+		}
+
+		/**
+		 * @return size of the domain of the variable that changes slowest,
+		 *         zero for a ground clause
+		 */
+		int outermostSize() {
+			return domains.length == 0 ? 0 : domains[domains.length - 1].length;
+		}
+
+		/**
+		 * Instances for part of the domain of the variable that changes
+		 * slowest. Joining the slices of consecutive parts in order joins the
+		 * same instances in the same order as joining this grounder.
+		 * 
+		 * @param from
+		 * @param to
+		 * @return
+		 */
+		ClauseGrounder slice(int from, int to) {
+			return new ClauseGrounder(this, Arrays.copyOfRange(domains[domains.length - 1], from, to));
+		}
+
+		/**
+		 * @param ruleSet
+		 * @param reachable
+		 *            atoms that can hold, or null to join every instance
+		 */
+		void join(GdlRuleSet ruleSet, Set<String> reachable) {
+			int size = domains.length;
+			String[] binding = new String[size];
+			if (!holds(checks[0], binding)) {
+				return;
+			}
+			List<String> bodyText = rule ? new ArrayList<String>(body.length) : null;
+			List<String> positiveText = rule ? new ArrayList<String>(body.length) : null;
+			if (size == 0) {
+				join(ruleSet, reachable, binding, bodyText, positiveText);
+				return;
+			}
+
+			String[][] values = new String[size][];
+			int[] next = new int[size];
+			int depth = 0;
+			values[0] = values(0, binding);
+			while (depth >= 0) {
+				if (next[depth] == values[depth].length) {
+					depth--;
+					continue;
+				}
+				binding[size - 1 - depth] = values[depth][next[depth]++];
+				if (!holds(checks[depth + 1], binding)) {
+					continue;
+				}
+				if (depth == size - 1) {
+					join(ruleSet, reachable, binding, bodyText, positiveText);
+				} else {
+					depth++;
+					values[depth] = values(depth, binding);
+					next[depth] = 0;
+				}
+			}
+		}
+
+		/**
+		 * @return values of the variable bound at depth under the binding of
+		 *         the variables before it
+		 */
+		private String[] values(int depth, String[] binding) {
+			String[] values = domains[domains.length - 1 - depth];
+			for (Generator generator : generators[depth]) {
+				values = generator.filter(values, binding);
+			}
+			return values;
+		}
+
+		private static boolean holds(Check[] checks, String[] binding) {
+			for (Check check : checks) {
+				if (!check.holds(binding)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Join the instance of a binding of every variable
+		 */
+		private void join(GdlRuleSet ruleSet, Set<String> reachable, String[] binding, List<String> bodyText,
+				List<String> positiveText) {
+			if (!rule) {
+				ruleSet.joinGroundFact(head.instantiate(binding), initial == null ? null : initial.instantiate(binding));
+				return;
+			}
+			bodyText.clear();
+			positiveText.clear();
+			for (int i = 0; i < body.length; i++) {
+				if (decided[i]) {
+					continue;
+				}
+				String text = body[i].instantiate(binding);
+				String positiveLiteral = positiveBody[i] == body[i] ? text : positiveBody[i].instantiate(binding);
+				if (!distinct[i] && reachable != null && !reachable.contains(positiveLiteral)) {
+					// Unreachable atoms never hold
+					if (!negative[i]) {
+						return;
+					}
+					continue;
+				}
+				bodyText.add(text);
+				positiveText.add(positiveLiteral);
+			}
+			ruleSet.joinGroundRule(head.instantiate(binding), bodyText, positiveText);
+		}
+	}
+
+	/**
+	 * A distinct literal or a literal of a static relation
+	 */
+	private static final class Check {
+		final GroundTemplate first;
+		// Second argument of distinct, null for a static literal
+		final GroundTemplate second;
+		final StaticFacts.Relation relation;
+		final boolean negative;
+
+		Check(GroundTemplate first, GroundTemplate second, StaticFacts.Relation relation, boolean negative) {
+			this.first = first;
+			this.second = second;
+			this.relation = relation;
+			this.negative = negative;
+		}
+
+		boolean holds(String[] binding) {
+			boolean value = second != null ? !first.instantiate(binding).equals(second.instantiate(binding))
+					: relation.contains(first.instantiate(binding));
+			return value != negative;
+		}
+	}
+
+	/**
+	 * Values a variable can take as a direct argument of a positive static
+	 * literal, looked up in the index of an argument bound before it
+	 */
+	private static final class Generator {
+		final StaticFacts.Relation relation;
+		// Positions of the variable
+		final int[] positions;
+		// Positions of the arguments bound before the variable
+		final int[] boundPositions;
+		final GroundTemplate[] boundArguments;
+
+		Generator(StaticFacts.Relation relation, List<Integer> positions, List<Integer> boundPositions,
+				GroundTemplate[] arguments) {
+			this.relation = relation;
+			this.positions = new int[positions.size()];
+			for (int i = 0; i < this.positions.length; i++) {
+				this.positions[i] = positions.get(i);
+			}
+			this.boundPositions = new int[boundPositions.size()];
+			this.boundArguments = new GroundTemplate[boundPositions.size()];
+			for (int i = 0; i < this.boundPositions.length; i++) {
+				this.boundPositions[i] = boundPositions.get(i);
+				this.boundArguments[i] = arguments[boundPositions.get(i)];
+			}
+		}
+
+		/**
+		 * @param values
+		 * @param binding
+		 * @return values that some matching fact has, in the same order
+		 */
+		String[] filter(String[] values, String[] binding) {
+			String[] bound = new String[boundPositions.length];
+			for (int i = 0; i < bound.length; i++) {
+				bound[i] = boundArguments[i].instantiate(binding);
+			}
+			List<String[]> tuples = bound.length == 0 ? relation.getTuples()
+					: relation.lookup(boundPositions[0], bound[0]);
+			Set<String> allowed = new HashSet<String>();
+			tuple: for (String[] tuple : tuples) {
+				for (int i = 1; i < bound.length; i++) {
+					if (!tuple[boundPositions[i]].equals(bound[i])) {
+						continue tuple;
+					}
+				}
+				for (int i = 1; i < positions.length; i++) {
+					if (!tuple[positions[i]].equals(tuple[positions[0]])) {
+						continue tuple;
+					}
+				}
+				allowed.add(tuple[positions[0]]);
+			}
+			List<String> filtered = new ArrayList<String>(Math.min(values.length, allowed.size()));
+			for (String value : values) {
+				if (allowed.contains(value)) {
+					filtered.add(value);
+				}
+			}
+			return filtered.toArray(new String[filtered.size()]);
+		}
+	}
+
+	/**
+	 * Text of a literal or term as alternating fixed parts and variables,
+	 * in the format of GdlNode.toString()
+	 */
+	private static final class GroundTemplate {
+		final String[] parts;
+		final int[] variables;
+
+		GroundTemplate(GdlNode node, Map<String, Integer> variableIndex) {
+			List<String> partList = new ArrayList<String>();
+			List<Integer> variableList = new ArrayList<Integer>();
+			StringBuilder part = new StringBuilder();
+			append(node, variableIndex, part, partList, variableList);
+			partList.add(part.toString());
+			parts = partList.toArray(new String[0]);
+			variables = new int[variableList.size()];
+			for (int i = 0; i < variables.length; i++) {
+				variables[i] = variableList.get(i);
+			}
+		}
+
+		private static void append(GdlNode node, Map<String, Integer> variableIndex, StringBuilder part,
+				List<String> partList, List<Integer> variableList) {
+			if (node.getType() == GdlType.VARIABLE) {
+				partList.add(part.toString());
+				part.setLength(0);
+				variableList.add(variableIndex.get(node.getAtom()));
+				return;
+			}
+			List<GdlNode> children = node.getChildren();
+			if (children.isEmpty()) {
+				part.append(node.getAtom());
+				return;
+			}
+			part.append('(').append(node.getAtom());
+			for (GdlNode child : children) {
+				part.append(' ');
+				append(child, variableIndex, part, partList, variableList);
+			}
+			part.append(')');
+		}
+
+		String instantiate(String[] binding) {
+			if (variables.length == 0) {
+				return parts[0];
+			}
+			StringBuilder text = new StringBuilder(parts[0]);
+			for (int i = 0; i < variables.length; i++) {
+				text.append(binding[variables[i]]).append(parts[i + 1]);
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Finished literal read by expandRuleSet. Only the first argument is
+	 * kept, which is all not and init need. Clauses keep their body as well.
+	 */
+	private static final class TokenLiteral {
+		final String atom;
+		final String text;
+		final TokenLiteral first;
+		List<TokenLiteral> body;
+
+		TokenLiteral(String atom, String text, TokenLiteral first) {
+			this.atom = atom;
+			this.text = text;
+			this.first = first;
+		}
+	}
+
+	/**
+	 * Bracket that is still open while expandRuleSet reads its arguments
+	 */
+	private static final class TokenFrame {
+		final String atom;
+		final StringBuilder text;
+		final List<TokenLiteral> body;
+		TokenLiteral first;
+
+		TokenFrame(String atom) {
+			this.atom = atom;
+			if (atom.equals(GdlNode.CLAUSE)) {
+				// Text of a whole clause is never needed
+				this.text = null;
+				this.body = new ArrayList<TokenLiteral>();
+			} else {
+				this.text = new StringBuilder().append('(').append(atom);
+				this.body = null;
+			}
+		}
+
+		void add(TokenLiteral literal) {
+			if (first == null) {
+				first = literal;
+			} else if (body != null) {
+				body.add(literal);
+			}
+			if (text != null) {
+				text.append(' ').append(literal.text);
+			}
+		}
+
+		TokenLiteral close() {
+			TokenLiteral literal;
+			if (first == null || text == null) {
+				literal = new TokenLiteral(atom, atom, first);
+			} else {
+				literal = new TokenLiteral(atom, text.append(')').toString(), first);
+			}
+			literal.body = body;
+			return literal;
+		}
+	}
+	
+	/**
+	 * Overloaded method which doesn't require casting to Reader for game
+	 * descriptions in Files
+	 * 
+	 * @param filePath
+	 * @return
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public static Gdl parseFile(String filePath) throws IOException, URISyntaxException {
+		return parseFile(filePath, new SymbolTable());
+	}
+
+	/**
+	 * Parse a file using the symbol table of a translation
+	 * 
+	 * @param filePath
+	 * @param symbols
+	 * @return
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public static Gdl parseFile(String filePath, SymbolTable symbols) throws IOException, URISyntaxException {
+		return expandParseTree(tokenizeFile(filePath, symbols), symbols);
+	}
+
+	/**
+	 * Parse a game description through a memory mapped token buffer instead of
+	 * a Reader. Intended for large (usually ground) descriptions.
+	 *
+	 * @param filePath
+	 * @param symbols
+	 * @return
+	 * @throws IOException
+	 */
+	public static Gdl parseMappedFile(String filePath, SymbolTable symbols) throws IOException {
+		return expandParseTree(GdlTokenBuffer.map(filePath), symbols);
+	}
+
 	/**
-	 * Overloaded method which doesn't require casting to Reader for game
-	 * descriptions in Files
-	 * 
+	 * Parse a game description into a compact struct of arrays tree through a
+	 * memory mapped token buffer. Intended for large (usually ground)
+	 * descriptions, the root of the tree is GdlTree.getRoot().
+	 *
 	 * @param filePath
+	 * @param symbols
 	 * @return
 	 * @throws IOException
-	 * @throws URISyntaxException
 	 */
-	public static Gdl parseFile(String filePath) throws IOException, URISyntaxException {
-		return expandParseTree(tokenizeFile(filePath));
+	public static GdlTree parseCompactFile(String filePath, SymbolTable symbols) throws IOException {
+		return expandCompactTree(GdlTokenBuffer.map(filePath), symbols);
 	}
 
 	/**
 	 * Overloaded method which doesn't require casting to Reader for game
-	 * descriptions in Strings
+	 * descriptions in Strings. The tree gets a symbol table of its own, use
+	 * parseString(String, SymbolTable) for a string of a translation.
 	 * 
 	 * @param gdl
 	 * @return
 	 * @throws IOException
 	 */
 	public static Gdl parseString(String gdl) {
-		return expandParseTree(tokenizeString(gdl));
+		return parseString(gdl, new SymbolTable());
+	}
+
+	/**
+	 * Parse a String using the symbol table of a translation
+	 * 
+	 * @param gdl
+	 * @param symbols
+	 * @return
+	 */
+	public static Gdl parseString(String gdl, SymbolTable symbols) {
+		return expandParseTree(tokenizeString(gdl, symbols), symbols);
 	}
 
 	/**
@@ -367,19 +1516,82 @@ public class GdlParser {
 	 * @return
 	 */
 	public static DomainGraph constructDomainGraph(GdlNode root) {
-		DomainGraph graph = new DomainGraph();
+		return constructDomainGraph(root, new SymbolTable());
+	}
+
+	/**
+	 * Construct the domain graph using the symbol table of a translation
+	 * 
+	 * @param root
+	 * @param symbols
+	 * @return
+	 */
+	public static DomainGraph constructDomainGraph(GdlNode root, SymbolTable symbols) {
+		DomainGraph graph = new DomainGraph(symbols);
+		for (GdlNode clause : root.getChildren()) {
+			addClauseToDomainGraph(clause, graph);
+		}
+		completeDomainGraph(graph);
+		
+		/*
+		long totalRules = 0;
+		for (GdlNode clause : root.getChildren()) {
+			int resultingRules = 1;
+			for (GdlNode variable : variablesInTree(clause)) {
+				resultingRules *= getVariableDomain(variable.getAtom(), clause, graph).size();
+			}
+			totalRules += resultingRules;
+		}
+		System.out.println("Ground from " + root.getChildren().size() + " -> " + totalRules);
+		*/
+		return graph;
+	}
+
+	/**
+	 * Construct the domain graph of a game description one clause at a time
+	 * using the streaming parser
+	 * 
+	 * @param filePath
+	 * @param symbols
+	 * @return
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static DomainGraph streamDomainGraph(String filePath, SymbolTable symbols)
+			throws IOException, GDLSyntaxException {
+		final DomainGraph graph = new DomainGraph(symbols);
+		streamFile(filePath, new GdlClauseListener() {
+			@Override
+			public void clause(GdlNode clause, int scopeNumber) {
+				addClauseToDomainGraph(clause, graph);
+			}
+		}, symbols);
+		completeDomainGraph(graph);
+		return graph;
+	}
+
+	/**
+	 * Add the edges contributed by a single clause to the domain graph.
+	 * Variables are scoped to their clause so the variable map is local.
+	 * 
+	 * @param clause
+	 * @param graph
+	 */
+	public static void addClauseToDomainGraph(GdlNode clause, DomainGraph graph) {
+		if (clause instanceof GdlTree.Cursor) {
+			GdlTree.Cursor cursor = (GdlTree.Cursor) clause;
+			addClauseToDomainGraph(cursor.getTree(), cursor.getIndex(), graph);
+			return;
+		}
 		HashMap<String, DomainGraph.Term> variableMap = new HashMap<String, DomainGraph.Term>();
+		SymbolTable symbols = graph.getSymbolTable();
+		GdlNode head = clause.getType() == GdlType.CLAUSE ? clause.getChildren().get(0) : clause;
 		
-		for (GdlNode node : root) {
+		for (GdlNode node : clause) {
 			if ((node.getType() == GdlType.FUNCTION || node.getType() == GdlType.FORMULA)
 					&& !node.getAtom().equals(GdlNode.NOT)) {
-				if (node.getType() == GdlType.FUNCTION) {
-					graph.addFunction(node.getAtom(), node.getChildren().size());
-				} else if (node.getType() == GdlType.FORMULA) {
-					graph.addFormula(node.getAtom(), node.getChildren().size());
-				} else {
-					continue;
-				}
+				int symbol = graphSymbol(symbols, node.getAtom(), node.getSymbolId());
+				graph.addFunction(symbol, node.getChildren().size(), node.getType());
 
 				for (int i = 0; i < node.getChildren().size(); i++) {
 					GdlNode childNode = node.getChildren().get(i);
@@ -387,34 +1599,106 @@ public class GdlParser {
 						if (variableMap.containsKey(childNode.getAtom())) {
 							DomainGraph.Term varLink = variableMap.get(childNode.getAtom());
 							graph.addEdge(varLink.getTerm(), varLink.getArity(), node.getAtom(), i + 1);
+							if (isInSubtree(node, head, clause)) {
+								// Repeated head variable, both positions take
+								// the values of the body
+								graph.addEdge(node.getAtom(), i + 1, varLink.getTerm(), varLink.getArity());
+							}
 						} else {
 							variableMap.put(childNode.getAtom(), new DomainGraph.Term(node.getAtom(), i + 1));
 						}
 					} else {
-						graph.addEdge(node.getAtom(), i + 1, childNode.getAtom(), childNode.getChildren().size(),
-								childNode.getType());
+						graph.addEdge(symbol, i + 1,
+								graphSymbol(symbols, childNode.getAtom(), childNode.getSymbolId()),
+								childNode.getChildren().size(), childNode.getType());
 					}
 				}
 			}
 		}
+	}
 
-		
+	/**
+	 * Check if node is head or below it, where head is a child of clause or
+	 * clause itself
+	 */
+	private static boolean isInSubtree(GdlNode node, GdlNode head, GdlNode clause) {
+		while (node != head && node != clause) {
+			node = node.getParent();
+		}
+		return node == head;
+	}
+
+	/**
+	 * Same as addClauseToDomainGraph(GdlNode, DomainGraph) but walks the
+	 * index range of a compact tree without creating nodes
+	 * 
+	 * @param tree
+	 * @param clause
+	 * @param graph
+	 */
+	private static void addClauseToDomainGraph(GdlTree tree, int clause, DomainGraph graph) {
+		HashMap<String, DomainGraph.Term> variableMap = new HashMap<String, DomainGraph.Term>();
+		SymbolTable symbols = graph.getSymbolTable();
+		int headEnd = tree.getType(clause) == GdlType.CLAUSE ? tree.getSubtreeEnd(tree.getFirstChild(clause))
+				: tree.getSubtreeEnd(clause);
+
+		int end = tree.getSubtreeEnd(clause);
+		for (int node = clause; node < end; node++) {
+			GdlType type = tree.getType(node);
+			if ((type != GdlType.FUNCTION && type != GdlType.FORMULA) || tree.getAtom(node).equals(GdlNode.NOT)) {
+				continue;
+			}
+			String atom = tree.getAtom(node);
+			int symbol = graphSymbol(symbols, atom, tree.getSymbolId(node));
+			graph.addFunction(symbol, tree.getChildCount(node), type);
+
+			int i = 0;
+			for (int child = tree.getFirstChild(node); child != GdlTree.NONE; child = tree.getNextSibling(child)) {
+				String childAtom = tree.getAtom(child);
+				if (tree.getType(child) == GdlType.VARIABLE) {
+					if (variableMap.containsKey(childAtom)) {
+						DomainGraph.Term varLink = variableMap.get(childAtom);
+						graph.addEdge(varLink.getTerm(), varLink.getArity(), atom, i + 1);
+						if (child < headEnd) {
+							graph.addEdge(atom, i + 1, varLink.getTerm(), varLink.getArity());
+						}
+					} else {
+						variableMap.put(childAtom, new DomainGraph.Term(atom, i + 1));
+					}
+				} else {
+					graph.addEdge(symbol, i + 1, graphSymbol(symbols, childAtom, tree.getSymbolId(child)),
+							tree.getChildCount(child), tree.getType(child));
+				}
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Symbol id of an atom in the table of a domain graph. The id a node
+	 * already carries is used if it comes from the same table.
+	 * 
+	 * @param symbols
+	 * @param atom
+	 * @param symbolId
+	 * @return
+	 */
+	private static int graphSymbol(SymbolTable symbols, String atom, int symbolId) {
+		if (symbolId >= 0 && symbolId < symbols.size() && symbols.getSymbol(symbolId) == atom) {
+			return symbolId;
+		}
+		return symbols.getId(atom);
+	}
+
+	/**
+	 * Link base and input to true and does once every clause has been added
+	 * 
+	 * @param graph
+	 */
+	private static void completeDomainGraph(DomainGraph graph) {
 		graph.addEdge(GdlNode.BASE, 1, GdlNode.TRUE, 1);
 		graph.addEdge(GdlNode.INPUT, 1, GdlNode.DOES, 1);
 		graph.addEdge(GdlNode.INPUT, 2, GdlNode.DOES, 2);
-		
-		/*
-		long totalRules = 0;
-		for (GdlNode clause : root.getChildren()) {
-			int resultingRules = 1;
-			for (GdlNode variable : variablesInTree(clause)) {
-				resultingRules *= getVariableDomain(variable.getAtom(), clause, graph).size();
-			}
-			totalRules += resultingRules;
-		}
-		System.out.println("Ground from " + root.getChildren().size() + " -> " + totalRules);
-		*/
-		return graph;
 	}
 
 	/**
@@ -424,16 +1708,17 @@ public class GdlParser {
 	 * @return
 	 */
 	public static boolean isVariableInTree(GdlNode node) {
-		if (node.getType() == GdlType.VARIABLE) {
-			return true;
+		if (node instanceof GdlTree.Cursor) {
+			GdlTree.Cursor cursor = (GdlTree.Cursor) node;
+			return cursor.getTree().hasVariable(cursor.getIndex());
 		}
-
-		for (GdlNode child : node.getChildren()) {
-			if (isVariableInTree(child)) {
-				return true;
+		// Walk stops at the first variable
+		return !GdlNodeIterator.walk(node, new GdlVisitor() {
+			@Override
+			public boolean visit(GdlNode child) {
+				return child.getType() != GdlType.VARIABLE;
 			}
-		}
-		return false;
+		});
 	}
 	
 	/**
@@ -444,14 +1729,11 @@ public class GdlParser {
 	 * @return
 	 */
 	public static int numVariablesInTree(GdlNode node){
-		if (node.getType() == GdlType.VARIABLE) {
-			return 1;
-		} else if (node.getType() == GdlType.CONSTANT){
-			return 0;
-		}
 		int varsInSubTree = 0;
-		for (GdlNode child : node.getChildren()) {
-			varsInSubTree += numVariablesInTree(child);
+		for (GdlNode child : node) {
+			if (child.getType() == GdlType.VARIABLE) {
+				varsInSubTree++;
+			}
 		}
 		return varsInSubTree;
 	}
@@ -464,14 +1746,26 @@ public class GdlParser {
 	 * @return
 	 */
 	public static Set<GdlNode> variablesInTree(GdlNode node){
-		if (node.getType() == GdlType.VARIABLE) {
-			return new HashSet<GdlNode>(Collections.singleton(node));
-		} else if (node.getType() == GdlType.CONSTANT){
+		if (node instanceof GdlTree.Cursor) {
+			// Only variables need a node, everything else is skipped by index
+			GdlTree tree = ((GdlTree.Cursor) node).getTree();
+			Set<GdlNode> varsInSubTree = new HashSet<GdlNode>();
+			int end = tree.getSubtreeEnd(((GdlTree.Cursor) node).getIndex());
+			for (int i = ((GdlTree.Cursor) node).getIndex(); i < end; i++) {
+				if (tree.getType(i) == GdlType.VARIABLE) {
+					varsInSubTree.add(tree.getNode(i));
+				}
+			}
+			return varsInSubTree;
+		}
+		if (node.getType() == GdlType.CONSTANT){
 			return Collections.emptySet();
 		}
 		Set<GdlNode> varsInSubTree = new HashSet<GdlNode>();
-		for (GdlNode child : node.getChildren()) {
-			varsInSubTree.addAll(variablesInTree(child));
+		for (GdlNode child : node) {
+			if (child.getType() == GdlType.VARIABLE) {
+				varsInSubTree.add(child);
+			}
 		}
 		return varsInSubTree;
 	}
@@ -487,34 +1781,179 @@ public class GdlParser {
 	 * @throws GDLSyntaxException
 	 */
 	public static GdlRuleSet groundGdlToRuleSet(GdlNode root, DomainGraph domainGraph) throws GDLSyntaxException {
-		Gdl groundedRoot = GdlNodeFactory.createGdl();
-		GdlRuleSet groundedRuleSet = new GdlRuleSet(GdlNodeFactory.createGdl(), false);
+		return groundGdlToRuleSet(root, domainGraph, null);
+	}
 
-		Map<String, Set<String>> variableDomainMap = new HashMap<String, Set<String>>();
-		for (GdlNode clause : root.getChildren()) {
-			if (!isVariableInTree(clause)) { // Variable-free so already ground
-				groundedRoot.getChildren().add(clause);
-				groundedRuleSet.joinRuleSet(groundedRoot);
-				groundedRoot = GdlNodeFactory.createGdl();
-			} else {
-				variableDomainMap = new HashMap<String, Set<String>>();
-				for (GdlNode variable : variablesInTree(clause)) {
-					variableDomainMap.put(variable.getAtom(),
-							getVariableDomain(variable.getAtom(), clause, domainGraph));
-				}
-				String groundedClauseString = groundClause(clause, variableDomainMap, false);
+	/**
+	 * Same as groundGdlToRuleSet(GdlNode, DomainGraph) but only keeps the
+	 * instances whose positive body atoms are all reachable. Negative
+	 * literals of unreachable atoms always hold and are left out. Static
+	 * relations are evaluated first and joined as facts, see StaticFacts.
+	 * 
+	 * @param root the root of a GdlNode tree
+	 * @param domainGraph the DomainGraph of a GdlNode tree
+	 * @param reachable atoms from JoinGrounder.reachableAtoms, or null to keep every instance
+	 * @return groundedRuleSet the GdlRuleSet with grounded rules
+	 * @throws GDLSyntaxException
+	 */
+	public static GdlRuleSet groundGdlToRuleSet(GdlNode root, DomainGraph domainGraph, Set<String> reachable)
+			throws GDLSyntaxException {
+		GdlRuleSet groundedRuleSet = newGroundedRuleSet(domainGraph.getSymbolTable());
+		StaticFacts staticFacts = StaticFacts.evaluate(root, domainGraph);
+		staticFacts.joinFacts(groundedRuleSet);
 
-				// Default root node if parseString throws error
-				GdlNode clauseTree = GdlNodeFactory.createGdl();
-				clauseTree = GdlParser.parseString(groundedClauseString);
-				if (!clauseTree.getChildren().isEmpty()) {
-					groundedRuleSet.joinRuleSet((Gdl) clauseTree);
-				}
+		for (GdlNode clause : root.getChildren()) {
+			if (staticFacts.defines(clause)) {
+				continue;
 			}
+			groundClauseToRuleSet(clause, domainGraph, groundedRuleSet, reachable, staticFacts);
 		}
 		
+		return mergeGroundedRuleSet(groundedRuleSet);
+	}
+
+	/**
+	 * @param symbols
+	 * @return rule set to join ground clauses into, on disk if
+	 *         GROUND_WITH_TEMP_FILES is set
+	 */
+	private static GdlRuleSet newGroundedRuleSet(SymbolTable symbols) {
+		if (GROUND_WITH_TEMP_FILES) {
+			return new SpillingRuleSet(symbols, GROUND_MEMORY_BUDGET);
+		}
+		return new GdlRuleSet(symbols);
+	}
+
+	/**
+	 * Read back the clauses of a rule set from newGroundedRuleSet(SymbolTable)
+	 * once grounding is done
+	 * 
+	 * @param groundedRuleSet
+	 * @return groundedRuleSet
+	 */
+	private static GdlRuleSet mergeGroundedRuleSet(GdlRuleSet groundedRuleSet) {
+		if (groundedRuleSet instanceof SpillingRuleSet) {
+			((SpillingRuleSet) groundedRuleSet).merge();
+		}
 		return groundedRuleSet;
 	}
+
+	/**
+	 * Ground a game description while it is being read. The domain graph must
+	 * already be complete, e.g. from streamDomainGraph(filePath, symbols).
+	 * 
+	 * @param filePath
+	 * @param domainGraph
+	 * @return groundedRuleSet the GdlRuleSet with grounded rules
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static GdlRuleSet streamGroundToRuleSet(String filePath, final DomainGraph domainGraph)
+			throws IOException, GDLSyntaxException {
+		final GdlRuleSet groundedRuleSet = newGroundedRuleSet(domainGraph.getSymbolTable());
+		streamFile(filePath, new GdlClauseListener() {
+			@Override
+			public void clause(GdlNode clause, int scopeNumber) throws GDLSyntaxException {
+				groundClauseToRuleSet(clause, domainGraph, groundedRuleSet);
+			}
+		}, domainGraph.getSymbolTable());
+		return mergeGroundedRuleSet(groundedRuleSet);
+	}
+
+	/**
+	 * Load a game description into a GdlRuleSet without building the whole
+	 * parse tree. Intended for descriptions which are already ground.
+	 * 
+	 * @param filePath
+	 * @param symbols
+	 * @return ruleSet
+	 * @throws IOException
+	 * @throws GDLSyntaxException
+	 */
+	public static GdlRuleSet streamRuleSet(String filePath, SymbolTable symbols)
+			throws IOException, GDLSyntaxException {
+		final GdlRuleSet ruleSet = new GdlRuleSet(symbols);
+		streamFile(filePath, new GdlClauseListener() {
+			@Override
+			public void clause(GdlNode clause, int scopeNumber) throws GDLSyntaxException {
+				ruleSet.joinClause(clause);
+			}
+		}, symbols);
+		return ruleSet;
+	}
+
+	/**
+	 * Ground a single clause and join the result into a GdlRuleSet
+	 * 
+	 * @param clause
+	 * @param domainGraph
+	 * @param groundedRuleSet
+	 * @throws GDLSyntaxException
+	 */
+	public static void groundClauseToRuleSet(GdlNode clause, DomainGraph domainGraph, GdlRuleSet groundedRuleSet)
+			throws GDLSyntaxException {
+		groundClauseToRuleSet(clause, domainGraph, groundedRuleSet, null);
+	}
+
+	/**
+	 * Ground a single clause and join the instances whose positive body
+	 * atoms are reachable into a GdlRuleSet
+	 * 
+	 * @param clause
+	 * @param domainGraph
+	 * @param groundedRuleSet
+	 * @param reachable atoms that can hold, or null to keep every instance
+	 * @throws GDLSyntaxException
+	 */
+	public static void groundClauseToRuleSet(GdlNode clause, DomainGraph domainGraph, GdlRuleSet groundedRuleSet,
+			Set<String> reachable) throws GDLSyntaxException {
+		groundClauseToRuleSet(clause, domainGraph, groundedRuleSet, reachable, null);
+	}
+
+	/**
+	 * Same as groundClauseToRuleSet(GdlNode, DomainGraph, GdlRuleSet, Set)
+	 * and leaves out the instances with a false literal of a static relation
+	 * 
+	 * @param clause
+	 * @param domainGraph
+	 * @param groundedRuleSet
+	 * @param reachable atoms that can hold, or null to keep every instance
+	 * @param staticFacts static relations of the game description, or null
+	 * @throws GDLSyntaxException
+	 */
+	static void groundClauseToRuleSet(GdlNode clause, DomainGraph domainGraph, GdlRuleSet groundedRuleSet,
+			Set<String> reachable, StaticFacts staticFacts) throws GDLSyntaxException {
+		ClauseGrounder grounder = clauseGrounder(clause, domainGraph, reachable, staticFacts);
+		if (grounder == null) {
+			groundedRuleSet.joinClause(clause);
+		} else {
+			grounder.join(groundedRuleSet, reachable);
+		}
+	}
+
+	/**
+	 * @param clause
+	 * @param domainGraph
+	 * @param reachable
+	 * @param staticFacts
+	 * @return grounder of the clause, or null if the clause is ground and is
+	 *         joined as it is
+	 * @throws GDLSyntaxException
+	 */
+	static ClauseGrounder clauseGrounder(GdlNode clause, DomainGraph domainGraph, Set<String> reachable,
+			StaticFacts staticFacts) throws GDLSyntaxException {
+		if (!isVariableInTree(clause)) { // Variable-free so already ground
+			if ((reachable == null && staticFacts == null) || clause.getType() != GdlType.CLAUSE) {
+				return null;
+			}
+			return new ClauseGrounder(clause, Collections.<String, Set<String>> emptyMap(), staticFacts);
+		}
+		Map<String, Set<String>> variableDomainMap = new HashMap<String, Set<String>>();
+		for (GdlNode variable : variablesInTree(clause)) {
+			variableDomainMap.put(variable.getAtom(), getVariableDomain(variable.getAtom(), clause, domainGraph));
+		}
+		return new ClauseGrounder(clause, variableDomainMap, staticFacts);
+	}
 	
 	/**
 	 * Ground a game description
@@ -540,7 +1979,7 @@ public class GdlParser {
 
 				// Default root node if parseString throws error
 				GdlNode clauseTree = GdlNodeFactory.createGdl();
-				clauseTree = GdlParser.parseString(groundedClauseString);
+				clauseTree = GdlParser.parseString(groundedClauseString, domainGraph.getSymbolTable());
 				if (!clauseTree.getChildren().isEmpty()) {
 					groundedRoot.getChildren().addAll(clauseTree.getChildren());
 				}
@@ -552,34 +1991,145 @@ public class GdlParser {
 	/**
 	 * Get the set of terms in the domain of the provided variable name within the scope of the provided clause.
 	 * 
+	 * The domain of the first occurrence, or the union over all occurrences if
+	 * the clause has a distinct, is intersected with the domain of every
+	 * position the variable takes in a positive body literal, since a ground
+	 * instance outside one of those can never hold. Arguments of true and does
+	 * are left out, their domains only cover the constants written in them.
+	 * 
 	 * @param variable the variable we want the domain of
 	 * @param clause the clause that provides the scope of the variable
 	 * @param graph the domain graph
 	 * @return variableDomainSet
 	 */
 	public static Set<String> getVariableDomain(String variable, GdlNode clause, DomainGraph graph) {
-		Set<String> variableDomainSet = new HashSet<String>();
+		if (clause instanceof GdlTree.Cursor) {
+			GdlTree.Cursor cursor = (GdlTree.Cursor) clause;
+			return getVariableDomain(variable, cursor.getTree(), cursor.getIndex(), graph);
+		}
+		boolean hasDistinct = clause.toString().contains(GdlNode.DISTINCT);
+		BitSet domain = null;
+		BitSet positiveDomain = null;
 		for (GdlNode node : clause) {
 			if (node.getType() == GdlType.VARIABLE && node.getAtom().equals(variable)) {
-				//boolean hasMultiVarInstance = !variableDomainSet.isEmpty();
-				
-				for (DomainGraph.Term term : graph.getDomain(node.getParent().getAtom(),
-						node.getParent().getChildren().indexOf(node) + 1)) {
-					//if (hasMultiVarInstance && !term.getTerm().equals(GdlNode.DISTINCT)
-					//		&& !variableDomainSet.contains(term.getTerm())) {
-						//System.out.println("InconsistentDomainException: Const: " + term.getTerm()
-						//		+ " not in domain of var: " + node.getAtom());
-					//}
-					variableDomainSet.add(term.getTerm());
-				}
-				if (!clause.toString().contains(GdlNode.DISTINCT)) {
-					break;
+				GdlNode parent = node.getParent();
+				BitSet positionDomain = graph.getDomainBits(parent.getAtom(), parent.getChildren().indexOf(node) + 1);
+				if (domain == null) {
+					domain = (BitSet) positionDomain.clone();
+				} else if (hasDistinct) {
+					domain.or(positionDomain);
+				}
+				if (isPositiveBodyPosition(node, clause)) {
+					if (positiveDomain == null) {
+						positiveDomain = positionDomain;
+					} else {
+						positiveDomain.and(positionDomain);
+					}
 				}
 			}
 		}
+		return domainTerms(domain, positiveDomain, graph);
+	}
+
+	/**
+	 * Check if a variable is an argument of a positive body literal of a rule,
+	 * other than a direct argument of true or does
+	 * 
+	 * @param variable
+	 * @param clause
+	 * @return
+	 */
+	private static boolean isPositiveBodyPosition(GdlNode variable, GdlNode clause) {
+		if (clause.getType() != GdlType.CLAUSE) {
+			return false;
+		}
+		GdlNode literal = variable.getParent();
+		while (literal.getParent() != clause) {
+			literal = literal.getParent();
+		}
+		if (literal == clause.getChildren().get(0)) {
+			return false;
+		}
+		return isPositiveBodyLiteral(literal.getAtom(), variable.getParent() == literal);
+	}
+
+	private static boolean isPositiveBodyLiteral(String atom, boolean directArgument) {
+		if (atom.equals(GdlNode.NOT) || atom.equals(GdlNode.DISTINCT)) {
+			return false;
+		}
+		return !directArgument || !(atom.equals(GdlNode.TRUE) || atom.equals(GdlNode.DOES));
+	}
+
+	/**
+	 * Names of the terms in domain, restricted to positiveDomain unless it is
+	 * null
+	 */
+	private static Set<String> domainTerms(BitSet domain, BitSet positiveDomain, DomainGraph graph) {
+		Set<String> variableDomainSet = new HashSet<String>();
+		if (domain == null) {
+			return variableDomainSet;
+		}
+		if (positiveDomain != null) {
+			domain.and(positiveDomain);
+		}
+		for (int node = domain.nextSetBit(0); node >= 0; node = domain.nextSetBit(node + 1)) {
+			variableDomainSet.add(graph.getDomainTerm(node).getTerm());
+		}
 		return variableDomainSet;
 	}
 
+	/**
+	 * Same as getVariableDomain(String, GdlNode, DomainGraph) over the index
+	 * range of a clause in a compact tree
+	 * 
+	 * @param variable
+	 * @param tree
+	 * @param clause
+	 * @param graph
+	 * @return variableDomainSet
+	 */
+	private static Set<String> getVariableDomain(String variable, GdlTree tree, int clause, DomainGraph graph) {
+		boolean hasDistinct = tree.getNode(clause).toString().contains(GdlNode.DISTINCT);
+		boolean isRule = tree.getType(clause) == GdlType.CLAUSE;
+		int head = tree.getFirstChild(clause);
+		BitSet domain = null;
+		BitSet positiveDomain = null;
+		int end = tree.getSubtreeEnd(clause);
+		for (int node = clause; node < end; node++) {
+			if (tree.getType(node) == GdlType.VARIABLE && tree.getAtom(node).equals(variable)) {
+				// Position of the first equal sibling, as indexOf does on the
+				// children of the object tree
+				int parent = tree.getParent(node);
+				int position = 1;
+				int sibling = tree.getFirstChild(parent);
+				while (tree.getFirstChild(sibling) != GdlTree.NONE || !tree.getAtom(sibling).equals(variable)) {
+					sibling = tree.getNextSibling(sibling);
+					position++;
+				}
+				BitSet positionDomain = graph.getDomainBits(tree.getAtom(parent), position);
+				if (domain == null) {
+					domain = (BitSet) positionDomain.clone();
+				} else if (hasDistinct) {
+					domain.or(positionDomain);
+				}
+				if (isRule) {
+					int literal = parent;
+					while (tree.getParent(literal) != clause) {
+						literal = tree.getParent(literal);
+					}
+					if (literal != head && isPositiveBodyLiteral(tree.getAtom(literal), parent == literal)) {
+						if (positiveDomain == null) {
+							positiveDomain = positionDomain;
+						} else {
+							positiveDomain.and(positionDomain);
+						}
+					}
+				}
+			}
+		}
+		return domainTerms(domain, positiveDomain, graph);
+	}
+
 	/**
 	 * Ground a clause in a game description
 	 * 
@@ -0,0 +1,269 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Zero-copy token stream over the bytes of a game description. The file is
+ * memory mapped and scanned with a character class table, tokens are stored
+ * as (offset, length, kind) records in a primitive int array and atoms are
+ * only materialized as Strings the first time they are seen.
+ *
+ * @author vedantds
+ *
+ */
+public class GdlTokenBuffer {
+
+	public final static int OPEN = 0;
+	public final static int CLOSE = 1;
+	public final static int ATOM = 2;
+
+	// Character classes used by the scanner
+	private final static byte ATOM_CHAR = 0;
+	private final static byte WHITESPACE = 1;
+	private final static byte NEW_LINE = 2;
+	private final static byte OPEN_P = 3;
+	private final static byte CLOSE_P = 4;
+	private final static byte COMMENT = 5;
+
+	private final static byte[] CHAR_CLASS = new byte[256];
+	static {
+		CHAR_CLASS[GdlParser.SPACE] = WHITESPACE;
+		CHAR_CLASS[GdlParser.TAB] = WHITESPACE;
+		CHAR_CLASS[GdlParser.NEW_LINE] = NEW_LINE;
+		CHAR_CLASS[GdlParser.RETURN] = NEW_LINE;
+		CHAR_CLASS[GdlParser.OPEN_P_Char] = OPEN_P;
+		CHAR_CLASS[GdlParser.CLOSE_P_Char] = CLOSE_P;
+		CHAR_CLASS[GdlParser.SEMICOLON] = COMMENT;
+	}
+
+	private final static int RECORD_SIZE = 3;
+
+	private final ByteBuffer source;
+	private int[] records;
+	private int size;
+
+	// Open addressing table of materialized atoms keyed by their bytes
+	private int[] atomOffsets;
+	private int[] atomLengths;
+	private String[] atomStrings;
+	private int numAtoms;
+
+	private GdlTokenBuffer(ByteBuffer source) {
+		this.source = source;
+		this.records = new int[RECORD_SIZE * Math.max(16, source.limit() / 8)];
+		this.size = 0;
+		this.atomOffsets = new int[1024];
+		this.atomLengths = new int[1024];
+		this.atomStrings = new String[1024];
+		this.numAtoms = 0;
+		scan();
+	}
+
+	/**
+	 * Memory map a file and tokenize its contents
+	 *
+	 * @param filePath
+	 * @return tokens
+	 * @throws IOException
+	 */
+	public static GdlTokenBuffer map(String filePath) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(new File(filePath), "r");
+				FileChannel channel = file.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(filePath + " is too large to be memory mapped");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new GdlTokenBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Tokenize an in-memory ASCII game description
+	 *
+	 * @param bytes
+	 * @return tokens
+	 */
+	public static GdlTokenBuffer wrap(byte[] bytes) {
+		return new GdlTokenBuffer(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Single pass over the source bytes. Follows the same rules as
+	 * GdlParser.gdlTokenizer except that new lines also delimit atoms.
+	 */
+	private void scan() {
+		int limit = source.limit();
+		int start = -1;
+		boolean comment = false;
+		for (int i = 0; i < limit; i++) {
+			byte charClass = CHAR_CLASS[source.get(i) & 0xFF];
+			if (comment) {
+				if (charClass == NEW_LINE) {
+					comment = false;
+				}
+				continue;
+			}
+			if (charClass == ATOM_CHAR) {
+				if (start < 0) {
+					start = i;
+				}
+				continue;
+			}
+			if (start >= 0) {
+				add(start, i - start, ATOM);
+				start = -1;
+			}
+			switch (charClass) {
+			case OPEN_P:
+				add(i, 1, OPEN);
+				break;
+			case CLOSE_P:
+				add(i, 1, CLOSE);
+				break;
+			case COMMENT:
+				comment = true;
+				break;
+			default:
+				break;
+			}
+		}
+		if (start >= 0) {
+			add(start, limit - start, ATOM);
+		}
+	}
+
+	private void add(int offset, int length, int kind) {
+		if (RECORD_SIZE * (size + 1) > records.length) {
+			records = Arrays.copyOf(records, records.length * 2);
+		}
+		records[RECORD_SIZE * size] = offset;
+		records[RECORD_SIZE * size + 1] = length;
+		records[RECORD_SIZE * size + 2] = kind;
+		size++;
+	}
+
+	/**
+	 * @return number of tokens
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index
+	 * @return one of OPEN, CLOSE or ATOM
+	 */
+	public int getKind(int index) {
+		return records[RECORD_SIZE * index + 2];
+	}
+
+	/**
+	 * @param index
+	 * @return offset of the token in the source
+	 */
+	public int getOffset(int index) {
+		return records[RECORD_SIZE * index];
+	}
+
+	/**
+	 * @param index
+	 * @return length of the token in bytes
+	 */
+	public int getLength(int index) {
+		return records[RECORD_SIZE * index + 1];
+	}
+
+	/**
+	 * True if the token is an atom starting with '?'
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean isVariable(int index) {
+		return getKind(index) == ATOM && source.get(getOffset(index)) == GdlParser.Q_MARK_Char;
+	}
+
+	/**
+	 * Get the String value of a token. Atoms are materialized once and the same
+	 * instance is returned for every later occurrence.
+	 *
+	 * @param index
+	 * @return token
+	 */
+	public String getToken(int index) {
+		switch (getKind(index)) {
+		case OPEN:
+			return GdlParser.OPEN_P_Str;
+		case CLOSE:
+			return GdlParser.CLOSE_P_Str;
+		default:
+			return atom(getOffset(index), getLength(index));
+		}
+	}
+
+	private String atom(int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + (source.get(i) & 0xFF);
+		}
+		int mask = atomStrings.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (atomStrings[slot] != null) {
+			if (atomLengths[slot] == length && bytesEqual(atomOffsets[slot], offset, length)) {
+				return atomStrings[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) (source.get(offset + i) & 0xFF);
+		}
+		String atom = new String(chars);
+		atomOffsets[slot] = offset;
+		atomLengths[slot] = length;
+		atomStrings[slot] = atom;
+		numAtoms++;
+		if (2 * numAtoms > atomStrings.length) {
+			rehash();
+		}
+		return atom;
+	}
+
+	private boolean bytesEqual(int first, int second, int length) {
+		for (int i = 0; i < length; i++) {
+			if (source.get(first + i) != source.get(second + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		int[] oldOffsets = atomOffsets;
+		int[] oldLengths = atomLengths;
+		String[] oldStrings = atomStrings;
+		atomOffsets = new int[oldStrings.length * 2];
+		atomLengths = new int[oldStrings.length * 2];
+		atomStrings = new String[oldStrings.length * 2];
+		int mask = atomStrings.length - 1;
+		for (int i = 0; i < oldStrings.length; i++) {
+			if (oldStrings[i] != null) {
+				int hash = oldStrings[i].hashCode();
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (atomStrings[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				atomOffsets[slot] = oldOffsets[i];
+				atomLengths[slot] = oldLengths[i];
+				atomStrings[slot] = oldStrings[i];
+			}
+		}
+	}
+}
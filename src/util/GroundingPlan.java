@@ -0,0 +1,174 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import util.grammar.GdlNode;
+import util.graph.DomainGraph;
+
+/**
+ * Estimate of the size of a grounded game description, made from the domain
+ * graph before anything is grounded. Every clause with variables expands to
+ * the product of the domain sizes of its variables, each instance being about
+ * as long as the clause text.
+ *
+ * @author vedantds
+ *
+ */
+public class GroundingPlan {
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private long totalInstances = 0;
+	private long totalBytes = 0;
+
+	/**
+	 * @param root
+	 * @param graph
+	 * @return the plan for grounding every clause under root
+	 */
+	public static GroundingPlan estimate(GdlNode root, DomainGraph graph) {
+		GroundingPlan plan = new GroundingPlan();
+		for (GdlNode clause : root.getChildren()) {
+			if (!GdlParser.isVariableInTree(clause)) {
+				plan.totalInstances = saturatedAdd(plan.totalInstances, 1);
+				continue;
+			}
+			Entry entry = new Entry(clause.toString());
+			for (GdlNode variable : GdlParser.variablesInTree(clause)) {
+				int domainSize = GdlParser.getVariableDomain(variable.getAtom(), clause, graph).size();
+				entry.variables.add(variable.getAtom());
+				entry.domainSizes.add(domainSize);
+				entry.instances = saturatedMultiply(entry.instances, domainSize);
+			}
+			entry.bytes = saturatedMultiply(entry.instances, entry.clause.length() + 1);
+			plan.entries.add(entry);
+			plan.totalInstances = saturatedAdd(plan.totalInstances, entry.instances);
+			plan.totalBytes = saturatedAdd(plan.totalBytes, entry.bytes);
+		}
+		return plan;
+	}
+
+	private static long saturatedAdd(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+
+	private static long saturatedMultiply(long a, long b) {
+		if (a != 0 && b > Long.MAX_VALUE / a) {
+			return Long.MAX_VALUE;
+		}
+		return a * b;
+	}
+
+	/**
+	 * @return ground instances of every clause, ground clauses count as one
+	 */
+	public long getTotalInstances() {
+		return totalInstances;
+	}
+
+	/**
+	 * @return estimated size of the ground text of the clauses with variables
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return clauses with variables in the order of the game description
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @param limit
+	 * @return at most limit clauses with the most ground instances, largest
+	 *         first
+	 */
+	public List<Entry> getLargest(int limit) {
+		List<Entry> largest = new ArrayList<Entry>(entries);
+		Collections.sort(largest, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return Long.compare(o2.instances, o1.instances);
+			}
+		});
+		return largest.subList(0, Math.min(limit, largest.size()));
+	}
+
+	/**
+	 * Table of the clauses with variables, one per line. Clauses with more
+	 * instances than maxInstances are marked with a *, nothing is marked if
+	 * maxInstances is negative.
+	 *
+	 * @param maxInstances
+	 * @return
+	 */
+	public String toString(long maxInstances) {
+		return format(entries, maxInstances);
+	}
+
+	/**
+	 * @param rows
+	 * @param maxInstances
+	 * @return rows formatted as in toString(long) followed by the totals
+	 */
+	public String format(List<Entry> rows, long maxInstances) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("  %20s %20s  %s%n", "instances", "bytes", "variables:domain clause"));
+		for (Entry entry : rows) {
+			sb.append(maxInstances >= 0 && entry.instances > maxInstances ? "* " : "  ");
+			sb.append(String.format("%20d %20d  ", entry.instances, entry.bytes));
+			for (int i = 0; i < entry.variables.size(); i++) {
+				sb.append(entry.variables.get(i) + ":" + entry.domainSizes.get(i) + " ");
+			}
+			sb.append(entry.clause + System.lineSeparator());
+		}
+		sb.append("Total: " + totalInstances + " instances, " + totalBytes + " bytes from " + entries.size()
+				+ " clauses with variables" + System.lineSeparator());
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toString(-1);
+	}
+
+	/**
+	 * Estimate for one clause with variables
+	 */
+	public static class Entry {
+		private final String clause;
+		private final List<String> variables = new ArrayList<String>();
+		private final List<Integer> domainSizes = new ArrayList<Integer>();
+		private long instances = 1;
+		private long bytes = 0;
+
+		private Entry(String clause) {
+			this.clause = clause;
+		}
+
+		public String getClause() {
+			return clause;
+		}
+
+		public List<String> getVariables() {
+			return variables;
+		}
+
+		public List<Integer> getDomainSizes() {
+			return domainSizes;
+		}
+
+		public long getInstances() {
+			return instances;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import prover.GdlRuleSet;
+import util.grammar.GDLSyntaxException;
+import util.grammar.GdlNode;
+import util.grammar.GdlType;
+import util.graph.DomainGraph;
+
+/**
+ * Grounds a game description by evaluating rule bodies as joins over the
+ * ground atoms that can be derived, instead of expanding every variable over
+ * its domain.
+ *
+ * Atoms are derived semi-naively to a fixpoint: each round only evaluates
+ * the combinations of body atoms that include an atom derived in the last
+ * round. init and next derive true and legal derives does. Negative literals
+ * never generate or filter instances, distinct only filters them, so the
+ * derived atoms are a superset of every atom that can hold and no instance
+ * that can fire is lost. Every instance found is joined into the GdlRuleSet
+ * once, without its distinct literals, which it satisfies.
+ *
+ * Variables that no positive literal binds, which safe rules don't have,
+ * take the domain given by the domain graph.
+ *
+ * @author vedantds
+ *
+ */
+public class JoinGrounder {
+
+	private final DomainGraph domainGraph;
+	// null if only the derivable atoms are wanted
+	private final GdlRuleSet ruleSet;
+	private final Map<String, Relation> relations = new HashMap<String, Relation>();
+	private final List<Relation> relationList = new ArrayList<Relation>();
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	private JoinGrounder(DomainGraph domainGraph, boolean joinInstances) {
+		this.domainGraph = domainGraph;
+		this.ruleSet = joinInstances ? new GdlRuleSet(domainGraph.getSymbolTable()) : null;
+	}
+
+	/**
+	 * @param root
+	 *            root of the parse tree
+	 * @param domainGraph
+	 *            domain graph of the parse tree
+	 * @return groundedRuleSet the GdlRuleSet with grounded rules
+	 * @throws GDLSyntaxException
+	 */
+	public static GdlRuleSet ground(GdlNode root, DomainGraph domainGraph) throws GDLSyntaxException {
+		JoinGrounder grounder = new JoinGrounder(domainGraph, true);
+		for (GdlNode clause : root.getChildren()) {
+			grounder.addClause(clause);
+		}
+		grounder.evaluate();
+		return grounder.ruleSet;
+	}
+
+	/**
+	 * Relaxed reachability: the atoms derived by ignoring negation, starting
+	 * from init and the facts and saturating over next, legal and does. An
+	 * atom outside this set never holds in any play.
+	 * 
+	 * @param root
+	 *            root of the parse tree
+	 * @param domainGraph
+	 *            domain graph of the parse tree
+	 * @return text of every derivable atom, including true and does atoms
+	 * @throws GDLSyntaxException
+	 */
+	public static Set<String> reachableAtoms(GdlNode root, DomainGraph domainGraph) throws GDLSyntaxException {
+		JoinGrounder grounder = new JoinGrounder(domainGraph, false);
+		for (GdlNode clause : root.getChildren()) {
+			grounder.addClause(clause);
+		}
+		grounder.evaluate();
+		Set<String> atoms = new HashSet<String>();
+		for (Relation relation : grounder.relationList) {
+			atoms.addAll(relation.texts);
+		}
+		return atoms;
+	}
+
+	private void addClause(GdlNode clause) throws GDLSyntaxException {
+		if (!GdlParser.isVariableInTree(clause)) {
+			if (clause.getType() == GdlType.CLAUSE) {
+				rules.add(new Rule(clause));
+			} else {
+				if (ruleSet != null) {
+					ruleSet.joinClause(clause);
+				}
+				derive(GroundTerm.of(clause));
+			}
+		} else {
+			rules.add(new Rule(clause));
+		}
+	}
+
+	/**
+	 * Rules without positive literals fire once, every other rule fires
+	 * again for each round that derived one of its body atoms
+	 */
+	private void evaluate() {
+		for (Rule rule : rules) {
+			if (rule.positive.length == 0) {
+				rule.fire(-1);
+			}
+		}
+		while (nextRound()) {
+			for (Rule rule : rules) {
+				for (int i = 0; i < rule.positive.length; i++) {
+					Relation relation = relations.get(rule.positive[i].key);
+					if (relation != null && relation.deltaEnd > relation.oldEnd) {
+						rule.fire(i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Atoms derived since the last round become the delta of this one
+	 *
+	 * @return false if nothing was derived
+	 */
+	private boolean nextRound() {
+		boolean changed = false;
+		for (Relation relation : relationList) {
+			relation.oldEnd = relation.deltaEnd;
+			relation.deltaEnd = relation.tuples.size();
+			changed |= relation.deltaEnd > relation.oldEnd;
+		}
+		return changed;
+	}
+
+	private Relation relation(String key, int arity) {
+		Relation relation = relations.get(key);
+		if (relation == null) {
+			relation = new Relation(arity);
+			relations.put(key, relation);
+			relationList.add(relation);
+		}
+		return relation;
+	}
+
+	private void derive(GroundTerm atom) {
+		relation(atom.key(), atom.args.length).add(atom);
+		if ((atom.atom.equals(GdlNode.INIT) || atom.atom.equals(GdlNode.NEXT)) && atom.args.length == 1) {
+			derive(new GroundTerm(GdlNode.TRUE, atom.args));
+		} else if (atom.atom.equals(GdlNode.LEGAL) && atom.args.length == 2) {
+			derive(new GroundTerm(GdlNode.DOES, atom.args));
+		}
+	}
+
+	/**
+	 * Ground atoms with one relation name and arity, in the order they were
+	 * derived. Atoms before oldEnd were seen by an earlier round, atoms from
+	 * oldEnd to deltaEnd are new to this round.
+	 */
+	private static final class Relation {
+		final List<GroundTerm> tuples = new ArrayList<GroundTerm>();
+		final Set<String> texts = new HashSet<String>();
+		// Positions of the atoms by the text of one argument, built on demand
+		final List<Map<String, int[]>> index;
+		int oldEnd = 0;
+		int deltaEnd = 0;
+
+		Relation(int arity) {
+			index = new ArrayList<Map<String, int[]>>(Collections.<Map<String, int[]>> nCopies(arity, null));
+		}
+
+		void add(GroundTerm atom) {
+			if (!texts.add(atom.text)) {
+				return;
+			}
+			int position = tuples.size();
+			tuples.add(atom);
+			for (int i = 0; i < index.size(); i++) {
+				if (index.get(i) != null) {
+					addToIndex(i, atom.args[i].text, position);
+				}
+			}
+		}
+
+		private void addToIndex(int argument, String key, int position) {
+			int[] positions = index.get(argument).get(key);
+			if (positions == null) {
+				positions = new int[4];
+			} else if (positions[0] + 1 == positions.length) {
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			}
+			// First entry is the number of positions
+			positions[++positions[0]] = position;
+			index.get(argument).put(key, positions);
+		}
+
+		/**
+		 * @param argument
+		 * @param key
+		 * @return positions of the atoms with key as argument, in the first
+		 *         entry is their number
+		 */
+		int[] lookup(int argument, String key) {
+			if (index.get(argument) == null) {
+				index.set(argument, new HashMap<String, int[]>());
+				for (int i = 0; i < tuples.size(); i++) {
+					addToIndex(argument, tuples.get(i).args[argument].text, i);
+				}
+			}
+			return index.get(argument).get(key);
+		}
+	}
+
+	/**
+	 * Ground term or atom, text is the same as GdlNode.toString()
+	 */
+	private static final class GroundTerm {
+		private final static GroundTerm[] NO_ARGS = new GroundTerm[0];
+
+		final String atom;
+		final GroundTerm[] args;
+		final String text;
+
+		GroundTerm(String atom, GroundTerm[] args) {
+			this.atom = atom;
+			this.args = args;
+			if (args.length == 0) {
+				this.text = atom;
+			} else {
+				StringBuilder sb = new StringBuilder().append('(').append(atom);
+				for (GroundTerm arg : args) {
+					sb.append(' ').append(arg.text);
+				}
+				this.text = sb.append(')').toString();
+			}
+		}
+
+		static GroundTerm of(GdlNode node) {
+			List<GdlNode> children = node.getChildren();
+			if (children.isEmpty()) {
+				return new GroundTerm(node.getAtom(), NO_ARGS);
+			}
+			GroundTerm[] args = new GroundTerm[children.size()];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = of(children.get(i));
+			}
+			return new GroundTerm(node.getAtom(), args);
+		}
+
+		String key() {
+			return atom + "/" + args.length;
+		}
+	}
+
+	/**
+	 * Term of a rule that may contain variables. A variable has no atom and
+	 * the index of its binding.
+	 */
+	private static final class Pattern {
+		final String atom;
+		final int variable;
+		final Pattern[] args;
+		final String key;
+		// Same term if it has no variables
+		final GroundTerm ground;
+
+		Pattern(GdlNode node, Map<String, Integer> variableIndex) {
+			if (node.getType() == GdlType.VARIABLE) {
+				Integer variable = variableIndex.get(node.getAtom());
+				if (variable == null) {
+					variable = variableIndex.size();
+					variableIndex.put(node.getAtom(), variable);
+				}
+				this.atom = null;
+				this.variable = variable;
+				this.args = null;
+				this.key = null;
+				this.ground = null;
+			} else {
+				List<GdlNode> children = node.getChildren();
+				this.atom = node.getAtom();
+				this.variable = -1;
+				this.args = new Pattern[children.size()];
+				boolean isGround = true;
+				for (int i = 0; i < args.length; i++) {
+					args[i] = new Pattern(children.get(i), variableIndex);
+					isGround &= args[i].ground != null;
+				}
+				this.key = atom + "/" + args.length;
+				this.ground = isGround ? GroundTerm.of(node) : null;
+			}
+		}
+
+		/**
+		 * @param binding
+		 * @return the ground term, or null if a variable isn't bound
+		 */
+		GroundTerm instantiate(GroundTerm[] binding) {
+			if (ground != null) {
+				return ground;
+			}
+			if (atom == null) {
+				return binding[variable];
+			}
+			GroundTerm[] groundArgs = new GroundTerm[args.length];
+			for (int i = 0; i < args.length; i++) {
+				groundArgs[i] = args[i].instantiate(binding);
+				if (groundArgs[i] == null) {
+					return null;
+				}
+			}
+			return new GroundTerm(atom, groundArgs);
+		}
+
+		/**
+		 * Match a ground term, binding free variables. Variables bound here
+		 * are pushed onto trail so they can be unbound, nothing stays bound
+		 * if the term doesn't match.
+		 *
+		 * @return the new size of trail, or -1 if the term doesn't match
+		 */
+		int match(GroundTerm term, GroundTerm[] binding, int[] trail, int trailSize) {
+			if (ground != null) {
+				return ground.text.equals(term.text) ? trailSize : -1;
+			}
+			if (atom == null) {
+				if (binding[variable] == null) {
+					binding[variable] = term;
+					trail[trailSize] = variable;
+					return trailSize + 1;
+				}
+				return binding[variable].text.equals(term.text) ? trailSize : -1;
+			}
+			if (!atom.equals(term.atom) || args.length != term.args.length) {
+				return -1;
+			}
+			int size = trailSize;
+			for (int i = 0; i < args.length; i++) {
+				int next = args[i].match(term.args[i], binding, trail, size);
+				if (next < 0) {
+					for (int j = trailSize; j < size; j++) {
+						binding[trail[j]] = null;
+					}
+					return -1;
+				}
+				size = next;
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Body literal of a rule. pattern is the literal without its nots.
+	 */
+	private static final class Literal {
+		final Pattern full;
+		final Pattern pattern;
+		final boolean negative;
+		final boolean distinct;
+		final String key;
+
+		Literal(GdlNode literal, Map<String, Integer> variableIndex) {
+			this.full = new Pattern(literal, variableIndex);
+			Pattern positive = full;
+			boolean isNegative = false;
+			while (positive.atom != null && positive.atom.equals(GdlNode.NOT) && positive.args.length == 1) {
+				positive = positive.args[0];
+				isNegative = !isNegative;
+			}
+			this.pattern = positive;
+			this.negative = isNegative;
+			this.distinct = positive.atom != null && positive.atom.equals(GdlNode.DISTINCT)
+					&& positive.args.length == 2;
+			this.key = positive.key;
+		}
+	}
+
+	private final class Rule {
+		final Pattern head;
+		final Literal[] body;
+		// Positive literals other than distinct, these bind the variables
+		final Literal[] positive;
+		final int numVariables;
+		// Variables no positive literal binds and their domains
+		final int[] unbound;
+		final GroundTerm[][] unboundDomains;
+
+		final GroundTerm[] binding;
+		final int[] trail;
+		final List<String> bodyText = new ArrayList<String>();
+		final List<String> positiveText = new ArrayList<String>();
+
+		Rule(GdlNode clause) {
+			Map<String, Integer> variableIndex = new HashMap<String, Integer>();
+			List<Literal> bodyList = new ArrayList<Literal>();
+			List<Literal> positiveList = new ArrayList<Literal>();
+			if (clause.getType() == GdlType.CLAUSE) {
+				head = new Pattern(clause.getChild(0), variableIndex);
+				for (int i = 1; i < clause.getChildren().size(); i++) {
+					Literal literal = new Literal(clause.getChild(i), variableIndex);
+					bodyList.add(literal);
+					if (!literal.negative && !literal.distinct && literal.pattern.atom != null) {
+						positiveList.add(literal);
+					}
+				}
+			} else {
+				head = new Pattern(clause, variableIndex);
+			}
+			body = bodyList.toArray(new Literal[0]);
+			positive = positiveList.toArray(new Literal[0]);
+			numVariables = variableIndex.size();
+			binding = new GroundTerm[numVariables];
+			trail = new int[numVariables];
+
+			Set<Integer> bound = new HashSet<Integer>();
+			for (Literal literal : positive) {
+				addVariables(literal.pattern, bound);
+			}
+			unbound = new int[numVariables - bound.size()];
+			unboundDomains = new GroundTerm[unbound.length][];
+			int numUnbound = 0;
+			for (Map.Entry<String, Integer> variable : variableIndex.entrySet()) {
+				if (!bound.contains(variable.getValue())) {
+					Set<String> domain = GdlParser.getVariableDomain(variable.getKey(), clause, domainGraph);
+					GroundTerm[] constants = new GroundTerm[domain.size()];
+					int i = 0;
+					for (String constant : domain) {
+						constants[i++] = new GroundTerm(constant, GroundTerm.NO_ARGS);
+					}
+					unbound[numUnbound] = variable.getValue();
+					unboundDomains[numUnbound++] = constants;
+				}
+			}
+		}
+
+		private void addVariables(Pattern pattern, Set<Integer> variables) {
+			if (pattern.atom == null) {
+				variables.add(pattern.variable);
+			} else if (pattern.ground == null) {
+				for (Pattern arg : pattern.args) {
+					addVariables(arg, variables);
+				}
+			}
+		}
+
+		/**
+		 * Find every instance whose positive literal at delta matches an atom
+		 * new to this round, positive literals before it match older atoms
+		 * and those after it any atom. If delta is -1 every atom is used.
+		 */
+		void fire(int delta) {
+			Arrays.fill(binding, null);
+			if (delta >= 0) {
+				join(delta, 0, 0);
+			} else {
+				join(-1, 0, 0);
+			}
+		}
+
+		/**
+		 * @param delta
+		 *            literal restricted to new atoms
+		 * @param step
+		 *            number of literals matched so far
+		 * @param trailSize
+		 */
+		private void join(int delta, int step, int trailSize) {
+			if (step == positive.length) {
+				bindUnbound(0);
+				return;
+			}
+			// Delta literal first, then the others in body order
+			int current = delta < 0 ? step : step == 0 ? delta : step <= delta ? step - 1 : step;
+			Literal lit = positive[current];
+			Relation relation = relations.get(lit.key);
+			if (relation == null) {
+				return;
+			}
+			int from = 0;
+			int to = relation.deltaEnd;
+			if (delta >= 0) {
+				if (current == delta) {
+					from = relation.oldEnd;
+				} else if (current < delta) {
+					to = relation.oldEnd;
+				}
+			}
+
+			// Use the index of a bound argument if there is one
+			int[] positions = null;
+			for (int i = 0; i < lit.pattern.args.length && positions == null; i++) {
+				GroundTerm arg = lit.pattern.args[i].instantiate(binding);
+				if (arg != null) {
+					positions = relation.lookup(i, arg.text);
+					if (positions == null) {
+						return;
+					}
+				}
+			}
+			if (positions == null) {
+				for (int i = from; i < to; i++) {
+					matchAndJoin(delta, step, trailSize, lit, relation.tuples.get(i));
+				}
+			} else {
+				for (int i = 1; i <= positions[0]; i++) {
+					if (positions[i] >= from && positions[i] < to) {
+						matchAndJoin(delta, step, trailSize, lit, relation.tuples.get(positions[i]));
+					}
+				}
+			}
+		}
+
+		private void matchAndJoin(int delta, int step, int trailSize, Literal lit, GroundTerm atom) {
+			int newTrailSize = lit.pattern.match(atom, binding, trail, trailSize);
+			if (newTrailSize < 0) {
+				return;
+			}
+			join(delta, step + 1, newTrailSize);
+			for (int i = trailSize; i < newTrailSize; i++) {
+				binding[trail[i]] = null;
+			}
+		}
+
+		private void bindUnbound(int i) {
+			if (i == unbound.length) {
+				emit();
+				return;
+			}
+			for (GroundTerm constant : unboundDomains[i]) {
+				binding[unbound[i]] = constant;
+				bindUnbound(i + 1);
+			}
+			binding[unbound[i]] = null;
+		}
+
+		private void emit() {
+			bodyText.clear();
+			positiveText.clear();
+			for (Literal literal : body) {
+				if (literal.distinct) {
+					boolean different = !literal.pattern.args[0].instantiate(binding).text
+							.equals(literal.pattern.args[1].instantiate(binding).text);
+					if (different == literal.negative) {
+						return;
+					}
+				} else {
+					bodyText.add(literal.full.instantiate(binding).text);
+					positiveText.add(literal.pattern.instantiate(binding).text);
+				}
+			}
+			GroundTerm atom = head.instantiate(binding);
+			if (ruleSet != null && body.length == 0) {
+				GroundTerm initial = atom.atom.equals(GdlNode.INIT) && atom.args.length == 1 ? atom.args[0] : null;
+				ruleSet.joinGroundFact(atom.text, initial == null ? null : initial.text);
+			} else if (ruleSet != null) {
+				ruleSet.joinGroundRule(atom.text, bodyText, positiveText);
+			}
+			derive(atom);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import prover.GdlRuleSet;
+import util.GdlParser.ClauseGrounder;
+import util.grammar.GDLSyntaxException;
+import util.grammar.GdlNode;
+import util.graph.DomainGraph;
+
+/**
+ * Grounds the clauses of a game description on a ForkJoinPool. The clause
+ * list is halved until a task has few enough clauses, each task joins its
+ * clauses into a shard from GdlRuleSet.newShard() and the shards are merged
+ * in clause order, so the result is the same rule set as
+ * GdlParser.groundGdlToRuleSet(GdlNode, DomainGraph, Set) gives. Its atoms
+ * enter the symbol table in another order, which the passes over the rule
+ * set don't depend on, so it also translates to the same mck.
+ *
+ * A clause with more instances than SPLIT_INSTANCES is split into slices of
+ * the domain of its slowest changing variable, each ground into its own
+ * shard.
+ *
+ * @author vedantds
+ *
+ */
+public class ParallelGrounder {
+
+	public final static int CLAUSES_PER_TASK = 16;
+	public final static long SPLIT_INSTANCES = 1 << 14;
+
+	private final List<GdlNode> clauses;
+	private final DomainGraph domainGraph;
+	private final Set<String> reachable;
+	private final StaticFacts staticFacts;
+	private final int slices;
+
+	private ParallelGrounder(List<GdlNode> clauses, DomainGraph domainGraph, Set<String> reachable,
+			StaticFacts staticFacts, int slices) {
+		this.clauses = clauses;
+		this.domainGraph = domainGraph;
+		this.reachable = reachable;
+		this.staticFacts = staticFacts;
+		this.slices = slices;
+	}
+
+	/**
+	 * @param root
+	 *            the root of a GdlNode tree
+	 * @param domainGraph
+	 *            the DomainGraph of the tree
+	 * @param reachable
+	 *            atoms from JoinGrounder.reachableAtoms, or null to keep every
+	 *            instance
+	 * @param threads
+	 *            parallelism of the pool
+	 * @return the GdlRuleSet with grounded rules
+	 * @throws GDLSyntaxException
+	 */
+	public static GdlRuleSet ground(GdlNode root, DomainGraph domainGraph, Set<String> reachable, int threads)
+			throws GDLSyntaxException {
+		StaticFacts staticFacts = StaticFacts.evaluate(root, domainGraph);
+		List<GdlNode> clauses = new ArrayList<GdlNode>();
+		for (GdlNode clause : root.getChildren()) {
+			if (!staticFacts.defines(clause)) {
+				clauses.add(clause);
+			}
+		}
+		ParallelGrounder grounder = new ParallelGrounder(clauses, domainGraph, reachable, staticFacts, threads * 4);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<GdlRuleSet> shards;
+		try {
+			shards = pool.invoke(grounder.new ClauseTask(0, grounder.clauses.size()));
+		} catch (GroundingException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+
+		GdlRuleSet groundedRuleSet = new GdlRuleSet(domainGraph.getSymbolTable());
+		staticFacts.joinFacts(groundedRuleSet);
+		for (GdlRuleSet shard : shards) {
+			groundedRuleSet.joinShard(shard);
+		}
+		return groundedRuleSet;
+	}
+
+	/**
+	 * Shards of a range of clauses, in clause order
+	 */
+	private final class ClauseTask extends RecursiveTask<List<GdlRuleSet>> {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		ClauseTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<GdlRuleSet> compute() {
+			if (to - from > CLAUSES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				ClauseTask first = new ClauseTask(from, middle);
+				first.fork();
+				List<GdlRuleSet> second = new ClauseTask(middle, to).compute();
+				List<GdlRuleSet> shards = first.join();
+				shards.addAll(second);
+				return shards;
+			}
+
+			List<GdlRuleSet> shards = new ArrayList<GdlRuleSet>();
+			GdlRuleSet shard = GdlRuleSet.newShard();
+			try {
+				for (int i = from; i < to; i++) {
+					GdlNode clause = clauses.get(i);
+					ClauseGrounder grounder = GdlParser.clauseGrounder(clause, domainGraph, reachable, staticFacts);
+					if (grounder == null) {
+						shard.joinClause(clause);
+					} else if (grounder.instances() > SPLIT_INSTANCES && grounder.outermostSize() > 1) {
+						shards.add(shard);
+						List<SliceTask> sliceTasks = new ArrayList<SliceTask>();
+						int size = grounder.outermostSize();
+						int count = Math.min(slices, size);
+						for (int slice = 0; slice < count; slice++) {
+							sliceTasks.add(new SliceTask(grounder.slice(slice * size / count, (slice + 1) * size / count)));
+						}
+						for (SliceTask sliceTask : invokeAll(sliceTasks)) {
+							shards.add(sliceTask.join());
+						}
+						shard = GdlRuleSet.newShard();
+					} else {
+						grounder.join(shard, reachable);
+					}
+				}
+			} catch (GDLSyntaxException e) {
+				throw new GroundingException(e);
+			}
+			shards.add(shard);
+			return shards;
+		}
+	}
+
+	/**
+	 * Shard of a slice of a clause
+	 */
+	private final class SliceTask extends RecursiveTask<GdlRuleSet> {
+		private static final long serialVersionUID = 1L;
+
+		private final ClauseGrounder grounder;
+
+		SliceTask(ClauseGrounder grounder) {
+			this.grounder = grounder;
+		}
+
+		@Override
+		protected GdlRuleSet compute() {
+			GdlRuleSet shard = GdlRuleSet.newShard();
+			grounder.join(shard, reachable);
+			return shard;
+		}
+	}
+
+	/**
+	 * Carries a GDLSyntaxException out of a task
+	 */
+	private static final class GroundingException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		GroundingException(GDLSyntaxException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized GDLSyntaxException getCause() {
+			return (GDLSyntaxException) super.getCause();
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import prover.GdlRuleSet;
+import util.GdlParser.ClauseGrounder;
+import util.grammar.GDLSyntaxException;
+import util.grammar.GdlNode;
+import util.grammar.GdlType;
+import util.graph.DependencyGraph;
+import util.graph.DomainGraph;
+
+/**
+ * Extension of the relations of a game description whose atoms never change,
+ * so a body literal of one of them is decided as soon as it is ground. Each
+ * argument position of a relation is indexed by the text of the argument.
+ *
+ * A relation is static if it depends on neither true nor does, nor on a
+ * relation the translator gives a meaning to, like legal or goal. Static
+ * relations are evaluated before grounding, one stratum of negation at a
+ * time and to a fixpoint within a stratum, so their rules never have to be
+ * ground. A static relation that depends negatively on itself can't be
+ * evaluated this way and is left to the grounder, with every relation that
+ * depends on it.
+ *
+ * @author vedantds
+ *
+ */
+public class StaticFacts {
+
+	private final static Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(GdlNode.INIT, GdlNode.TRUE,
+			GdlNode.DOES, GdlNode.NEXT, GdlNode.LEGAL, GdlNode.SEES, GdlNode.GOAL, "terminal", GdlNode.BASE,
+			GdlNode.INPUT));
+
+	private final Map<String, Relation> relations = new HashMap<String, Relation>();
+
+	/**
+	 * Find the static relations of a game description and evaluate them
+	 *
+	 * @param root
+	 *            root of the parse tree
+	 * @param domainGraph
+	 *            domain graph of the parse tree
+	 * @return the static relations of the game description
+	 * @throws GDLSyntaxException
+	 */
+	public static StaticFacts evaluate(GdlNode root, DomainGraph domainGraph) throws GDLSyntaxException {
+		// Relations by atom and arity, true and does included
+		DependencyGraph graph = new DependencyGraph();
+		Set<String> dynamic = new HashSet<String>();
+		Map<String, List<GdlNode>> clauses = new HashMap<String, List<GdlNode>>();
+		for (GdlNode clause : root.getChildren()) {
+			GdlNode head = clause.getType() == GdlType.CLAUSE ? clause.getChild(0) : clause;
+			String key = key(head);
+			graph.addTerm(key);
+			if (KEYWORDS.contains(head.getAtom())
+					|| (clause.getType() != GdlType.CLAUSE && GdlParser.isVariableInTree(clause))) {
+				dynamic.add(key);
+			}
+			List<GdlNode> relationClauses = clauses.get(key);
+			if (relationClauses == null) {
+				relationClauses = new ArrayList<GdlNode>();
+				clauses.put(key, relationClauses);
+			}
+			relationClauses.add(clause);
+			if (clause.getType() != GdlType.CLAUSE) {
+				continue;
+			}
+			for (int i = 1; i < clause.getChildren().size(); i++) {
+				GdlNode literal = positive(clause.getChild(i));
+				if (!literal.getAtom().equals(GdlNode.DISTINCT)) {
+					graph.addEdge(key, key(literal));
+					if (KEYWORDS.contains(literal.getAtom())) {
+						dynamic.add(key(literal));
+					}
+				}
+			}
+		}
+		dynamic = graph.getDependents(dynamic);
+
+		List<String> staticKeys = new ArrayList<String>();
+		for (String key : graph.getDependencyMap().keySet()) {
+			if (!dynamic.contains(key)) {
+				staticKeys.add(key);
+			}
+		}
+		Map<String, Integer> strata = stratify(staticKeys, clauses);
+		Set<String> unstratified = new HashSet<String>();
+		for (String key : staticKeys) {
+			if (strata.get(key) > staticKeys.size()) {
+				unstratified.add(key);
+			}
+		}
+		unstratified = graph.getDependents(unstratified);
+
+		StaticFacts staticFacts = new StaticFacts();
+		int maxStratum = 0;
+		for (String key : staticKeys) {
+			if (!unstratified.contains(key)) {
+				staticFacts.relations.put(key, new Relation(Integer.parseInt(key.substring(key.lastIndexOf('/') + 1))));
+				maxStratum = Math.max(maxStratum, strata.get(key));
+			}
+		}
+		for (int stratum = 0; stratum <= maxStratum; stratum++) {
+			List<GdlNode> stratumClauses = new ArrayList<GdlNode>();
+			for (String key : staticFacts.relations.keySet()) {
+				if (strata.get(key) == stratum && clauses.containsKey(key)) {
+					stratumClauses.addAll(clauses.get(key));
+				}
+			}
+			staticFacts.saturate(stratumClauses, domainGraph);
+		}
+		return staticFacts;
+	}
+
+	/**
+	 * Stratum of every static relation, the largest number of negations on
+	 * a path of dependencies from it. More than the number of relations if
+	 * the path has a cycle through a negation.
+	 */
+	private static Map<String, Integer> stratify(List<String> keys, Map<String, List<GdlNode>> clauses) {
+		Map<String, Integer> strata = new HashMap<String, Integer>();
+		for (String key : keys) {
+			strata.put(key, 0);
+		}
+		boolean changed = true;
+		for (int round = 0; changed && round <= keys.size() + 1; round++) {
+			changed = false;
+			for (String key : keys) {
+				if (!clauses.containsKey(key)) {
+					continue;
+				}
+				int stratum = strata.get(key);
+				for (GdlNode clause : clauses.get(key)) {
+					for (int i = 1; clause.getType() == GdlType.CLAUSE && i < clause.getChildren().size(); i++) {
+						GdlNode literal = positive(clause.getChild(i));
+						Integer literalStratum = strata.get(key(literal));
+						if (literalStratum != null) {
+							int offset = literal == clause.getChild(i) ? 0 : 1;
+							stratum = Math.max(stratum, literalStratum + offset);
+						}
+					}
+				}
+				if (stratum > strata.get(key)) {
+					strata.put(key, stratum);
+					changed = true;
+				}
+			}
+		}
+		return strata;
+	}
+
+	/**
+	 * Ground the clauses of one stratum over the relations evaluated so far
+	 * until no new atom is derived
+	 */
+	private void saturate(List<GdlNode> clauses, DomainGraph domainGraph) throws GDLSyntaxException {
+		final List<String> derived = new ArrayList<String>();
+		GdlRuleSet sink = new GdlRuleSet() {
+			@Override
+			public void joinGroundFact(String fact, String initialLiteral) {
+				derived.add(fact);
+			}
+
+			@Override
+			public void joinGroundRule(String head, List<String> body, List<String> positiveBody) {
+				derived.add(head);
+			}
+		};
+		List<GdlNode> rules = new ArrayList<GdlNode>();
+		for (GdlNode clause : clauses) {
+			if (clause.getType() == GdlType.CLAUSE) {
+				rules.add(clause);
+			} else {
+				add(clause.toString());
+			}
+		}
+
+		boolean changed = !rules.isEmpty();
+		while (changed) {
+			changed = false;
+			// A grounder filters domains by the facts there are when it is
+			// made, so it is made again every round
+			for (GdlNode rule : rules) {
+				ClauseGrounder grounder = GdlParser.clauseGrounder(rule, domainGraph, null, this);
+				grounder.join(sink, null);
+			}
+			for (String atom : derived) {
+				changed |= add(atom);
+			}
+			derived.clear();
+		}
+	}
+
+	/**
+	 * @return true if the atom is new
+	 */
+	private boolean add(String atom) {
+		String[] args = arguments(atom);
+		String atomName = args == null ? atom : atom.substring(1, atom.indexOf(' '));
+		return relations.get(atomName + "/" + (args == null ? 0 : args.length)).add(atom,
+				args == null ? new String[0] : args);
+	}
+
+	/**
+	 * @param atom
+	 *            text of a ground atom
+	 * @return text of its arguments, null for an atom without arguments
+	 */
+	private static String[] arguments(String atom) {
+		if (atom.charAt(0) != '(') {
+			return null;
+		}
+		List<String> args = new ArrayList<String>();
+		int depth = 0;
+		int start = -1;
+		for (int i = 1; i < atom.length() - 1; i++) {
+			char c = atom.charAt(i);
+			if (c == ' ' && depth == 0) {
+				if (start >= 0) {
+					args.add(atom.substring(start, i));
+				}
+				start = i + 1;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			}
+		}
+		args.add(atom.substring(start, atom.length() - 1));
+		return args.toArray(new String[args.size()]);
+	}
+
+	private static GdlNode positive(GdlNode literal) {
+		while (literal.getAtom().equals(GdlNode.NOT)) {
+			literal = literal.getChild(0);
+		}
+		return literal;
+	}
+
+	private static String key(GdlNode atom) {
+		return key(atom.getAtom(), atom.getChildren().size());
+	}
+
+	private static String key(String atom, int arity) {
+		return atom + "/" + arity;
+	}
+
+	/**
+	 * @param atom
+	 * @param arity
+	 * @return the relation, or null if it isn't static
+	 */
+	public Relation get(String atom, int arity) {
+		return relations.get(key(atom, arity));
+	}
+
+	/**
+	 * @param clause
+	 * @return true if the clause defines a static relation, so it is
+	 *         replaced by the facts of joinFacts(GdlRuleSet)
+	 */
+	public boolean defines(GdlNode clause) {
+		return relations.containsKey(key(clause.getType() == GdlType.CLAUSE ? clause.getChild(0) : clause));
+	}
+
+	/**
+	 * Join every atom of every static relation into a rule set as a fact
+	 *
+	 * @param ruleSet
+	 */
+	public void joinFacts(GdlRuleSet ruleSet) {
+		for (Relation relation : relations.values()) {
+			for (String atom : relation.atoms) {
+				ruleSet.joinGroundFact(atom, null);
+			}
+		}
+	}
+
+	/**
+	 * Ground atoms of one static relation
+	 */
+	public static final class Relation {
+		private final int arity;
+		private final Set<String> texts = new HashSet<String>();
+		private final List<String> atoms = new ArrayList<String>();
+		private final List<String[]> tuples = new ArrayList<String[]>();
+		private final List<Map<String, List<String[]>>> index = new ArrayList<Map<String, List<String[]>>>();
+
+		Relation(int arity) {
+			this.arity = arity;
+			for (int i = 0; i < arity; i++) {
+				index.add(new HashMap<String, List<String[]>>());
+			}
+		}
+
+		boolean add(String text, String[] args) {
+			if (!texts.add(text)) {
+				return false;
+			}
+			atoms.add(text);
+			tuples.add(args);
+			for (int i = 0; i < arity; i++) {
+				List<String[]> matches = index.get(i).get(args[i]);
+				if (matches == null) {
+					matches = new ArrayList<String[]>();
+					index.get(i).put(args[i], matches);
+				}
+				matches.add(args);
+			}
+			return true;
+		}
+
+		/**
+		 * @param text
+		 *            a ground atom of this relation
+		 * @return true if the atom holds
+		 */
+		public boolean contains(String text) {
+			return texts.contains(text);
+		}
+
+		/**
+		 * @return number of atoms
+		 */
+		public int size() {
+			return tuples.size();
+		}
+
+		/**
+		 * @param position
+		 *            argument position, from 0
+		 * @return number of different arguments at the position
+		 */
+		public int distinctArguments(int position) {
+			return index.get(position).size();
+		}
+
+		/**
+		 * @return the arguments of every atom
+		 */
+		public List<String[]> getTuples() {
+			return tuples;
+		}
+
+		/**
+		 * @param position
+		 *            argument position, from 0
+		 * @param argument
+		 *            text of the argument
+		 * @return the arguments of the atoms with that argument
+		 */
+		public List<String[]> lookup(int position, String argument) {
+			List<String[]> matches = index.get(position).get(argument);
+			return matches == null ? Collections.<String[]> emptyList() : matches;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import util.grammar.GdlTermPool;
+
+/**
+ * Symbol table owned by a single translation. Assigns dense int ids to the
+ * constants, functors and predicates of a game description and keeps one
+ * canonical String per symbol, which replaces the JVM wide String.intern()
+ * pool. The String form is only needed for output. The table also owns the
+ * pool of shared ground terms of the translation.
+ *
+ * @author vedantds
+ *
+ */
+public class SymbolTable {
+
+	public final static int NO_SYMBOL = -1;
+
+	private final HashMap<String, Integer> ids;
+	private final ArrayList<String> symbols;
+	private final GdlTermPool terms;
+
+	public SymbolTable() {
+		ids = new HashMap<String, Integer>();
+		symbols = new ArrayList<String>();
+		terms = new GdlTermPool();
+	}
+
+	/**
+	 * Get the id of a symbol, assigning the next free id if it hasn't been seen
+	 *
+	 * @param symbol
+	 * @return id
+	 */
+	public int getId(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id == null) {
+			id = symbols.size();
+			symbols.add(symbol);
+			ids.put(symbol, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Get the id of a symbol without adding it to the table
+	 *
+	 * @param symbol
+	 * @return id or NO_SYMBOL
+	 */
+	public int lookup(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id == null) {
+			return NO_SYMBOL;
+		}
+		return id;
+	}
+
+	/**
+	 * Reverse lookup
+	 *
+	 * @param id
+	 * @return symbol
+	 */
+	public String getSymbol(int id) {
+		return symbols.get(id);
+	}
+
+	/**
+	 * Get the canonical instance of a symbol, adding it to the table if needed
+	 *
+	 * @param symbol
+	 * @return
+	 */
+	public String canonical(String symbol) {
+		return symbols.get(getId(symbol));
+	}
+
+	/**
+	 * @return pool of hash-consed ground terms
+	 */
+	public GdlTermPool getTermPool() {
+		return terms;
+	}
+
+	/**
+	 * @return number of symbols in the table
+	 */
+	public int size() {
+		return symbols.size();
+	}
+}
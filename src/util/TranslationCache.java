@@ -0,0 +1,184 @@
+package util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Content addressed cache of translation results. Entries are files in a
+ * single directory named by the SHA-256 hash of the game description and the
+ * options the result depends on, plus a suffix for the kind of result.
+ *
+ * Hits refresh the modification time of an entry and evict() deletes the
+ * least recently used entries once there are more than maxEntries.
+ *
+ * @author vedantds
+ *
+ */
+public class TranslationCache {
+
+	public final static String RULE_SET_SUFFIX = ".ir";
+	public final static String MCK_SUFFIX = ".mck";
+	public final static int DEFAULT_MAX_ENTRIES = 64;
+	/**
+	 * Part of every key, change it when the format of an entry or the output
+	 * of the translator changes so old entries are never hit
+	 */
+	public final static String FORMAT_VERSION = "MckTranslator-cache-1";
+
+	private final File directory;
+	private final int maxEntries;
+
+	public TranslationCache(String directoryPath) {
+		this(directoryPath, DEFAULT_MAX_ENTRIES);
+	}
+
+	public TranslationCache(String directoryPath, int maxEntries) {
+		this.directory = new File(directoryPath);
+		this.maxEntries = maxEntries;
+		this.directory.mkdirs();
+	}
+
+	/**
+	 * Hash a game description together with the options a result depends on
+	 *
+	 * @param gdl
+	 * @param options
+	 * @return hex encoded SHA-256
+	 */
+	public static String key(byte[] gdl, String... options) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(gdl);
+		for (String option : options) {
+			digest.update((byte) 0);
+			digest.update(option.getBytes(StandardCharsets.UTF_8));
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param key
+	 * @param suffix
+	 * @return the cached file, or null on a miss
+	 */
+	public File lookup(String key, String suffix) {
+		File entry = new File(directory, key + suffix);
+		if (!entry.isFile()) {
+			return null;
+		}
+		entry.setLastModified(System.currentTimeMillis());
+		return entry;
+	}
+
+	/**
+	 * @param key
+	 * @param suffix
+	 * @return cached text, or null on a miss
+	 * @throws IOException
+	 */
+	public String lookupText(String key, String suffix) throws IOException {
+		File entry = lookup(key, suffix);
+		if (entry == null) {
+			return null;
+		}
+		return new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Temporary file to write a new entry to before it is committed with
+	 * commit(File, String, String), so an interrupted write is never a hit.
+	 *
+	 * @param key
+	 * @param suffix
+	 * @return
+	 * @throws IOException
+	 */
+	public File createTempFile(String key, String suffix) throws IOException {
+		return File.createTempFile(key, suffix + ".tmp", directory);
+	}
+
+	/**
+	 * Move a file written through createTempFile into the cache
+	 *
+	 * @param file
+	 * @param key
+	 * @param suffix
+	 * @throws IOException
+	 */
+	public void commit(File file, String key, String suffix) throws IOException {
+		Files.move(file.toPath(), new File(directory, key + suffix).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param key
+	 * @param suffix
+	 * @param text
+	 * @throws IOException
+	 */
+	public void storeText(String key, String suffix, String text) throws IOException {
+		File file = createTempFile(key, suffix);
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		commit(file, key, suffix);
+	}
+
+	/**
+	 * @param name
+	 * @return true if name is a committed entry, a key followed by one of the
+	 *         suffixes of the cache
+	 */
+	static boolean isEntryName(String name) {
+		String key;
+		if (name.endsWith(RULE_SET_SUFFIX)) {
+			key = name.substring(0, name.length() - RULE_SET_SUFFIX.length());
+		} else if (name.endsWith(MCK_SUFFIX)) {
+			key = name.substring(0, name.length() - MCK_SUFFIX.length());
+		} else {
+			return false;
+		}
+		return key.matches("[0-9a-f]{64}");
+	}
+
+	/**
+	 * Delete the least recently used entries until at most maxEntries remain.
+	 * Other files in the directory, like temporary files still being written,
+	 * are neither counted nor deleted.
+	 */
+	public void evict() {
+		File[] entries = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && isEntryName(file.getName());
+			}
+		});
+		if (entries == null || entries.length <= maxEntries) {
+			return;
+		}
+		Arrays.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Long.compare(o2.lastModified(), o1.lastModified());
+			}
+		});
+		for (int i = maxEntries; i < entries.length; i++) {
+			entries[i].delete();
+		}
+	}
+}
@@ -2,9 +2,8 @@ package util.grammar;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 
+import util.SymbolTable;
 import util.grammar.GdlNode;
 
 public class Gdl implements GdlNode, LparseNode {
@@ -12,16 +11,7 @@ public class Gdl implements GdlNode, LparseNode {
 
 	@Override
 	public Iterator<GdlNode> iterator() {
-		Queue<GdlNode> iterator = new LinkedList<GdlNode>();
-
-		iterator.add(this);
-		for (GdlNode child : getChildren()) {
-			for (GdlNode node : child) {
-				iterator.add(node);
-			}
-		}
-
-		return iterator.iterator();
+		return new GdlNodeIterator(this);
 	}
 
 	@Override
@@ -57,6 +47,11 @@ public class Gdl implements GdlNode, LparseNode {
 		return GdlType.ROOT;
 	}
 
+	@Override
+	public int getSymbolId() {
+		return SymbolTable.NO_SYMBOL;
+	}
+
 	@Override
 	public GdlNode getParent() {
 		return null;
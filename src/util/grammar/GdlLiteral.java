@@ -2,19 +2,26 @@ package util.grammar;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 
+import util.SymbolTable;
 import util.grammar.GdlNode;
 
 public class GdlLiteral implements GdlNode, LparseNode {
 
 	private final String atom;
+	private final int symbolId;
 	private final GdlNode parent;
 	private final ArrayList<GdlNode> children;
+	private String string;
+	private int stringChildren;
 
 	public GdlLiteral(String atom, GdlNode parent) {
-		this.atom = atom.intern();
+		this(atom, SymbolTable.NO_SYMBOL, parent);
+	}
+
+	public GdlLiteral(String atom, int symbolId, GdlNode parent) {
+		this.atom = atom;
+		this.symbolId = symbolId;
 		this.parent = parent;
 		this.children = new ArrayList<GdlNode>();
 	}
@@ -24,6 +31,11 @@ public class GdlLiteral implements GdlNode, LparseNode {
 		return atom;
 	}
 
+	@Override
+	public int getSymbolId() {
+		return symbolId;
+	}
+
 	@Override
 	public GdlNode getParent() {
 		return parent;
@@ -36,16 +48,7 @@ public class GdlLiteral implements GdlNode, LparseNode {
 
 	@Override
 	public Iterator<GdlNode> iterator() {
-		Queue<GdlNode> iterator = new LinkedList<GdlNode>();
-
-		iterator.add(this);
-		for (GdlNode child : getChildren()) {
-			for (GdlNode node : child) {
-				iterator.add(node);
-			}
-		}
-
-		return iterator.iterator();
+		return new GdlNodeIterator(this);
 	}
 
 	@Override
@@ -154,26 +157,31 @@ public class GdlLiteral implements GdlNode, LparseNode {
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		if (!getChildren().isEmpty() && !getAtom().equals("")) {
-			sb.append("(");
-		}
-		sb.append(getAtom());
+		// Built once, rebuilt only if a child has been added since
+		if (string == null || stringChildren != children.size()) {
+			StringBuilder sb = new StringBuilder();
+			if (!getChildren().isEmpty() && !getAtom().equals("")) {
+				sb.append("(");
+			}
+			sb.append(getAtom());
 
-		for (GdlNode child : getChildren()) {
-			sb.append(" " + child.toString());
-		}
+			for (GdlNode child : getChildren()) {
+				sb.append(" " + child.toString());
+			}
 
-		if (!getChildren().isEmpty() && !getAtom().equals("")) {
-			sb.append(")");
-		}
+			if (!getChildren().isEmpty() && !getAtom().equals("")) {
+				sb.append(")");
+			}
 
-		return sb.toString();
+			string = sb.toString();
+			stringChildren = children.size();
+		}
+		return string;
 	}
 
 	@Override
 	public int hashCode() {
-		return atom.hashCode();
+		return toString().hashCode();
 	}
 
 	@Override
@@ -183,7 +191,7 @@ public class GdlLiteral implements GdlNode, LparseNode {
 	
 	@Override
 	public boolean equals(Object obj) {
-		if (this.toString().equals(obj.toString())) {
+		if (this == obj || this.toString().equals(obj.toString())) {
 			return true;
 		}
 		return false;
@@ -21,6 +21,14 @@ public interface GdlNode extends Iterable<GdlNode> {
 
 	public String getAtom();
 
+	/**
+	 * Id of the atom in the SymbolTable of the translation that created the
+	 * node, SymbolTable.NO_SYMBOL if the node wasn't created with one.
+	 * 
+	 * @return
+	 */
+	public int getSymbolId();
+
 	public GdlType getType();
 
 	public GdlNode getParent();
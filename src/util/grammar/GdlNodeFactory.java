@@ -1,5 +1,7 @@
 package util.grammar;
 
+import util.SymbolTable;
+
 public class GdlNodeFactory {
 
 	public static Gdl createGdl() {
@@ -17,4 +19,29 @@ public class GdlNodeFactory {
 	public static GdlTerm createGdlTerm(String atom, GdlNode parent) {
 		return new GdlTerm(atom, parent);
 	}
+
+	public static GdlLiteral createGdlFormula(String atom, GdlNode parent, SymbolTable symbols) {
+		int symbolId = symbols.getId(atom);
+		return new GdlLiteral(symbols.getSymbol(symbolId), symbolId, parent);
+	}
+
+	public static GdlTerm createGdlTerm(String atom, GdlNode parent, SymbolTable symbols) {
+		int symbolId = symbols.getId(atom);
+		return new GdlTerm(symbols.getSymbol(symbolId), symbolId, parent);
+	}
+
+	/**
+	 * Swap a completed ground term for the shared instance from the term pool
+	 * of the translation. Any other node is returned as is.
+	 * 
+	 * @param node
+	 * @param symbols
+	 * @return
+	 */
+	public static GdlNode internTerm(GdlNode node, SymbolTable symbols) {
+		if (node instanceof GdlTerm) {
+			return symbols.getTermPool().intern((GdlTerm) node);
+		}
+		return node;
+	}
 }
@@ -0,0 +1,61 @@
+package util.grammar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy pre-order iterator over the sub-tree rooted at a node. Only the
+ * pending siblings are kept on an explicit stack, so a walk is linear in the
+ * size of the tree and doesn't recurse or copy the sub-tree up front.
+ *
+ * The tree must not be changed while it is being iterated.
+ *
+ * @author vedantds
+ *
+ */
+public class GdlNodeIterator implements Iterator<GdlNode> {
+
+	private final ArrayDeque<GdlNode> stack;
+
+	public GdlNodeIterator(GdlNode root) {
+		stack = new ArrayDeque<GdlNode>();
+		stack.push(root);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !stack.isEmpty();
+	}
+
+	@Override
+	public GdlNode next() {
+		if (stack.isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		GdlNode node = stack.pop();
+		ArrayList<GdlNode> children = node.getChildren();
+		for (int i = children.size() - 1; i >= 0; i--) {
+			stack.push(children.get(i));
+		}
+		return node;
+	}
+
+	/**
+	 * Visit the nodes of the sub-tree rooted at root in pre-order until the
+	 * visitor asks to stop
+	 *
+	 * @param root
+	 * @param visitor
+	 * @return false if the walk was stopped early by the visitor
+	 */
+	public static boolean walk(GdlNode root, GdlVisitor visitor) {
+		for (GdlNode node : root) {
+			if (!visitor.visit(node)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -2,9 +2,8 @@ package util.grammar;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 
+import util.SymbolTable;
 import util.grammar.GdlNode;
 
 public class GdlRule implements GdlNode, LparseNode {
@@ -12,6 +11,8 @@ public class GdlRule implements GdlNode, LparseNode {
 	private int stratum;
 	private final GdlNode parent;
 	private final ArrayList<GdlNode> children;
+	private String string;
+	private int stringChildren;
 
 	public GdlRule(GdlNode parent) {
 		this.parent = parent;
@@ -40,6 +41,11 @@ public class GdlRule implements GdlNode, LparseNode {
 		return CLAUSE;
 	}
 
+	@Override
+	public int getSymbolId() {
+		return SymbolTable.NO_SYMBOL;
+	}
+
 	@Override
 	public GdlNode getParent() {
 		return parent;
@@ -52,16 +58,7 @@ public class GdlRule implements GdlNode, LparseNode {
 
 	@Override
 	public Iterator<GdlNode> iterator() {
-		Queue<GdlNode> iterator = new LinkedList<GdlNode>();
-
-		iterator.add(this);
-		for (GdlNode child : getChildren()) {
-			for (GdlNode node : child) {
-				iterator.add(node);
-			}
-		}
-
-		return iterator.iterator();
+		return new GdlNodeIterator(this);
 	}
 
 	@Override
@@ -112,26 +109,31 @@ public class GdlRule implements GdlNode, LparseNode {
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		if (!getChildren().isEmpty() && !getAtom().equals("")) {
-			sb.append("(");
-		}
-		sb.append(getAtom());
+		// Built once, rebuilt only if a child has been added since
+		if (string == null || stringChildren != children.size()) {
+			StringBuilder sb = new StringBuilder();
+			if (!getChildren().isEmpty() && !getAtom().equals("")) {
+				sb.append("(");
+			}
+			sb.append(getAtom());
 
-		for (GdlNode child : getChildren()) {
-			sb.append(" " + child.toString());
-		}
+			for (GdlNode child : getChildren()) {
+				sb.append(" " + child.toString());
+			}
 
-		if (!getChildren().isEmpty() && !getAtom().equals("")) {
-			sb.append(")");
-		}
+			if (!getChildren().isEmpty() && !getAtom().equals("")) {
+				sb.append(")");
+			}
 
-		return sb.toString();
+			string = sb.toString();
+			stringChildren = children.size();
+		}
+		return string;
 	}
 
 	@Override
 	public int hashCode() {
-		return getAtom().hashCode();
+		return toString().hashCode();
 	}
 
 	@Override
@@ -141,7 +143,7 @@ public class GdlRule implements GdlNode, LparseNode {
 	
 	@Override
 	public boolean equals(Object obj) {
-		if (this.toString().equals(obj.toString())) {
+		if (this == obj || this.toString().equals(obj.toString())) {
 			return true;
 		}
 		return false;
@@ -0,0 +1,52 @@
+package util.grammar;
+
+import java.util.HashMap;
+
+/**
+ * Hash-consing pool for ground terms. Structurally identical ground terms
+ * such as (cell 1 1 b) are shared as a single GdlTerm per translation, which
+ * also shares its cached string and hash.
+ *
+ * A pooled term is shared between every clause it appears in, so it must
+ * not be modified and its getParent() is the node it was first created
+ * under. Terms with variables are never pooled since grounding relies on
+ * the parent of a variable.
+ *
+ * @author vedantds
+ *
+ */
+public class GdlTermPool {
+
+	private final HashMap<String, GdlTerm> terms;
+
+	public GdlTermPool() {
+		terms = new HashMap<String, GdlTerm>();
+	}
+
+	/**
+	 * Get the shared instance of a ground term, making term the shared
+	 * instance if it hasn't been seen. Non-ground terms are returned as is.
+	 *
+	 * @param term
+	 * @return
+	 */
+	public GdlTerm intern(GdlTerm term) {
+		String key = term.toString();
+		if (key.indexOf('?') >= 0) {
+			return term;
+		}
+		GdlTerm pooled = terms.get(key);
+		if (pooled == null) {
+			terms.put(key, term);
+			return term;
+		}
+		return pooled;
+	}
+
+	/**
+	 * @return number of distinct ground terms in the pool
+	 */
+	public int size() {
+		return terms.size();
+	}
+}
@@ -0,0 +1,385 @@
+package util.grammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import util.SymbolTable;
+
+/**
+ * Compact parse tree stored as parallel int arrays (struct of arrays). Each
+ * node is an index holding a symbol id, a GdlType ordinal, its parent, its
+ * first child and its next sibling, so a leaf costs a few ints instead of an
+ * object with a parent pointer and an empty child list.
+ *
+ * Nodes must be added in pre-order, which keeps every sub-tree in a
+ * contiguous range of indices. Node 0 is always the root.
+ *
+ * The tree is read through Cursor, a lightweight view implementing
+ * GdlNode, or directly through the index based accessors.
+ *
+ * @author vedantds
+ *
+ */
+public class GdlTree {
+
+	public final static int ROOT = 0;
+	public final static int NONE = -1;
+
+	private final static GdlType[] TYPES = GdlType.values();
+
+	private final SymbolTable symbols;
+	private int[] symbol;
+	private int[] kind;
+	private int[] parent;
+	private int[] firstChild;
+	private int[] nextSibling;
+	private int size;
+
+	public GdlTree(SymbolTable symbols) {
+		this(symbols, 1024);
+	}
+
+	public GdlTree(SymbolTable symbols, int capacity) {
+		capacity = Math.max(capacity, 16);
+		this.symbols = symbols;
+		this.symbol = new int[capacity];
+		this.kind = new int[capacity];
+		this.parent = new int[capacity];
+		this.firstChild = new int[capacity];
+		this.nextSibling = new int[capacity];
+		this.size = 0;
+		append(NONE, SymbolTable.NO_SYMBOL, GdlType.ROOT);
+	}
+
+	/**
+	 * Add a rule node (<=) as the last child of parentNode
+	 *
+	 * @param parentNode
+	 * @return index of the new node
+	 */
+	public int addRule(int parentNode) {
+		return append(parentNode, SymbolTable.NO_SYMBOL, GdlType.CLAUSE);
+	}
+
+	/**
+	 * Add a formula node as the last child of parentNode. Follows the typing
+	 * of GdlLiteral.
+	 *
+	 * @param parentNode
+	 * @param atom
+	 * @return index of the new node
+	 */
+	public int addFormula(int parentNode, String atom) {
+		GdlType type = atom.charAt(0) == '?' ? GdlType.VARIABLE : GdlType.FORMULA;
+		return append(parentNode, symbols.getId(atom), type);
+	}
+
+	/**
+	 * Add a term node as the last child of parentNode. Follows the typing of
+	 * GdlTerm, constants become functions once they are given a child.
+	 *
+	 * @param parentNode
+	 * @param atom
+	 * @return index of the new node
+	 */
+	public int addTerm(int parentNode, String atom) {
+		GdlType type = atom.charAt(0) == '?' ? GdlType.VARIABLE : GdlType.CONSTANT;
+		return append(parentNode, symbols.getId(atom), type);
+	}
+
+	private int append(int parentNode, int symbolId, GdlType type) {
+		if (size == symbol.length) {
+			int capacity = symbol.length * 2;
+			symbol = Arrays.copyOf(symbol, capacity);
+			kind = Arrays.copyOf(kind, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+		}
+		int node = size++;
+		symbol[node] = symbolId;
+		kind[node] = type.ordinal();
+		parent[node] = parentNode;
+		firstChild[node] = NONE;
+		nextSibling[node] = NONE;
+
+		if (parentNode != NONE) {
+			if (firstChild[parentNode] == NONE) {
+				firstChild[parentNode] = node;
+				if (kind[parentNode] == GdlType.CONSTANT.ordinal()) {
+					kind[parentNode] = GdlType.FUNCTION.ordinal();
+				}
+			} else {
+				// Pre-order: the last child of parentNode is the ancestor of
+				// the previous node whose parent is parentNode
+				int lastChild = node - 1;
+				while (parent[lastChild] != parentNode) {
+					lastChild = parent[lastChild];
+				}
+				nextSibling[lastChild] = node;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Release unused capacity once the tree is complete
+	 */
+	public void trimToSize() {
+		symbol = Arrays.copyOf(symbol, size);
+		kind = Arrays.copyOf(kind, size);
+		parent = Arrays.copyOf(parent, size);
+		firstChild = Arrays.copyOf(firstChild, size);
+		nextSibling = Arrays.copyOf(nextSibling, size);
+	}
+
+	/**
+	 * @return number of nodes including the root
+	 */
+	public int size() {
+		return size;
+	}
+
+	public SymbolTable getSymbolTable() {
+		return symbols;
+	}
+
+	public int getSymbolId(int node) {
+		return symbol[node];
+	}
+
+	public GdlType getType(int node) {
+		return TYPES[kind[node]];
+	}
+
+	public String getAtom(int node) {
+		switch (TYPES[kind[node]]) {
+		case ROOT:
+			return "";
+		case CLAUSE:
+			return GdlNode.CLAUSE;
+		default:
+			return symbols.getSymbol(symbol[node]);
+		}
+	}
+
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	public int getFirstChild(int node) {
+		return firstChild[node];
+	}
+
+	public int getNextSibling(int node) {
+		return nextSibling[node];
+	}
+
+	public int getChildCount(int node) {
+		int count = 0;
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @param node
+	 * @param index
+	 * @return the index'th child of node or NONE
+	 */
+	public int getChild(int node, int index) {
+		int child = firstChild[node];
+		for (int i = 0; i < index && child != NONE; i++) {
+			child = nextSibling[child];
+		}
+		return child;
+	}
+
+	/**
+	 * The sub-tree rooted at node is the range [node, getSubtreeEnd(node))
+	 *
+	 * @param node
+	 * @return first index after the sub-tree
+	 */
+	public int getSubtreeEnd(int node) {
+		while (node != NONE && nextSibling[node] == NONE) {
+			node = parent[node];
+		}
+		return node == NONE ? size : nextSibling[node];
+	}
+
+	/**
+	 * @param node
+	 * @return true if there is a variable in the sub-tree rooted at node
+	 */
+	public boolean hasVariable(int node) {
+		int end = getSubtreeEnd(node);
+		for (int i = node; i < end; i++) {
+			if (kind[i] == GdlType.VARIABLE.ordinal()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return cursor on the root node
+	 */
+	public Cursor getRoot() {
+		return new Cursor(ROOT);
+	}
+
+	/**
+	 * @param node
+	 * @return cursor on node
+	 */
+	public Cursor getNode(int node) {
+		return new Cursor(node);
+	}
+
+	private void appendTo(StringBuilder sb, int node) {
+		if (node == ROOT) {
+			for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+				appendTo(sb, child);
+				sb.append(System.lineSeparator());
+			}
+			return;
+		}
+		boolean brackets = firstChild[node] != NONE;
+		if (brackets) {
+			sb.append('(');
+		}
+		sb.append(getAtom(node));
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			sb.append(' ');
+			appendTo(sb, child);
+		}
+		if (brackets) {
+			sb.append(')');
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		appendTo(sb, ROOT);
+		return sb.toString();
+	}
+
+	/**
+	 * Read only view of a node in a GdlTree. Cursors hold nothing but the
+	 * index so they can be created and dropped freely while walking the tree.
+	 * Lists returned by getChildren() are snapshots, changing them doesn't
+	 * change the tree.
+	 *
+	 * @author vedantds
+	 *
+	 */
+	public final class Cursor implements GdlNode {
+		private final int node;
+
+		private Cursor(int node) {
+			this.node = node;
+		}
+
+		/**
+		 * @return index of the node in the tree
+		 */
+		public int getIndex() {
+			return node;
+		}
+
+		/**
+		 * @return the tree the node belongs to
+		 */
+		public GdlTree getTree() {
+			return GdlTree.this;
+		}
+
+		@Override
+		public String getAtom() {
+			return GdlTree.this.getAtom(node);
+		}
+
+		@Override
+		public int getSymbolId() {
+			return symbol[node];
+		}
+
+		@Override
+		public GdlType getType() {
+			return TYPES[kind[node]];
+		}
+
+		@Override
+		public GdlNode getParent() {
+			return parent[node] == NONE ? null : new Cursor(parent[node]);
+		}
+
+		@Override
+		public ArrayList<GdlNode> getChildren() {
+			ArrayList<GdlNode> children = new ArrayList<GdlNode>(getChildCount(node));
+			for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+				children.add(new Cursor(child));
+			}
+			return children;
+		}
+
+		@Override
+		public GdlNode getChild(int index) {
+			int child = GdlTree.this.getChild(node, index);
+			if (child == NONE) {
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+			return new Cursor(child);
+		}
+
+		/**
+		 * Pre-order walk over the contiguous range of the sub-tree, same order
+		 * as the iterators of the object tree
+		 */
+		@Override
+		public Iterator<GdlNode> iterator() {
+			final int end = getSubtreeEnd(node);
+			return new Iterator<GdlNode>() {
+				private int next = node;
+
+				@Override
+				public boolean hasNext() {
+					return next < end;
+				}
+
+				@Override
+				public GdlNode next() {
+					if (next >= end) {
+						throw new NoSuchElementException();
+					}
+					return new Cursor(next++);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			appendTo(sb, node);
+			return sb.toString();
+		}
+
+		@Override
+		public int hashCode() {
+			return getAtom().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Cursor && ((Cursor) obj).getTree() == GdlTree.this && ((Cursor) obj).node == node) {
+				return true;
+			}
+			return obj != null && this.toString().equals(obj.toString());
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package util.grammar;
+
+/**
+ * Callback for walking a parse tree in pre-order with
+ * GdlNodeIterator.walk(GdlNode, GdlVisitor).
+ *
+ * @author vedantds
+ *
+ */
+public interface GdlVisitor {
+
+	/**
+	 * @param node the node being visited
+	 * @return true to continue the walk, false to stop it
+	 */
+	public boolean visit(GdlNode node);
+}
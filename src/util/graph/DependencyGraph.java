@@ -1,16 +1,21 @@
 package util.graph;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import util.GdlParser;
+import util.SymbolTable;
 import util.grammar.GdlNode;
 
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 
 /**
  * @author vedantds
@@ -20,6 +25,7 @@ public class DependencyGraph {
 	private final Map<String, ArrayList<String>> adjacencyMap;
 	private final Map<String, Integer> stratumMap;
 	private final Set<String> staticSet;
+	private final SymbolTable symbols;
 
 	private final boolean SYNCHRONIZED_COLLECTIONS = false;
 
@@ -27,6 +33,14 @@ public class DependencyGraph {
 	 * 
 	 */
 	public DependencyGraph() {
+		this(new SymbolTable());
+	}
+
+	/**
+	 * @param symbols symbol table of the translation this graph belongs to
+	 */
+	public DependencyGraph(SymbolTable symbols) {
+		this.symbols = symbols;
 		if (SYNCHRONIZED_COLLECTIONS) {
 			adjacencyMap = Collections.synchronizedMap(new HashMap<String, ArrayList<String>>());
 			stratumMap = Collections.synchronizedMap(new HashMap<String, Integer>());
@@ -51,7 +65,7 @@ public class DependencyGraph {
 	 */
 	public void addTerm(String term) {
 		if (!hasTerm(term)) {
-			adjacencyMap.put(term.intern(), new ArrayList<String>());
+			adjacencyMap.put(symbols.canonical(term), new ArrayList<String>());
 		}
 	}
 
@@ -99,8 +113,49 @@ public class DependencyGraph {
 			addTerm(toTerm);
 		}
 		if (!getNeighbours(fromTerm).contains(toTerm)) {
-			getNeighbours(fromTerm).add(toTerm.intern());
+			getNeighbours(fromTerm).add(symbols.canonical(toTerm));
+		}
+	}
+
+	/**
+	 * Terms that depend on one of the given terms, directly or through other
+	 * terms, including the given terms that are in the graph
+	 * 
+	 * @param terms
+	 * @return the dependent terms
+	 */
+	public Set<String> getDependents(Collection<String> terms) {
+		Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+		for (Map.Entry<String, ArrayList<String>> entry : adjacencyMap.entrySet()) {
+			for (String to : entry.getValue()) {
+				List<String> from = dependents.get(to);
+				if (from == null) {
+					from = new ArrayList<String>();
+					dependents.put(to, from);
+				}
+				from.add(entry.getKey());
+			}
+		}
+
+		Set<String> result = new HashSet<String>();
+		Deque<String> queue = new ArrayDeque<String>();
+		for (String term : terms) {
+			if (hasTerm(term) && result.add(term)) {
+				queue.add(term);
+			}
+		}
+		while (!queue.isEmpty()) {
+			List<String> from = dependents.get(queue.poll());
+			if (from == null) {
+				continue;
+			}
+			for (String term : from) {
+				if (result.add(term)) {
+					queue.add(term);
+				}
+			}
 		}
+		return result;
 	}
 
 	/**
@@ -167,12 +222,12 @@ public class DependencyGraph {
 				&& !child.substring(child.length() - 4).equals(GdlParser.OLD_SUFFIX)) {
 			adjacencyMap.get(node).remove(child);
 			addEdge(node, child + GdlParser.OLD_SUFFIX);
-			stratumMap.put((child + GdlParser.OLD_SUFFIX).intern(), 0);
+			stratumMap.put(symbols.canonical(child + GdlParser.OLD_SUFFIX), 0);
 		}
 		ArrayList<String> grandChildList = adjacencyMap.get(child);
 		adjacencyMap.put(child, new ArrayList<String>());
 		for (String grandChild : grandChildList) {
-			adjacencyMap.get(child).add(grandChild.intern());
+			adjacencyMap.get(child).add(symbols.canonical(grandChild));
 			addOldValueForSees(child, grandChild);
 		}
 	}
@@ -236,7 +291,7 @@ public class DependencyGraph {
 					for (String to : bodyList) {
 						if (oldifyList.contains(to)) {
 							addEdge(from, to + GdlParser.OLD_SUFFIX);
-							stratumMap.put((to + GdlParser.OLD_SUFFIX).intern(), 0);
+							stratumMap.put(symbols.canonical(to + GdlParser.OLD_SUFFIX), 0);
 						} else {
 							addEdge(from, to);
 						}
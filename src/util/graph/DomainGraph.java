@@ -1,33 +1,114 @@
 package util.graph;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import util.SymbolTable;
 import util.grammar.GdlNode;
 import util.grammar.GdlType;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Collections;
-
 /**
+ * Graph of the argument positions of a game description, used to find the
+ * domain of every variable.
+ *
+ * Terms are registered as dense int nodes identified by (symbol id, arity),
+ * with the symbol id taken from the symbol table of the translation. Nodes
+ * are found through arrays indexed by symbol id and arity and edges are kept
+ * in primitive int sets, so adding an edge between known terms allocates
+ * nothing. Functions and formulas are registered with arity 0 and their
+ * function arity, like DomainGraph.Term.
+ *
  * @author vedantds
  *
  */
 public class DomainGraph {
-	private Map<Term, Set<Term>> adjacencyMap;
-	
-	private boolean SYNCHRONIZED_COLLECTIONS = false;
+	private final static int NONE = -1;
+
+	private final SymbolTable symbols;
+	// Node of (symbol id, arity) plus one, 0 if there is no node
+	private int[][] nodeIndex;
+	private Term[] terms;
+	private IntSet[] adjacency;
+	private int numNodes;
+	private final int distinct;
+	// Domains of every term indexed by arity, null until the first getDomain
+	// after the graph has changed
+	private volatile Map<String, Set<Term>[]> domains;
+	// Same domains as sets of constant nodes by node, written before domains
+	private BitSet[] domainBits;
 
 	/**
 	 * 
 	 */
 	public DomainGraph() {
-		if (SYNCHRONIZED_COLLECTIONS) {
-			adjacencyMap = Collections.synchronizedMap(new HashMap<Term, Set<Term>>());
-		} else {
-			adjacencyMap = new HashMap<Term, Set<Term>>();
+		this(new SymbolTable());
+	}
+
+	/**
+	 * @param symbols symbol table of the translation this graph belongs to
+	 */
+	public DomainGraph(SymbolTable symbols) {
+		this.symbols = symbols;
+		this.nodeIndex = new int[Math.max(symbols.size(), 16)][];
+		this.terms = new Term[64];
+		this.adjacency = new IntSet[64];
+		this.numNodes = 0;
+		this.distinct = symbols.getId(GdlNode.DISTINCT);
+	}
+
+	/**
+	 * @return the symbol table used for the names of terms
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbols;
+	}
+
+	/**
+	 * @param symbolId
+	 * @param arity
+	 * @return node of the term or NONE
+	 */
+	private int findNode(int symbolId, int arity) {
+		if (symbolId < 0 || symbolId >= nodeIndex.length) {
+			return NONE;
+		}
+		int[] arities = nodeIndex[symbolId];
+		if (arities == null || arity >= arities.length) {
+			return NONE;
+		}
+		return arities[arity] - 1;
+	}
+
+	private int findNode(String term, int arity) {
+		return findNode(symbols.lookup(term), arity);
+	}
+
+	/**
+	 * Register a new node, the caller has checked it doesn't exist
+	 */
+	private int newNode(int symbolId, int arity, Term term) {
+		if (symbolId >= nodeIndex.length) {
+			nodeIndex = Arrays.copyOf(nodeIndex, Math.max(symbolId + 1, nodeIndex.length * 2));
 		}
+		int[] arities = nodeIndex[symbolId];
+		if (arities == null || arity >= arities.length) {
+			arities = arities == null ? new int[arity + 1] : Arrays.copyOf(arities, arity + 1);
+			nodeIndex[symbolId] = arities;
+		}
+		if (numNodes == terms.length) {
+			terms = Arrays.copyOf(terms, numNodes * 2);
+			adjacency = Arrays.copyOf(adjacency, numNodes * 2);
+		}
+		int node = numNodes++;
+		terms[node] = term;
+		adjacency[node] = new IntSet();
+		arities[arity] = node + 1;
+		return node;
 	}
 
 	/**
@@ -36,7 +117,7 @@ public class DomainGraph {
 	 * @return
 	 */
 	public boolean hasTerm(String term, int arity) {
-		return adjacencyMap.containsKey(new Term(term, arity));
+		return findNode(term, arity) != NONE;
 	}
 
 	/**
@@ -45,14 +126,23 @@ public class DomainGraph {
 	 * @return
 	 */
 	public Set<Term> getNeighbours(String term, int arity) {
-		if (hasTerm(term, arity)) {
-			return adjacencyMap.get(new Term(term, arity));
-		} else {
+		int node = findNode(term, arity);
+		if (node == NONE) {
 			return Collections.emptySet();
 		}
+		Set<Term> neighbours = new HashSet<Term>();
+		IntSet edges = adjacency[node];
+		for (int i = 0; i < edges.size(); i++) {
+			neighbours.add(terms[edges.get(i)]);
+		}
+		return neighbours;
 	}
 
 	/**
+	 * Constants and functions that can appear at an argument position. All
+	 * domains are computed together the first time they are needed, after
+	 * that this is a lookup. The returned set is unmodifiable and shared.
+	 * 
 	 * @param term
 	 * @param arity
 	 * @return
@@ -61,30 +151,193 @@ public class DomainGraph {
 		if (term.equals(GdlNode.DISTINCT)) {
 			return Collections.emptySet();
 		}
-		
-		HashSet<Term> domain = new HashSet<Term>();
-		Term termObj = new Term(term, arity);
-
-		// TODO: allow for dependency to be a complex term
-		for (Term dependency : adjacencyMap.get(termObj)) {
-			//if (dependency.getTerm().equals(GdlNode.DISTINCT)) {
-			//	continue;
-			//} else 
-			if (dependency.getArity() == 0 && !domain.contains(dependency)) {
-				domain.add(dependency);
-			} else {
-				if (!dependency.visited) {
-					dependency.visited = true;
-					for (Term subTerm : getDomain(dependency.getTerm(), dependency.getArity())) {
-						if (!domain.contains(subTerm)) {
-							domain.add(subTerm);
-						}
+		Map<String, Set<Term>[]> table = domains;
+		if (table == null) {
+			table = computeDomains();
+		}
+		Set<Term>[] termDomains = table.get(term);
+		if (termDomains == null || arity >= termDomains.length || termDomains[arity] == null) {
+			return Collections.emptySet();
+		}
+		return termDomains[arity];
+	}
+
+	/**
+	 * Same as getDomain(String, int) with the domain as a set of the nodes of
+	 * its constants and functions, so domains can be intersected a word at a
+	 * time. getDomainTerm(int) gives the term of a node. The returned set is a
+	 * copy.
+	 * 
+	 * @param term
+	 * @param arity
+	 * @return
+	 */
+	public BitSet getDomainBits(String term, int arity) {
+		int node = findNode(term, arity);
+		if (node == NONE || term.equals(GdlNode.DISTINCT)) {
+			return new BitSet();
+		}
+		if (domains == null) {
+			computeDomains();
+		}
+		return (BitSet) domainBits[node].clone();
+	}
+
+	/**
+	 * @param node
+	 *            a node set in a domain from getDomainBits(String, int)
+	 * @return
+	 */
+	public Term getDomainTerm(int node) {
+		return terms[node];
+	}
+
+	/**
+	 * Domain of a term is every constant or function reachable from it
+	 * through argument positions. Terms in a strongly connected component
+	 * reach the same constants, so the components are found with Tarjan's
+	 * algorithm and each gets one domain, built from its own edges and the
+	 * domains of the components it points to, which Tarjan's algorithm
+	 * completes first.
+	 * 
+	 * @return table of domains by term and arity
+	 */
+	private synchronized Map<String, Set<Term>[]> computeDomains() {
+		if (domains != null) {
+			return domains;
+		}
+
+		int[][] successors = new int[numNodes][];
+		for (int i = 0; i < numNodes; i++) {
+			IntSet edges = adjacency[i];
+			int[] next = new int[edges.size()];
+			int numNext = 0;
+			if (!isDistinct(i)) {
+				for (int j = 0; j < edges.size(); j++) {
+					int to = edges.get(j);
+					// distinct has no domain so nothing is reached through it
+					if (terms[to].getArity() != 0 && !isDistinct(to)) {
+						next[numNext++] = to;
+					}
+				}
+			}
+			successors[i] = Arrays.copyOf(next, numNext);
+		}
+
+		// Iterative Tarjan, callStack and callEdge replace the recursion
+		Set<Term>[] nodeDomains = newDomains(numNodes);
+		BitSet[] nodeBits = new BitSet[numNodes];
+		int[] order = new int[numNodes];
+		int[] lowLink = new int[numNodes];
+		boolean[] onStack = new boolean[numNodes];
+		int[] stack = new int[numNodes];
+		int stackSize = 0;
+		int[] callStack = new int[numNodes];
+		int[] callEdge = new int[numNodes];
+		int counter = 0;
+		Arrays.fill(order, -1);
+
+		for (int root = 0; root < numNodes; root++) {
+			if (order[root] != -1) {
+				continue;
+			}
+			int depth = 0;
+			callStack[0] = root;
+			callEdge[0] = 0;
+			order[root] = lowLink[root] = counter++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (depth >= 0) {
+				int node = callStack[depth];
+				if (callEdge[depth] < successors[node].length) {
+					int next = successors[node][callEdge[depth]++];
+					if (order[next] == -1) {
+						order[next] = lowLink[next] = counter++;
+						stack[stackSize++] = next;
+						onStack[next] = true;
+						depth++;
+						callStack[depth] = next;
+						callEdge[depth] = 0;
+					} else if (onStack[next]) {
+						lowLink[node] = Math.min(lowLink[node], order[next]);
+					}
+					continue;
+				}
+				if (lowLink[node] == order[node]) {
+					// node is the root of a component, its members are above it
+					int first = stackSize - 1;
+					while (stack[first] != node) {
+						first--;
 					}
-					dependency.visited = false;
+					Set<Term> domain = new HashSet<Term>();
+					BitSet bits = new BitSet();
+					for (int i = stackSize - 1; i >= first; i--) {
+						addDomain(domain, bits, stack[i], nodeDomains, nodeBits);
+					}
+					domain = Collections.unmodifiableSet(domain);
+					for (int i = first; i < stackSize; i++) {
+						onStack[stack[i]] = false;
+						nodeDomains[stack[i]] = domain;
+						nodeBits[stack[i]] = bits;
+					}
+					stackSize = first;
+				}
+				depth--;
+				if (depth >= 0) {
+					int parent = callStack[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
 				}
 			}
 		}
-		return domain;
+
+		Map<String, Set<Term>[]> table = new HashMap<String, Set<Term>[]>();
+		for (int i = 0; i < numNodes; i++) {
+			Term node = terms[i];
+			Set<Term>[] termDomains = table.get(node.getTerm());
+			if (termDomains == null || node.getArity() >= termDomains.length) {
+				Set<Term>[] grown = newDomains(node.getArity() + 1);
+				if (termDomains != null) {
+					System.arraycopy(termDomains, 0, grown, 0, termDomains.length);
+				}
+				termDomains = grown;
+				table.put(node.getTerm(), termDomains);
+			}
+			termDomains[node.getArity()] = nodeDomains[i];
+		}
+		domainBits = nodeBits;
+		domains = Collections.unmodifiableMap(table);
+		return domains;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Set<Term>[] newDomains(int length) {
+		return new Set[length];
+	}
+
+	/**
+	 * Add the constants a term points to and the domains of the terms it
+	 * points to, in the order of its edges. Domains of terms in the same
+	 * component are still null, they are covered by their own edges.
+	 */
+	private void addDomain(Set<Term> domain, BitSet bits, int node, Set<Term>[] nodeDomains, BitSet[] nodeBits) {
+		if (isDistinct(node)) {
+			return;
+		}
+		IntSet edges = adjacency[node];
+		for (int i = 0; i < edges.size(); i++) {
+			int to = edges.get(i);
+			if (terms[to].getArity() == 0) {
+				domain.add(terms[to]);
+				bits.set(to);
+			} else if (!isDistinct(to) && nodeDomains[to] != null) {
+				domain.addAll(nodeDomains[to]);
+				bits.or(nodeBits[to]);
+			}
+		}
+	}
+
+	private boolean isDistinct(int node) {
+		return terms[node].getTerm() == symbols.getSymbol(distinct);
 	}
 
 	/**
@@ -93,8 +346,8 @@ public class DomainGraph {
 	public Map<Term, Set<Term>> getMap() {
 		Map<Term, Set<Term>> domainMap = new HashMap<Term, Set<Term>>();
 
-		for (Term term : adjacencyMap.keySet()) {
-			domainMap.put(term, getDomain(term.getTerm(), term.getArity()));
+		for (int i = 0; i < numNodes; i++) {
+			domainMap.put(terms[i], getDomain(terms[i].getTerm(), terms[i].getArity()));
 		}
 
 		return domainMap;
@@ -105,10 +358,16 @@ public class DomainGraph {
 	 * @param arity
 	 */
 	public void addTerm(String term, int arity) {
-		Term newTerm = new Term(term, arity);
-		if (!adjacencyMap.containsKey(newTerm)) {
-			adjacencyMap.put(newTerm, new HashSet<Term>());
+		addTerm(symbols.getId(term), arity);
+	}
+
+	private int addTerm(int symbolId, int arity) {
+		int node = findNode(symbolId, arity);
+		if (node == NONE) {
+			domains = null;
+			node = newNode(symbolId, arity, new Term(symbols.getSymbol(symbolId), arity));
 		}
+		return node;
 	}
 
 	/**
@@ -116,18 +375,7 @@ public class DomainGraph {
 	 * @param functionArity
 	 */
 	public void addFunction(String term, int functionArity) {
-		Term function = new Term(term, functionArity, true, GdlType.FUNCTION);
-		if (!adjacencyMap.containsKey(function)) {
-			adjacencyMap.put(function, new HashSet<Term>());
-		} else {
-			adjacencyMap.put(function, adjacencyMap.get(function));
-		}
-		for (int i = 1; i <= functionArity; i++) {
-			Term parameter = new Term(term, i);
-			if (!adjacencyMap.containsKey(parameter)) {
-				addTerm(term, i);
-			}
-		}
+		addFunctionNode(symbols.getId(term), functionArity, GdlType.FUNCTION);
 	}
 
 	/**
@@ -135,17 +383,44 @@ public class DomainGraph {
 	 * @param formulaArity
 	 */
 	public void addFormula(String term, int formulaArity) {
-		Term formula = new Term(term, formulaArity, true, GdlType.FORMULA);
-		if (!adjacencyMap.containsKey(formula)) {
-			adjacencyMap.put(formula, new HashSet<Term>());
+		addFunctionNode(symbols.getId(term), formulaArity, GdlType.FORMULA);
+	}
+
+	/**
+	 * Same as addFunction(String, int) and addFormula(String, int) for a
+	 * symbol id from the symbol table of this graph
+	 * 
+	 * @param symbolId
+	 * @param functionArity
+	 * @param type
+	 *            FUNCTION or FORMULA
+	 */
+	public void addFunction(int symbolId, int functionArity, GdlType type) {
+		addFunctionNode(symbolId, functionArity, type);
+	}
+
+	/**
+	 * Register a function or formula and its argument positions. Functions
+	 * share the node of a constant with the same name, which keeps the
+	 * largest function arity.
+	 */
+	private int addFunctionNode(int symbolId, int functionArity, GdlType type) {
+		domains = null;
+		int node = findNode(symbolId, 0);
+		if (node == NONE) {
+			node = newNode(symbolId, 0, new Term(symbols.getSymbol(symbolId), functionArity, true, type));
 		} else {
-			adjacencyMap.put(formula, adjacencyMap.get(formula));
+			mergeFunctionArity(node, functionArity);
 		}
-		for (int i = 1; i <= formulaArity; i++) {
-			Term parameter = new Term(term, i);
-			if (!adjacencyMap.containsKey(parameter)) {
-				addTerm(term, i);
-			}
+		for (int i = 1; i <= functionArity; i++) {
+			addTerm(symbolId, i);
+		}
+		return node;
+	}
+
+	private void mergeFunctionArity(int node, int functionArity) {
+		if (functionArity > terms[node].functionArity) {
+			terms[node].functionArity = functionArity;
 		}
 	}
 
@@ -157,26 +432,34 @@ public class DomainGraph {
 	 * @param type
 	 */
 	public void addEdge(String fromTerm, int fromArity, String toTerm, int toArity, GdlType type) {
-		boolean toFunction = false;
-		if (type != GdlType.CONSTANT) {
-			toFunction = true;
-		}
-		Term from = new Term(fromTerm, fromArity);
-		Term to = new Term(toTerm, toArity, toFunction, type);
-		if (!adjacencyMap.containsKey(from)) {
-			addTerm(fromTerm, fromArity);
-		}
-		if (!adjacencyMap.containsKey(to)) {
-			if (type == GdlType.FUNCTION) {
-				addFunction(toTerm, toArity);
-			} else if (type == GdlType.FORMULA) {
-				addFormula(toTerm, toArity);
+		addEdge(symbols.getId(fromTerm), fromArity, symbols.getId(toTerm), toArity, type);
+	}
+
+	/**
+	 * Same as addEdge(String, int, String, int, GdlType) for symbol ids from
+	 * the symbol table of this graph
+	 * 
+	 * @param fromSymbol
+	 * @param fromArity
+	 * @param toSymbol
+	 * @param toArity
+	 * @param type
+	 */
+	public void addEdge(int fromSymbol, int fromArity, int toSymbol, int toArity, GdlType type) {
+		int from = addTerm(fromSymbol, fromArity);
+		int to;
+		if (type == GdlType.CONSTANT) {
+			to = addTerm(toSymbol, toArity);
+		} else {
+			to = findNode(toSymbol, 0);
+			if (to == NONE) {
+				to = addFunctionNode(toSymbol, toArity, type);
 			} else {
-				addTerm(toTerm, toArity);
+				mergeFunctionArity(to, toArity);
 			}
 		}
-		if (!adjacencyMap.get(from).contains(to)) {
-			adjacencyMap.get(from).add(to);
+		if (adjacency[from].add(to)) {
+			domains = null;
 		}
 	}
 
@@ -205,7 +488,8 @@ public class DomainGraph {
 
 		dot.append("strict digraph {");
 
-		for (Term node : adjacencyMap.keySet()) {
+		for (int n = 0; n < numNodes; n++) {
+			Term node = terms[n];
 			dot.append(System.lineSeparator() + "d_" + dotEncoded(node.getTerm()));
 			if (node.getArity() > 0) {
 				dot.append("_" + node.getArity() + " [label=\"" + dotEncoded(node.getTerm()) + "[" + node.getArity()
@@ -235,10 +519,13 @@ public class DomainGraph {
 			}
 		}
 
-		for (Term from : adjacencyMap.keySet()) {
-			if (adjacencyMap.get(from).size() > 0) {
+		for (int n = 0; n < numNodes; n++) {
+			Term from = terms[n];
+			IntSet edges = adjacency[n];
+			if (edges.size() > 0) {
 				dot.append(System.lineSeparator() + "  d_" + dotEncoded(from.getTerm()) + "_" + from.getArity() + " -> { ");
-				for (Term to : adjacencyMap.get(from)) {
+				for (int i = 0; i < edges.size(); i++) {
+					Term to = terms[edges.get(i)];
 					dot.append("d_" + dotEncoded(to.getTerm()));
 
 					if (to.getFunctionArity() > 0) {
@@ -263,10 +550,11 @@ public class DomainGraph {
 	 * 
 	 */
 	public void printGraph() {
-		for (Term from : adjacencyMap.keySet()) {
-			System.out.println("From : " + from.toString());
-			for (Term to : adjacencyMap.get(from)) {
-				System.out.println("  To : " + to.toString());
+		for (int n = 0; n < numNodes; n++) {
+			System.out.println("From : " + terms[n].toString());
+			IntSet edges = adjacency[n];
+			for (int i = 0; i < edges.size(); i++) {
+				System.out.println("  To : " + terms[edges.get(i)].toString());
 			}
 		}
 	}
@@ -286,7 +574,8 @@ public class DomainGraph {
 	 * 
 	 */
 	public void printGraphDomains() {
-		for (Term from : adjacencyMap.keySet()) {
+		for (int n = 0; n < numNodes; n++) {
+			Term from = terms[n];
 			System.out.println("From : " + from.toString());
 			for (Term to : getDomain(from.getTerm(), from.getArity())) {
 				System.out.println("  To : " + to.toString());
@@ -294,6 +583,60 @@ public class DomainGraph {
 		}
 	}
 
+	/**
+	 * Set of node indices which remembers insertion order. Open addressing
+	 * over an int table holding index + 1, 0 marks a free slot.
+	 */
+	private static final class IntSet {
+		private int[] table = new int[8];
+		private int[] values = new int[4];
+		private int size = 0;
+
+		boolean add(int value) {
+			int mask = table.length - 1;
+			int slot = mix(value) & mask;
+			while (table[slot] != 0) {
+				if (table[slot] == value + 1) {
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = value + 1;
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+			if (size * 2 > table.length) {
+				rehash();
+			}
+			return true;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int get(int i) {
+			return values[i];
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int i = 0; i < size; i++) {
+				int slot = mix(values[i]) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = values[i] + 1;
+			}
+		}
+
+		private static int mix(int value) {
+			return value * 0x9E3779B9;
+		}
+	}
+
 	/**
 	 * @author vedantds
 	 *
@@ -302,7 +645,6 @@ public class DomainGraph {
 		private String term;
 		private int arity;
 		private int functionArity;
-		boolean visited;
 		private GdlType type;
 
 		/**
@@ -385,7 +727,7 @@ public class DomainGraph {
 		 */
 		@Override
 		public int hashCode() {
-			return toString().hashCode();
+			return 31 * term.hashCode() + arity;
 		}
 
 		/* (non-Javadoc)
@@ -1,7 +1,12 @@
 import static org.junit.Assert.assertThat;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
@@ -11,9 +16,14 @@ import static org.hamcrest.CoreMatchers.*;
 import org.junit.Test;
 
 import prover.GdlRuleSet;
+import prover.Model;
+import prover.SpillingRuleSet;
+import util.GdlBinaryFormat;
 import util.GdlParser;
+import util.SymbolTable;
 import util.grammar.GDLSyntaxException;
 import util.grammar.Gdl;
+import util.graph.DomainGraph;
 
 public class GdlRuleSetTest {
 	String mhGdlPath = "res/gdlii/MontyHall.gdl";
@@ -43,6 +53,22 @@ public class GdlRuleSetTest {
 		}
 	}
 
+	@Test
+	public void distinctKeepsEarlierClausesTest() throws GDLSyntaxException {
+		String gdl = "(role p1) (init (cell a)) (init (cell b)) (<= (next (cell ?x)) (true (cell ?x))) "
+				+ "(<= covered (true (cell a))) (<= covered (true (cell ?x)) (distinct ?x a))";
+		Gdl root = GdlParser.parseString(gdl);
+		GdlRuleSet structural = GdlParser.groundGdlToRuleSet(root, GdlParser.constructDomainGraph(root));
+		root = GdlParser.parseString(gdl);
+		GdlRuleSet text = new GdlRuleSet(GdlParser.groundGdl(root, GdlParser.constructDomainGraph(root)));
+		for (GdlRuleSet ruleSet : Arrays.asList(structural, text)) {
+			ruleSet.cullVariables(true);
+			assertThat(ruleSet.getRule("covered"), hasItem(Collections.singleton("(true (cell a))")));
+			assertThat(ruleSet.getRule("covered"), hasItem(Collections.singleton("(true (cell b))")));
+			assertThat(ruleSet.getRule("covered").size(), is(2));
+		}
+	}
+
 	@Test
 	public void testGameRulesetTest() throws IOException, URISyntaxException, GDLSyntaxException {
 		Gdl root = GdlParser.parseString(GDL_STRING);
@@ -130,4 +156,166 @@ public class GdlRuleSetTest {
 		assertThat(prover.getRuleSet().get("(better_values 5 5 6 6)").isEmpty(), is(true));
 		assertThat(prover.getRuleSet().get("(better_values 0 0 2 1)").isEmpty(), is(true));
 	}
+
+	@Test
+	public void binaryRuleSetRoundTripTest() throws IOException, GDLSyntaxException {
+		Gdl root = GdlParser.parseString(GDL_STRING);
+		root = GdlParser.groundGdl(root, GdlParser.constructDomainGraph(root));
+		GdlRuleSet ruleSet = new GdlRuleSet(root);
+		ruleSet.cullVariables(true);
+
+		File file = File.createTempFile("ruleset", ".ir");
+		file.deleteOnExit();
+		GdlBinaryFormat.writeRuleSet(ruleSet, new long[] { 1, 2, 3 }, file.getPath());
+		assertThat(GdlBinaryFormat.readKind(file.getPath()), is(GdlBinaryFormat.RULE_SET));
+
+		long[] sizes = new long[3];
+		GdlRuleSet loaded = GdlBinaryFormat.readRuleSet(file.getPath(), new SymbolTable(), sizes);
+		assertThat(sizes[2], is(3L));
+		assertThat(loaded.getRuleSet(), is(ruleSet.getRuleSet()));
+		assertThat(loaded.toGdl(), is(ruleSet.toGdl()));
+	}
+
+	@Test
+	public void cullVariablesTest() {
+		GdlRuleSet ruleSet = new GdlRuleSet(new SymbolTable());
+		ruleSet.joinGroundFact("(a)", null);
+		rule(ruleSet, "(b)", "(a)");
+		rule(ruleSet, "(c)", "(not (a))");
+		rule(ruleSet, "(d)", "(true (x))", "(not (c))");
+		rule(ruleSet, "(e)", "(does p m)");
+		rule(ruleSet, "(f)", "(not (does p m))");
+		rule(ruleSet, "(g)", "(distinct 1 2)", "(true (y))");
+		// b, c, e, f and the distinct
+		assertThat(ruleSet.cullVariables(true), is(5));
+		assertThat(ruleSet.numClausesCulled, is(4));
+		assertThat(ruleSet.numLiteralsCulled, is(4));
+
+		Map<String, Set<Set<String>>> rules = ruleSet.getRuleSet();
+		assertThat(rules.get("(b)").isEmpty(), is(true));
+		assertThat(rules.get("(f)").isEmpty(), is(true));
+		assertThat(rules.get("(distinct 1 2)").isEmpty(), is(true));
+		assertThat(rules.containsKey("(c)"), is(false));
+		// No legal for the does
+		assertThat(rules.containsKey("(e)"), is(false));
+		assertThat(rules.get("(d)"), is(Collections.singleton(Collections.singleton("(true (x))"))));
+		assertThat(rules.get("(g)"), is(Collections.singleton(Collections.singleton("(true (y))"))));
+		// Partners of true and does atoms are looked up, never made up
+		assertThat(ruleSet.getSymbolTable().lookup("(next (y))"), is(SymbolTable.NO_SYMBOL));
+		assertThat(ruleSet.getSymbolTable().lookup("(legal p m)"), is(SymbolTable.NO_SYMBOL));
+
+		Set<String> model = ruleSet.generateModel(new Model(Collections.singleton("(next (x))"))).getModel();
+		assertThat(model, hasItems("(true (x))", "(a)", "(b)", "(d)"));
+		assertThat(model, not(hasItem("(g)")));
+	}
+
+	@Test
+	public void minimizeRulesTest() {
+		GdlRuleSet ruleSet = new GdlRuleSet(new SymbolTable());
+		// Subsumed
+		rule(ruleSet, "(h)", "(true (a))", "(true (b))");
+		rule(ruleSet, "(h)", "(true (a))");
+		// Resolved
+		rule(ruleSet, "(m)", "(true (a))", "(true (b))");
+		rule(ruleSet, "(m)", "(true (a))", "(not (true (b)))");
+		// Duplicate literal once the double negation cancels
+		rule(ruleSet, "(d)", "(true (c))", "(not (not (true (c))))");
+		// Resolved to a fact, which decides (g)
+		rule(ruleSet, "(f)", "(true (e))");
+		rule(ruleSet, "(f)", "(not (true (e)))");
+		rule(ruleSet, "(g)", "(f)", "(true (z))");
+		rule(ruleSet, "(k)", "(true (a))", "(true (z))");
+		// Resolvable only once culling drops the fact (f)
+		rule(ruleSet, "(q)", "(f)", "(true (y))");
+		rule(ruleSet, "(q)", "(not (true (y)))");
+		ruleSet.cullVariables(true);
+		assertThat(ruleSet.minimizeRules(), is(5));
+
+		Set<Set<String>> trueA = Collections.singleton(Collections.singleton("(true (a))"));
+		Map<String, Set<Set<String>>> rules = ruleSet.getRuleSet();
+		assertThat(rules.get("(h)"), is(trueA));
+		assertThat(rules.get("(m)"), is(trueA));
+		assertThat(rules.get("(d)"), is(Collections.singleton(Collections.singleton("(true (c))"))));
+		assertThat(rules.get("(f)").isEmpty(), is(true));
+		assertThat(rules.get("(g)"), is(Collections.singleton(Collections.singleton("(true (z))"))));
+		assertThat(rules.get("(k)").iterator().next().size(), is(2));
+		assertThat(rules.get("(q)").isEmpty(), is(true));
+	}
+
+	@Test
+	public void generateStratumMapTest() {
+		GdlRuleSet ruleSet = new GdlRuleSet(new SymbolTable());
+		// Deeper than a recursive search could go
+		int depth = 20000;
+		rule(ruleSet, "(p 0)", "(true (s))");
+		for (int i = 1; i < depth; i++) {
+			rule(ruleSet, "(p " + i + ")", "(p " + (i - 1) + ")");
+		}
+		rule(ruleSet, "(next (s))", "(p " + (depth - 1) + ")");
+		// Each next reads the state the other assigns
+		rule(ruleSet, "(next (a))", "(true (b))");
+		rule(ruleSet, "(next (b))", "(true (a))");
+		rule(ruleSet, "(r)", "(true (a))", "(does p m)");
+		ruleSet.generateStratumMap();
+
+		assertThat(ruleSet.getStratum("(p 0)"), is(1));
+		assertThat(ruleSet.getStratum("(p " + (depth - 1) + ")"), is(depth));
+		assertThat(ruleSet.getStratum("(next (s))"), is(depth + 1));
+		assertThat(ruleSet.getStratum("(r)"), is(1));
+		assertThat(ruleSet.getStratum("(true (a))"), is(0));
+		// Only the cycle needs an old copy, which lets the other next come after
+		// the one whose old value it reads
+		assertThat(ruleSet.getOldSet().size(), is(1));
+		String old = ruleSet.getOldSet().iterator().next();
+		String other = old.equals("(next (a))") ? "(next (b))" : "(next (a))";
+		assertThat(old, anyOf(is("(next (a))"), is("(next (b))")));
+		assertThat(ruleSet.getStratum(other) > ruleSet.getStratum(old), is(true));
+		assertThat(ruleSet.getStratum("(next (a))") > ruleSet.getStratum("(r)"), is(true));
+	}
+
+	@Test
+	public void spillingRuleSetTest() throws IOException, URISyntaxException, GDLSyntaxException {
+		SymbolTable symbols = new SymbolTable();
+		Gdl root = GdlParser.parseFile(meierGdlPath, symbols);
+		DomainGraph graph = GdlParser.constructDomainGraph(root, symbols);
+		GdlRuleSet expected = GdlParser.groundGdlToRuleSet(root, graph);
+		GdlParser.GROUND_WITH_TEMP_FILES = true;
+		GdlParser.GROUND_MEMORY_BUDGET = 1 << 16;
+		GdlRuleSet actual;
+		try {
+			actual = GdlParser.groundGdlToRuleSet(root, graph);
+		} finally {
+			GdlParser.GROUND_WITH_TEMP_FILES = false;
+		}
+		assertThat(actual.getRuleSet(), is(expected.getRuleSet()));
+		assertThat(actual.getPredicateSet(), is(expected.getPredicateSet()));
+		assertThat(actual.numRulesUncompressed, is(expected.numRulesUncompressed));
+		assertThat(actual.size(), is(expected.size()));
+
+		// A fact discards the clauses of its head that came before it, also
+		// when they were written to an earlier run
+		SpillingRuleSet ruleSet = new SpillingRuleSet(new SymbolTable(), 0);
+		rule(ruleSet, "(q)", "(p a)");
+		ruleSet.joinGroundFact("(q)", null);
+		rule(ruleSet, "(q)", "(not (p b))");
+		rule(ruleSet, "(r)", "(p a)");
+		ruleSet.joinGroundFact("(r)", null);
+		assertThat(ruleSet.getNumRuns(), is(5));
+		ruleSet.merge();
+		assertThat(ruleSet.getNumRuns(), is(0));
+		assertThat(ruleSet.getRule("(q)").size(), is(1));
+		assertThat(ruleSet.getRule("(q)").iterator().next(), hasItem("(not (p b))"));
+		assertThat(ruleSet.getRule("(r)").isEmpty(), is(true));
+		assertThat(ruleSet.getPredicateSet(), hasItem("(p b)"));
+		assertThat(ruleSet.numRulesUncompressed, is(5));
+	}
+
+	private static void rule(GdlRuleSet ruleSet, String head, String... body) {
+		List<String> positiveBody = new ArrayList<String>();
+		for (String literal : body) {
+			positiveBody.add(literal.startsWith(GdlRuleSet.NOT_PREFIX)
+					? literal.substring(GdlRuleSet.NOT_PREFIX.length(), literal.length() - 1) : literal);
+		}
+		ruleSet.joinGroundRule(head, Arrays.asList(body), positiveBody);
+	}
 }
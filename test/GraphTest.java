@@ -2,6 +2,9 @@ import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.*;
 import org.junit.Test;
@@ -64,4 +67,46 @@ public class GraphTest {
 		DomainGraph graph = GdlParser.constructDomainGraph(tttRoot);
 		assertThat(graph.getDomain("cell", 1).size(), is(3));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void cyclicDomainTest() {
+		DomainGraph domainGraph = new DomainGraph();
+		domainGraph.addEdge("next", 1, "true", 1);
+		domainGraph.addEdge("true", 1, "next", 1);
+		domainGraph.addEdge("true", 1, "step", 0);
+		domainGraph.addEdge("next", 1, "done", 0);
+		domainGraph.addEdge("legal", 1, "next", 1);
+		domainGraph.addEdge("legal", 1, "distinct", 1);
+		domainGraph.addEdge("distinct", 1, "other", 0);
+
+		assertThat(domainGraph.getDomain("next", 1).size(), is(2));
+		assertThat(domainGraph.getDomain("true", 1), is(domainGraph.getDomain("next", 1)));
+		assertThat(domainGraph.getDomain("legal", 1).size(), is(2));
+		// Results are cached until the graph changes
+		assertThat(domainGraph.getDomain("legal", 1), is(sameInstance(domainGraph.getDomain("legal", 1))));
+		domainGraph.addEdge("true", 1, "start", 0);
+		assertThat(domainGraph.getDomain("legal", 1).size(), is(3));
+	}
+
+	@Test
+	public void sharedVariableDomainTest() {
+		GdlNode root = GdlParser.parseString("(index a) (index b) (index c) (mark b) (mark c) (mark d) "
+				+ "(<= (both ?x) (index ?x) (mark ?x)) "
+				+ "(<= (free ?x) (index ?x) (not (mark ?x))) "
+				+ "(<= (seen ?x) (true ?x) (mark ?x))");
+		DomainGraph domainGraph = GdlParser.constructDomainGraph(root);
+
+		assertThat(domainGraph.getDomainBits("index", 1).cardinality(), is(3));
+		// Positive body literals are intersected
+		assertThat(headVariableDomain(root.getChildren().get(6), domainGraph),
+				is(new HashSet<String>(Arrays.asList("b", "c"))));
+		// Negative literals and direct arguments of true are not
+		assertThat(headVariableDomain(root.getChildren().get(7), domainGraph).size(), is(3));
+		assertThat(headVariableDomain(root.getChildren().get(8), domainGraph).size(), is(3));
+	}
+
+	private Set<String> headVariableDomain(GdlNode clause, DomainGraph domainGraph) {
+		String variable = clause.getChildren().get(0).getChildren().get(0).getAtom();
+		return GdlParser.getVariableDomain(variable, clause, domainGraph);
+	}
+}
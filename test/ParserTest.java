@@ -3,10 +3,22 @@ import static org.hamcrest.CoreMatchers.*;
 import org.junit.Test;
 
 import prover.GdlRuleSet;
+import util.GdlBinaryFormat;
+import util.GdlClauseListener;
 import util.GdlParser;
+import util.SymbolTable;
+import util.TranslationCache;
+import util.GdlTokenBuffer;
+import util.GroundingPlan;
+import util.JoinGrounder;
+import util.ParallelGrounder;
 import util.grammar.GDLSyntaxException;
 import util.grammar.GdlNode;
+import util.grammar.GdlNodeFactory;
+import util.grammar.GdlNodeIterator;
+import util.grammar.GdlTree;
 import util.grammar.GdlType;
+import util.grammar.GdlVisitor;
 import util.graph.DependencyGraph;
 import util.graph.DomainGraph;
 import util.graph.DomainGraph.Term;
@@ -17,7 +29,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.net.URISyntaxException;
 
 public class ParserTest {
@@ -109,6 +125,24 @@ public class ParserTest {
 		assertThat(sb.toString(), is(" <= goal ?1_?player 100 true win ?1_?player "));
 	}
 
+	@Test
+	public void visitorStopsAtFirstVariable() {
+		GdlNode root = GdlParser.parseString(testGoalGrounding);
+
+		final StringBuilder sb = new StringBuilder();
+		boolean completed = GdlNodeIterator.walk(root, new GdlVisitor() {
+			@Override
+			public boolean visit(GdlNode node) {
+				sb.append(node.getAtom() + " ");
+				return node.getType() != GdlType.VARIABLE;
+			}
+		});
+		assertThat(completed, is(false));
+		assertThat(sb.toString(), is(" <= goal ?1_?player "));
+		assertThat(GdlParser.isVariableInTree(root), is(true));
+		assertThat(GdlParser.numVariablesInTree(root), is(2));
+	}
+
 	@Test
 	public void loadGameAndConstructParseTree() {
 		try {
@@ -168,6 +202,109 @@ public class ParserTest {
 		}
 	}
 
+	@Test
+	public void mappedTokenizerMatchesReaderTokenizer() throws IOException, URISyntaxException {
+		List<String> tokens = GdlParser.tokenizeFile(testGdlPath);
+		GdlTokenBuffer mappedTokens = GdlTokenBuffer.map(testGdlPath);
+
+		assertThat(mappedTokens.size(), is(tokens.size()));
+		for (int i = 0; i < tokens.size(); i++) {
+			assertThat(mappedTokens.getToken(i), is(tokens.get(i)));
+		}
+		assertThat(GdlParser.expandParseTree(mappedTokens).toString(),
+				is(GdlParser.expandParseTree(tokens).toString()));
+	}
+
+	@Test
+	public void streamParseMatchesParseTree() throws IOException, URISyntaxException, GDLSyntaxException {
+		final List<String> streamedClauses = new ArrayList<String>();
+		GdlParser.streamFile(testGdlPath, new GdlClauseListener() {
+			@Override
+			public void clause(GdlNode clause, int scopeNumber) {
+				assertThat(clause.getParent().getType(), is(GdlType.ROOT));
+				streamedClauses.add(clause.toString());
+			}
+		});
+
+		GdlNode root = GdlParser.parseFile(testGdlPath);
+		assertThat(streamedClauses.size(), is(root.getChildren().size()));
+		for (int i = 0; i < streamedClauses.size(); i++) {
+			assertThat(streamedClauses.get(i), is(root.getChildren().get(i).toString()));
+		}
+	}
+
+	@Test
+	public void symbolTableSharesAtomsAcrossParses() {
+		SymbolTable symbols = new SymbolTable();
+		GdlNode first = GdlParser.parseString(testGoalGrounding, symbols);
+		GdlNode second = GdlParser.parseString(testGoalGrounding, symbols);
+
+		GdlNode firstGoal = first.getChildren().get(0).getChild(0);
+		GdlNode secondGoal = second.getChildren().get(0).getChild(0);
+		assertThat(firstGoal.getSymbolId(), is(symbols.lookup("goal")));
+		assertThat(secondGoal.getSymbolId(), is(firstGoal.getSymbolId()));
+		assertThat(secondGoal.getAtom() == firstGoal.getAtom(), is(true));
+		assertThat(symbols.getSymbol(firstGoal.getSymbolId()), is("goal"));
+		assertThat(symbols.lookup("missing"), is(SymbolTable.NO_SYMBOL));
+	}
+
+	@Test
+	public void groundTermsAreShared() {
+		SymbolTable symbols = new SymbolTable();
+		GdlNode root = GdlParser.parseString(
+				"(init (cell 1 1 b)) (<= (next (cell 1 1 b)) (true (cell 1 1 b)) (true (cell ?x 1 b)))", symbols);
+
+		GdlNode initCell = root.getChildren().get(0).getChild(0);
+		GdlNode rule = root.getChildren().get(1);
+		GdlNode nextCell = rule.getChild(0).getChild(0);
+		GdlNode trueCell = rule.getChild(1).getChild(0);
+		GdlNode variableCell = rule.getChild(2).getChild(0);
+
+		assertThat(nextCell == initCell, is(true));
+		assertThat(trueCell == initCell, is(true));
+		assertThat(variableCell.getChild(1) == initCell.getChild(1), is(true));
+		assertThat(variableCell.equals(initCell), is(false));
+		assertThat(variableCell.getChild(0).getParent() == variableCell, is(true));
+		assertThat(rule.toString(), is("(<= (next (cell 1 1 b)) (true (cell 1 1 b)) (true (cell ?1_?x 1 b)))"));
+	}
+
+	@Test
+	public void compactTreeMatchesParseTree() throws IOException, URISyntaxException {
+		SymbolTable symbols = new SymbolTable();
+		List<String> tokens = GdlParser.tokenizeFile(simpleGdlPath, symbols);
+		GdlNode root = GdlParser.expandParseTree(tokens, symbols);
+		GdlTree tree = GdlParser.expandCompactTree(tokens, symbols);
+		GdlNode compactRoot = tree.getRoot();
+
+		assertThat(compactRoot.toString(), is(root.toString()));
+		List<String> types = new ArrayList<String>();
+		for (GdlNode node : root) {
+			types.add(node.getType() + " " + node.getAtom());
+		}
+		List<String> compactTypes = new ArrayList<String>();
+		for (GdlNode node : compactRoot) {
+			compactTypes.add(node.getType() + " " + node.getAtom());
+		}
+		assertThat(compactTypes, is(types));
+
+		for (int i = 0; i < root.getChildren().size(); i++) {
+			GdlNode clause = root.getChildren().get(i);
+			GdlNode compactClause = compactRoot.getChildren().get(i);
+			assertThat(GdlParser.isVariableInTree(compactClause), is(GdlParser.isVariableInTree(clause)));
+			assertThat(variableAtoms(compactClause), is(variableAtoms(clause)));
+		}
+		assertThat(GdlParser.constructDomainGraph(compactRoot).getMap(),
+				is(GdlParser.constructDomainGraph(root).getMap()));
+	}
+
+	private static Set<String> variableAtoms(GdlNode tree) {
+		Set<String> atoms = new HashSet<String>();
+		for (GdlNode variable : GdlParser.variablesInTree(tree)) {
+			atoms.add(variable.getAtom());
+		}
+		return atoms;
+	}
+
 	@Test
 	public void printParseTreeAsLparse() {
 		try {
@@ -207,4 +344,256 @@ public class ParserTest {
 			e.printStackTrace();
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void binaryTreeRoundTrip() throws IOException, URISyntaxException {
+		SymbolTable symbols = new SymbolTable();
+		GdlNode root = GdlParser.parseFile(testGdlPath, symbols);
+
+		File file = File.createTempFile("tree", ".ir");
+		file.deleteOnExit();
+		GdlBinaryFormat.writeTree(root, file.getPath());
+		GdlNode loaded = GdlBinaryFormat.readTree(file.getPath(), symbols);
+		assertThat(GdlParser.printParseTreeTypes(loaded), is(GdlParser.printParseTreeTypes(root)));
+	}
+
+	@Test
+	public void groundRuleSetFromTokens() throws IOException, URISyntaxException, GDLSyntaxException {
+		List<String> tokens = GdlParser.tokenizeFile(groundedTestGdlPath);
+		GdlRuleSet expected = new GdlRuleSet(GdlParser.expandParseTree(tokens), new SymbolTable());
+		GdlRuleSet ruleSet = GdlParser.expandRuleSet(tokens);
+
+		assertThat(ruleSet, is(notNullValue()));
+		assertThat(ruleSet.getRuleSet(), is(expected.getRuleSet()));
+		assertThat(ruleSet.getPredicateSet(), is(expected.getPredicateSet()));
+		assertThat(ruleSet.numRulesUncompressed, is(expected.numRulesUncompressed));
+
+		// Variables have to go through the grounder
+		assertThat(GdlParser.expandRuleSet(GdlParser.tokenizeFile(testGdlPath)), is(nullValue()));
+	}
+
+	@Test
+	public void groundingPlanEstimate() {
+		GdlNode root = GdlParser.parseString("(index 1) (index 2) (index 3) (mark a) (mark b) "
+				+ "(<= (cell ?x ?y ?m) (index ?x) (index ?y) (mark ?m))");
+		GroundingPlan plan = GroundingPlan.estimate(root, GdlParser.constructDomainGraph(root));
+
+		assertThat(plan.getEntries().size(), is(1));
+		assertThat(plan.getEntries().get(0).getInstances(), is(18L));
+		// Ground clauses count as one instance each
+		assertThat(plan.getTotalInstances(), is(23L));
+		assertThat(plan.getLargest(5).size(), is(1));
+	}
+
+	@Test
+	public void structuralGroundingMatchesText() throws IOException, URISyntaxException, GDLSyntaxException {
+		SymbolTable symbols = new SymbolTable();
+		GdlNode root = GdlParser.parseFile(testGdlPath, symbols);
+		DomainGraph graph = GdlParser.constructDomainGraph(root, symbols);
+		GdlRuleSet expected = new GdlRuleSet(GdlParser.groundGdl(root, graph), new SymbolTable());
+		GdlRuleSet actual = GdlParser.groundGdlToRuleSet(root, graph);
+		assertThat(actual.numRulesUncompressed, is(expected.numRulesUncompressed));
+
+		// Literals of static relations are decided while grounding
+		expected.cullVariables(true);
+		actual.cullVariables(true);
+		assertThat(actual.getRuleSet(), is(expected.getRuleSet()));
+
+		// ?x is a prefix of ?x1, the clause is built by hand since the parser
+		// renames variables
+		root = GdlParser.parseString("(index 1) (index 2) (val a) (val 1)");
+		GdlNode clause = GdlNodeFactory.createGdlRule(root);
+		root.getChildren().add(clause);
+		GdlNode head = GdlNodeFactory.createGdlFormula("pair", clause);
+		clause.getChildren().add(head);
+		head.getChildren().add(GdlNodeFactory.createGdlTerm("?x", head));
+		head.getChildren().add(GdlNodeFactory.createGdlTerm("?x1", head));
+		GdlNode index = GdlNodeFactory.createGdlFormula("index", clause);
+		clause.getChildren().add(index);
+		index.getChildren().add(GdlNodeFactory.createGdlTerm("?x", index));
+		GdlNode val = GdlNodeFactory.createGdlFormula("val", clause);
+		clause.getChildren().add(val);
+		val.getChildren().add(GdlNodeFactory.createGdlTerm("?x1", val));
+		assertThat(clause.toString(), is("(<= (pair ?x ?x1) (index ?x) (val ?x1))"));
+
+		GdlRuleSet ruleSet = new GdlRuleSet();
+		GdlParser.groundClauseToRuleSet(clause, GdlParser.constructDomainGraph(root), ruleSet);
+		Set<String> heads = ruleSet.getRuleSet().keySet();
+		assertThat(heads, hasItems("(pair 1 a)", "(pair 2 a)", "(pair 1 1)", "(pair 2 1)"));
+		assertThat(heads, not(hasItems("(pair 1 11)")));
+		assertThat(heads, not(hasItems("(pair 1 1a)")));
+		assertThat(heads, not(hasItems("(pair 2 21)")));
+		assertThat(heads, not(hasItems("(pair 2 2a)")));
+		assertThat(heads.size(), is(4));
+
+		// The whole game, where pair is a static relation
+		Set<String> pairs = new HashSet<String>();
+		for (String fact : GdlParser.groundGdlToRuleSet(root, GdlParser.constructDomainGraph(root)).getRuleSet()
+				.keySet()) {
+			if (fact.startsWith("(pair ")) {
+				pairs.add(fact);
+			}
+		}
+		assertThat(pairs, is(heads));
+	}
+
+	@Test
+	public void joinGroundingKeepsDerivableInstances() throws GDLSyntaxException {
+		GdlNode root = GdlParser.parseString("(role white) (index 1) (index 2) (index 3) (succ 1 2) (succ 2 3) "
+				+ "(init (cell 1)) "
+				+ "(<= (legal white (move ?x ?y)) (true (cell ?x)) (succ ?x ?y)) "
+				+ "(<= (next (cell ?y)) (does white (move ?x ?y))) "
+				+ "(<= (far ?x ?y) (index ?x) (index ?y) (distinct ?x ?y) (not (succ ?x ?y)))");
+		GdlRuleSet ruleSet = JoinGrounder.ground(root, GdlParser.constructDomainGraph(root));
+		Set<String> heads = ruleSet.getRuleSet().keySet();
+
+		// Reached through init, legal, does and next
+		assertThat(heads, hasItems("(legal white (move 1 2))", "(legal white (move 2 3))", "(next (cell 3))"));
+		// No cell 3 to move from and no successor of 3
+		assertThat(heads, not(hasItem("(legal white (move 3 1))")));
+		// distinct filters, negative literals don't
+		assertThat(heads, hasItems("(far 1 2)", "(far 1 3)"));
+		assertThat(heads, not(hasItem("(far 1 1)")));
+		assertThat(ruleSet.getRuleSet().get("(far 1 2)").iterator().next(), hasItem("(not (succ 1 2))"));
+	}
+
+	@Test
+	public void reachabilityPrunesUnreachableInstances() throws GDLSyntaxException {
+		GdlNode root = GdlParser.parseString("(role white) (index 1) (index 2) (index 3) (succ 1 2) "
+				+ "(init (cell 1)) "
+				+ "(<= (legal white (move ?x ?y)) (true (cell ?x)) (succ ?x ?y)) "
+				+ "(<= (next (cell ?y)) (does white (move ?x ?y))) "
+				+ "(<= (open ?x) (index ?x) (not (true (cell ?x))))");
+		DomainGraph domainGraph = GdlParser.constructDomainGraph(root);
+		Set<String> reachable = JoinGrounder.reachableAtoms(root, domainGraph);
+
+		assertThat(reachable, hasItems("(true (cell 1))", "(does white (move 1 2))", "(true (cell 2))"));
+		assertThat(reachable, not(hasItem("(true (cell 3))")));
+
+		GdlRuleSet ruleSet = GdlParser.groundGdlToRuleSet(root, domainGraph, reachable);
+		// Never instantiated from an unreachable cell
+		assertThat(ruleSet.getRuleSet().keySet(), not(hasItem("(next (cell 3))")));
+		assertThat(ruleSet.getPredicateSet(), not(hasItem("(true (cell 3))")));
+		// Negation of an unreachable atom always holds, index is static
+		assertThat(ruleSet.getRuleSet().get("(open 3)"), is(Collections.singleton(Collections.<String> emptySet())));
+		assertThat(ruleSet.getRuleSet().get("(open 1)").iterator().next(), hasItem("(not (true (cell 1)))"));
+	}
+
+	@Test
+	public void parallelGroundingMatchesSequential() throws IOException, URISyntaxException, GDLSyntaxException {
+		SymbolTable symbols = new SymbolTable();
+		GdlNode root = GdlParser.parseFile(simpleGdlPath, symbols);
+		DomainGraph graph = GdlParser.constructDomainGraph(root, symbols);
+		GdlRuleSet expected = GdlParser.groundGdlToRuleSet(root, graph);
+		GdlRuleSet actual = ParallelGrounder.ground(root, graph, null, 4);
+
+		assertThat(actual.getRuleSet(), is(expected.getRuleSet()));
+		assertThat(actual.getPredicateSet(), is(expected.getPredicateSet()));
+		assertThat(actual.numRulesUncompressed, is(expected.numRulesUncompressed));
+
+		// Split into slices, distinct discards earlier clauses of a head
+		StringBuilder gdl = new StringBuilder();
+		for (char c = 'a'; c <= 'z'; c++) {
+			gdl.append("(index ").append(c).append(") ");
+		}
+		gdl.append("(<= (some ?x) (index ?x) (index ?y) (index ?z) (distinct ?x ?z))");
+		root = GdlParser.parseString(gdl.toString());
+		graph = GdlParser.constructDomainGraph(root);
+		expected = GdlParser.groundGdlToRuleSet(root, graph);
+		actual = ParallelGrounder.ground(root, graph, null, 4);
+
+		assertThat(actual.getRuleSet(), is(expected.getRuleSet()));
+		assertThat(actual.numRulesUncompressed, is(expected.numRulesUncompressed));
+	}
+
+	@Test
+	public void staticLiteralsPruneInstances() throws GDLSyntaxException {
+		GdlNode root = GdlParser.parseString("(index 1) (index 2) (index 3) (succ 1 2) (succ 2 3) "
+				+ "(<= (step ?x ?y) (index ?x) (index ?y) (succ ?x ?y) (distinct ?x ?y)) "
+				+ "(<= (other ?x) (index ?x) (not (succ ?x 2))) "
+				+ "(<= (same ?x ?y) (index ?x) (index ?y) (not (distinct ?x ?y)))");
+		GdlRuleSet ruleSet = GdlParser.groundGdlToRuleSet(root, GdlParser.constructDomainGraph(root));
+		Set<String> heads = ruleSet.getRuleSet().keySet();
+
+		// Only the values of ?y in a succ fact after ?x are tried
+		assertThat(heads, hasItems("(step 1 2)", "(step 2 3)", "(other 2)", "(other 3)", "(same 1 1)"));
+		assertThat(heads, not(hasItem("(step 1 3)")));
+		assertThat(heads, not(hasItem("(other 1)")));
+		assertThat(heads, not(hasItem("(same 1 2)")));
+		// 5 facts, 2 step, 2 other and 3 same instances
+		assertThat(ruleSet.numRulesUncompressed, is(12));
+	}
+
+	@Test
+	public void staticRelationsAreEvaluated() throws GDLSyntaxException {
+		GdlNode root = GdlParser.parseString("(role white) (index 1) (index 2) (index 3) (succ 1 2) (succ 2 3) "
+				+ "(<= (lt ?x ?y) (succ ?x ?y)) "
+				+ "(<= (lt ?x ?z) (succ ?x ?y) (lt ?y ?z)) "
+				+ "(<= (top ?x) (index ?x) (not (lt ?x 3))) "
+				+ "(init (cell 1)) "
+				+ "(<= (next (cell ?y)) (true (cell ?x)) (lt ?x ?y)) "
+				+ "(<= (done ?x) (true (cell ?x)) (top ?x))");
+		GdlRuleSet ruleSet = GdlParser.groundGdlToRuleSet(root, GdlParser.constructDomainGraph(root));
+		Map<String, Set<Set<String>>> rules = ruleSet.getRuleSet();
+		Set<Set<String>> fact = Collections.emptySet();
+
+		// Recursive lt to its fixpoint, then top in the stratum above it
+		assertThat(rules.get("(lt 1 3)"), is(fact));
+		assertThat(rules.get("(top 3)"), is(fact));
+		assertThat(rules.keySet(), not(hasItem("(lt 3 1)")));
+		assertThat(rules.keySet(), not(hasItem("(top 1)")));
+		// Static literals are decided and left out of the body
+		assertThat(rules.get("(next (cell 3))"),
+				is(new HashSet<Set<String>>(Arrays.asList(Collections.singleton("(true (cell 1))"),
+						Collections.singleton("(true (cell 2))")))));
+		assertThat(rules.get("(done 3)"), is(Collections.singleton(Collections.singleton("(true (cell 3))"))));
+		assertThat(rules.keySet(), not(hasItem("(done 1)")));
+	}
+
+	@Test
+	public void translationCacheKeysOnOptions() {
+		byte[] gdl = "(role white)".getBytes();
+		String key = TranslationCache.key(gdl, "--use-prover=true", "--no-reachability=false");
+		assertThat(key.matches("[0-9a-f]{64}"), is(true));
+		assertThat(TranslationCache.key(gdl, "--use-prover=true", "--no-reachability=false"), is(key));
+		assertThat(TranslationCache.key(gdl, "--use-prover=true", "--no-reachability=true"), not(is(key)));
+		// Options are separated, joining two of them is another key
+		assertThat(TranslationCache.key(gdl, "--use-prover=true--no-reachability=false"), not(is(key)));
+		assertThat(TranslationCache.key("(role black)".getBytes(), "--use-prover=true", "--no-reachability=false"),
+				not(is(key)));
+	}
+
+	@Test
+	public void translationCacheEvictsLeastRecentlyUsed() throws IOException {
+		File directory = Files.createTempDirectory("cache").toFile();
+		TranslationCache cache = new TranslationCache(directory.getPath(), 2);
+		String[] keys = new String[3];
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = TranslationCache.key(new byte[] { (byte) i });
+			cache.storeText(keys[i], TranslationCache.MCK_SUFFIX, "mck " + i);
+			new File(directory, keys[i] + TranslationCache.MCK_SUFFIX).setLastModified(now - 30000 + i * 10000);
+		}
+		// Another translation still writing, and a file that isn't the cache's,
+		// older than every entry
+		File pending = cache.createTempFile(keys[0], TranslationCache.RULE_SET_SUFFIX);
+		File other = new File(directory, "notes.txt");
+		other.createNewFile();
+		pending.setLastModified(now - 60000);
+		other.setLastModified(now - 60000);
+
+		// A hit makes the oldest entry the most recently used
+		assertThat(cache.lookupText(keys[0], TranslationCache.MCK_SUFFIX), is("mck 0"));
+		cache.evict();
+		assertThat(cache.lookup(keys[1], TranslationCache.MCK_SUFFIX), is(nullValue()));
+		assertThat(cache.lookupText(keys[0], TranslationCache.MCK_SUFFIX), is("mck 0"));
+		assertThat(cache.lookupText(keys[2], TranslationCache.MCK_SUFFIX), is("mck 2"));
+		assertThat(pending.isFile(), is(true));
+		assertThat(other.isFile(), is(true));
+
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+}
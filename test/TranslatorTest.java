@@ -1,8 +1,11 @@
 import static org.junit.Assert.assertThat;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -191,6 +194,34 @@ public class TranslatorTest {
 		Main.main(new String[]{"-i", "res/gdlii/transit.gdl", "-o", "transMain.mck", "--use-prover"});
 		System.out.println(System.lineSeparator());
 	}
+
+	@Test
+	public void savedRuleSetTranslatesTheSameTest() throws IOException {
+		File ir = File.createTempFile("meier", ".ir");
+		File fresh = File.createTempFile("meier", ".mck");
+		File loaded = File.createTempFile("meierLoaded", ".mck");
+		for (File file : Arrays.asList(ir, fresh, loaded)) {
+			file.deleteOnExit();
+		}
+		Main.main(new String[]{"-i", "res/gdlii/meier.gdl", "-o", fresh.getPath(), "--use-prover", "--use-define",
+				"--save-ir", ir.getPath()});
+		Main.main(new String[]{"--load-ir", ir.getPath(), "-o", loaded.getPath(), "--use-prover", "--use-define"});
+		assertThat(new String(Files.readAllBytes(loaded.toPath())), is(new String(Files.readAllBytes(fresh.toPath()))));
+	}
+
+	@Test
+	public void parallelGroundingTranslatesTheSameTest() throws IOException {
+		for (String game : Arrays.asList("res/gdlii/kriegtictactoe.gdl", "res/gdlii/transit.gdl")) {
+			File sequential = File.createTempFile("sequential", ".mck");
+			File parallel = File.createTempFile("parallel", ".mck");
+			sequential.deleteOnExit();
+			parallel.deleteOnExit();
+			Main.main(new String[]{"-i", game, "-o", sequential.getPath(), "--use-prover"});
+			Main.main(new String[]{"-i", game, "-o", parallel.getPath(), "--use-prover", "--threads", "4"});
+			assertThat(game, new String(Files.readAllBytes(parallel.toPath())),
+					is(new String(Files.readAllBytes(sequential.toPath()))));
+		}
+	}
 	
 	public static class TranslatorTester extends MckTranslator {
 		TranslatorTester(GdlRuleSet ruleSet, boolean useDefine, boolean debug){